@@ -14,6 +14,8 @@ import androidx.core.content.ContextCompat;
 
 public class MainActivity extends AppCompatActivity {
     private static final int CAMERA_PERMISSION_REQUEST_CODE = 100;
+    // 申请权限期间记住要打开的扫描模式
+    private boolean pendingContinuous = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -21,13 +23,19 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
 
         Button scanButton = findViewById(R.id.scanButton);
-        scanButton.setOnClickListener(v -> {
-            if (hasCameraPermission()) {
-                startScannerActivity();
-            } else {
-                requestCameraPermission();
-            }
-        });
+        scanButton.setOnClickListener(v -> onScanClicked(false));
+
+        Button continuousScanButton = findViewById(R.id.continuousScanButton);
+        continuousScanButton.setOnClickListener(v -> onScanClicked(true));
+    }
+
+    private void onScanClicked(boolean continuous) {
+        pendingContinuous = continuous;
+        if (hasCameraPermission()) {
+            startScannerActivity();
+        } else {
+            requestCameraPermission();
+        }
     }
 
     private boolean hasCameraPermission() {
@@ -58,6 +66,7 @@ public class MainActivity extends AppCompatActivity {
 
     private void startScannerActivity() {
         Intent intent = new Intent(this, ScannerActivity.class);
+        intent.putExtra(ScannerActivity.EXTRA_CONTINUOUS, pendingContinuous);
         startActivity(intent);
     }
 }
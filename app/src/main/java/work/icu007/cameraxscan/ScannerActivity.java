@@ -1,23 +1,45 @@
 package work.icu007.cameraxscan;
 
 import android.content.Intent;
+import android.graphics.RectF;
 import android.os.Bundle;
 import android.util.Log;
+import android.view.View;
 import android.widget.ImageButton;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.view.PreviewView;
+import androidx.core.content.ContextCompat;
 
+import java.util.ArrayList;
+
+import work.icu007.cameraxscan.decoder.DecodedCode;
+import work.icu007.cameraxscan.frame.ScanWindow;
 import work.icu007.cameraxscan.utils.CameraManager;
 import work.icu007.cameraxscan.utils.ScanResult;
-import work.icu007.cameraxscan.utils.ScanResultListener;
+import work.icu007.cameraxscan.utils.ScanResultPublisher;
+
 
+public class ScannerActivity extends AppCompatActivity implements ScanResultPublisher.Subscriber {
+    private static final String TAG = "ScannerActivity";
+    // 为true时连续扫描，扫到条码后不关闭页面
+    public static final String EXTRA_CONTINUOUS = "CONTINUOUS";
+    // 为true时一次识别画面中的所有条码
+    public static final String EXTRA_MULTI_CODE = "MULTI_CODE";
+    public static final String EXTRA_SCAN_RESULTS = "SCAN_RESULTS";
+    // 连续扫描时界面来不及处理的结果最多缓冲的个数
+    private static final int CONTINUOUS_BUFFER_SIZE = 32;
 
-public class ScannerActivity extends AppCompatActivity implements ScanResultListener {
     private CameraManager cameraManager;
     private PreviewView previewView;
+    private boolean continuous;
+    // 解码结果由发布者按需推送，界面每处理完一个结果再请求下一个
+    private final ScanResultPublisher resultPublisher = new ScanResultPublisher();
+    private ScanResultPublisher.Subscription subscription;
+    // 连续扫描得到的所有结果，只在UI线程访问
+    private final ArrayList<String> scanResults = new ArrayList<>();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -39,8 +61,33 @@ public class ScannerActivity extends AppCompatActivity implements ScanResultList
 
 
         // 初始化相机管理器
-        cameraManager = new CameraManager(this, previewView, this);
+        cameraManager = new CameraManager(this, previewView, resultPublisher);
+        continuous = getIntent().getBooleanExtra(EXTRA_CONTINUOUS, false);
+        resultPublisher.setErrorHandler((message, error) -> Log.e(TAG, message, error));
+        // 连续扫描时每个条码都要记录，缓冲来不及显示的结果；单次扫描只关心最新的结果
+        if (continuous) {
+            resultPublisher.subscribe(this, ContextCompat.getMainExecutor(this),
+                    ScanResultPublisher.Overflow.DROP_OLDEST, CONTINUOUS_BUFFER_SIZE);
+        } else {
+            resultPublisher.subscribe(this, ContextCompat.getMainExecutor(this),
+                    ScanResultPublisher.Overflow.CONFLATE, 1);
+        }
+        if (continuous) {
+            cameraManager.setContinuous(true);
+        }
+        if (getIntent().getBooleanExtra(EXTRA_MULTI_CODE, false)) {
+            cameraManager.setMultiCode(true);
+        }
         cameraManager.startCamera();
+
+        // 布局完成后将扫描框映射为扫描窗口，只解码框内的图像
+        View scanFrame = findViewById(R.id.scanFrame);
+        scanFrame.post(() -> {
+            RectF frameRect = new RectF(scanFrame.getLeft(), scanFrame.getTop(),
+                    scanFrame.getRight(), scanFrame.getBottom());
+            cameraManager.setScanWindow(ScanWindow.fromViewRect(frameRect,
+                    previewView.getWidth(), previewView.getHeight()));
+        });
     }
 
 
@@ -49,21 +96,55 @@ public class ScannerActivity extends AppCompatActivity implements ScanResultList
         if (cameraManager != null) {
             cameraManager.shutdown();
         }
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        resultPublisher.complete();
         super.onDestroy();
     }
 
-    public void onScanResult(ScanResult result) {
-        runOnUiThread(() -> {
-            if (result.isSuccess()) {
-                Toast.makeText(this, "扫描结果: " + result.getText() + " (来自: " + result.getDecoderType() + ")",
-                        Toast.LENGTH_LONG).show();
-
-                Intent resultIntent = new Intent();
-                resultIntent.putExtra("SCAN_RESULT", result.getText());
-                resultIntent.putExtra("SCAN_SOURCE", result.getDecoderType());
-                setResult(RESULT_OK, resultIntent);
-                finish();
+    @Override
+    public void onSubscribe(ScanResultPublisher.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(ScanResult result) {
+        // 回调已在主线程上，处理完当前结果后再请求下一个
+        if (result.isSuccess() && continuous) {
+            // 相机和解码保持运行，每次都更新返回的结果列表
+            for (DecodedCode code : result.getCodes()) {
+                scanResults.add(code.getText());
             }
-        });
+            Toast.makeText(this, "已扫描" + scanResults.size() + "个: " + result.getText(),
+                    Toast.LENGTH_SHORT).show();
+
+            Intent resultIntent = new Intent();
+            resultIntent.putStringArrayListExtra(EXTRA_SCAN_RESULTS, scanResults);
+            setResult(RESULT_OK, resultIntent);
+        } else if (result.isSuccess()) {
+            Toast.makeText(this, "扫描结果: " + result.getText() + " (来自: " + result.getDecoderType() + ")",
+                    Toast.LENGTH_LONG).show();
+
+            Intent resultIntent = new Intent();
+            resultIntent.putExtra("SCAN_RESULT", result.getText());
+            resultIntent.putExtra("SCAN_SOURCE", result.getDecoderType());
+            if (result.getCodes().size() > 1) {
+                for (DecodedCode code : result.getCodes()) {
+                    scanResults.add(code.getText());
+                }
+                resultIntent.putStringArrayListExtra(EXTRA_SCAN_RESULTS, scanResults);
+            }
+            setResult(RESULT_OK, resultIntent);
+            finish();
+            return;
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onComplete() {
+        subscription = null;
     }
 }
@@ -0,0 +1,515 @@
+package work.icu007.cameraxscan.decoder;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/29-10:40
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import android.util.Log;
+
+import com.google.zxing.BarcodeFormat;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 自适应解码调度器
+ * 按引擎、输入变体和条码格式记录成功率和耗时的指数加权移动平均（EWMA），
+ * 每帧据此决定引擎是竞速、级联、对冲还是跳过，并保证最坏情况的耗时不超过CPU预算
+ * 引擎的先后顺序还参考最近扫到的条码格式：擅长当前场景中常见格式的引擎排在前面
+ * 统计数据可以导出为JSON，在下次启动时恢复
+ */
+public class AdaptiveScheduler {
+    private static final String TAG = "AdaptiveScheduler";
+
+    private static final double DEFAULT_ALPHA = 0.1;
+    private static final long DEFAULT_CPU_BUDGET_MS = 150;
+    // 样本数不足时所有引擎一起竞速，先积累统计
+    private static final int MIN_SAMPLES = 10;
+    // 每隔若干帧全量竞速一次，让被跳过的引擎和变体的统计保持更新
+    private static final int EXPLORE_INTERVAL = 30;
+    // 最优引擎的成功率超过该值时改为级联，其余引擎只在它失败后运行
+    private static final double CASCADE_THRESHOLD = 0.8;
+    // 变体（包括检测裁剪出的候选区域）的成功率低于该值时不再尝试
+    private static final double MIN_VARIANT_RATE = 0.05;
+    private static final int JSON_VERSION = 1;
+    // 每个引擎保留最近若干次成功解码的耗时，用于计算分位数
+    private static final int LATENCY_WINDOW = 64;
+    // 格式匹配度为0的引擎保留的排序权重，避免只凭格式统计就把引擎排到最后
+    private static final double MIN_FORMAT_WEIGHT = 0.5;
+
+    /**
+     * 对冲模式：先只运行历史上最快的引擎，超过它成功解码耗时的某个分位数仍无结果时再启动其余引擎
+     */
+    public enum Hedge {
+        OFF(0),
+        P50(0.5),
+        P90(0.9);
+
+        final double percentile;
+
+        Hedge(double percentile) {
+            this.percentile = percentile;
+        }
+    }
+
+    private static final String ENGINE = "engine:";
+    private static final String VARIANT = "variant:";
+    private static final String FORMAT = "format:";
+    // 不分引擎的格式占比，反映最近扫描场景中各格式的比例
+    private static final String SCENE = "*";
+
+    /**
+     * 检测阶段裁剪出的候选区域这一输入变体的名称，金字塔各层的名称为"L" + 层号，
+     * 粗层定位后的局部解码为VARIANT_REGION，其余变体的名称见VariantGenerator
+     */
+    public static final String VARIANT_DETECTED = "detected";
+    public static final String VARIANT_REGION = "region";
+
+    private final Map<String, Stat> stats = new HashMap<>();
+    private final Map<String, LatencyWindow> successLatencies = new HashMap<>();
+    private Hedge hedge = Hedge.P50;
+    private double alpha = DEFAULT_ALPHA;
+    private long cpuBudgetMs = DEFAULT_CPU_BUDGET_MS;
+    private long frameCount = 0;
+
+    /**
+     * 单个维度的EWMA统计
+     */
+    private static final class Stat {
+        double rate;
+        double latencyMs;
+        long samples;
+
+        void update(double alpha, boolean success, double latency) {
+            double hit = success ? 1 : 0;
+            if (samples == 0) {
+                rate = hit;
+                latencyMs = latency;
+            } else {
+                rate += alpha * (hit - rate);
+                latencyMs += alpha * (latency - latencyMs);
+            }
+            samples++;
+        }
+    }
+
+    /**
+     * 最近若干次耗时的环形缓冲区
+     */
+    private static final class LatencyWindow {
+        final long[] values = new long[LATENCY_WINDOW];
+        int count;
+        int next;
+
+        void add(long latencyMs) {
+            values[next] = latencyMs;
+            next = (next + 1) % values.length;
+            count = Math.min(count + 1, values.length);
+        }
+
+        long percentile(double p) {
+            long[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(p * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+
+    /**
+     * 一帧的调度计划：按阶段顺序执行，同一阶段内的引擎并行，
+     * 前一阶段有引擎解码成功时后续阶段不再执行
+     * 对冲模式下第二阶段还会在第一阶段运行hedgeDelayMs后仍无结果时提前启动
+     */
+    public static final class Plan {
+        private final List<List<BarcodeDecoder>> stages;
+        // 原始帧失败后需要尝试的输入变体
+        private final List<String> variants;
+        private final String mode;
+        private final long hedgeDelayMs;
+
+        Plan(List<List<BarcodeDecoder>> stages, List<String> variants, String mode) {
+            this(stages, variants, mode, -1);
+        }
+
+        Plan(List<List<BarcodeDecoder>> stages, List<String> variants, String mode, long hedgeDelayMs) {
+            this.stages = stages;
+            this.variants = variants;
+            this.mode = mode;
+            this.hedgeDelayMs = hedgeDelayMs;
+        }
+
+        /**
+         * 第二阶段的对冲延迟，不是对冲计划时返回-1
+         */
+        public long getHedgeDelayMs() {
+            return hedgeDelayMs;
+        }
+
+        public List<List<BarcodeDecoder>> getStages() {
+            return stages;
+        }
+
+        /**
+         * 是否需要OpenCV检测候选区域
+         */
+        public boolean useDetection() {
+            return variants.contains(VARIANT_DETECTED);
+        }
+
+        /**
+         * 原始帧失败后值得尝试的输入变体，按传入的顺序排列
+         */
+        public List<String> getVariants() {
+            return variants;
+        }
+
+        public String getMode() {
+            return mode;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(mode).append("[");
+            for (int i = 0; i < stages.size(); i++) {
+                if (i > 0) builder.append(" -> ");
+                for (int j = 0; j < stages.get(i).size(); j++) {
+                    if (j > 0) builder.append("|");
+                    builder.append(stages.get(i).get(j).getName());
+                }
+            }
+            builder.append("]");
+            if (!variants.isEmpty()) {
+                builder.append(" +").append(variants);
+            }
+            if (hedgeDelayMs >= 0) {
+                builder.append(" hedge@").append(hedgeDelayMs).append("ms");
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * 每帧的CPU预算（毫秒），按参与引擎的平均耗时之和计算
+     */
+    public synchronized void setCpuBudgetMs(long cpuBudgetMs) {
+        this.cpuBudgetMs = Math.max(1, cpuBudgetMs);
+    }
+
+    /**
+     * 设置对冲使用的分位数，OFF时多个引擎直接竞速
+     */
+    public synchronized void setHedge(Hedge hedge) {
+        this.hedge = hedge;
+    }
+
+    public synchronized void setAlpha(double alpha) {
+        if (alpha <= 0 || alpha > 1) {
+            throw new IllegalArgumentException("alpha必须在(0, 1]之间: " + alpha);
+        }
+        this.alpha = alpha;
+    }
+
+    /**
+     * 为下一帧生成调度计划，只尝试检测出的候选区域这一个变体
+     */
+    public Plan plan(List<BarcodeDecoder> decoders) {
+        return plan(decoders, Collections.singletonList(VARIANT_DETECTED));
+    }
+
+    /**
+     * 为下一帧生成调度计划
+     *
+     * @param candidateVariants 原始帧失败后可以尝试的输入变体
+     */
+    public synchronized Plan plan(List<BarcodeDecoder> decoders, List<String> candidateVariants) {
+        frameCount++;
+        boolean exploring = frameCount % EXPLORE_INTERVAL == 0;
+        if (exploring || !warmedUp(decoders)) {
+            return new Plan(Collections.singletonList(new ArrayList<>(decoders)), candidateVariants,
+                    exploring ? "explore" : "warmup");
+        }
+
+        // 按单位耗时的成功率从高到低排序，并按与当前场景格式的匹配度加权
+        Map<BarcodeDecoder, Double> scores = new HashMap<>();
+        for (BarcodeDecoder decoder : decoders) {
+            scores.put(decoder, efficiency(decoder) * formatWeight(decoder.getName()));
+        }
+        List<BarcodeDecoder> ranked = new ArrayList<>(decoders);
+        Collections.sort(ranked, (a, b) -> Double.compare(scores.get(b), scores.get(a)));
+
+        // 在预算内依次加入引擎，至少保留效率最高的一个
+        List<BarcodeDecoder> selected = new ArrayList<>();
+        double cost = 0;
+        for (BarcodeDecoder decoder : ranked) {
+            double latency = get(ENGINE + decoder.getName()).latencyMs;
+            if (!selected.isEmpty() && cost + latency > cpuBudgetMs) {
+                continue;
+            }
+            selected.add(decoder);
+            cost += latency;
+        }
+
+        // 所有入选引擎在某个变体上都长期无效时跳过该变体
+        List<String> variants = new ArrayList<>(candidateVariants.size());
+        for (String variant : candidateVariants) {
+            for (BarcodeDecoder decoder : selected) {
+                Stat stat = stats.get(VARIANT + decoder.getName() + ":" + variant);
+                if (stat == null || stat.samples < MIN_SAMPLES || stat.rate >= MIN_VARIANT_RATE) {
+                    variants.add(variant);
+                    break;
+                }
+            }
+        }
+
+        List<List<BarcodeDecoder>> stages = new ArrayList<>();
+        if (get(ENGINE + selected.get(0).getName()).rate >= CASCADE_THRESHOLD) {
+            // 最优引擎足够可靠，其余引擎只在它失败后依次运行
+            for (BarcodeDecoder decoder : selected) {
+                stages.add(Collections.singletonList(decoder));
+            }
+            return new Plan(stages, variants, "cascade");
+        }
+        Plan hedged = hedgePlan(selected, variants);
+        if (hedged != null) {
+            return hedged;
+        }
+        stages.add(selected);
+        return new Plan(stages, variants, "race");
+    }
+
+    /**
+     * 以成功解码耗时分位数最小的引擎打头的对冲计划，样本不足时返回null
+     */
+    private Plan hedgePlan(List<BarcodeDecoder> selected, List<String> variants) {
+        if (hedge == Hedge.OFF || selected.size() < 2) {
+            return null;
+        }
+        BarcodeDecoder fastest = null;
+        long fastestDelay = Long.MAX_VALUE;
+        for (BarcodeDecoder decoder : selected) {
+            LatencyWindow window = successLatencies.get(decoder.getName());
+            if (window == null || window.count < MIN_SAMPLES) {
+                continue;
+            }
+            long delay = window.percentile(hedge.percentile);
+            if (delay < fastestDelay) {
+                fastest = decoder;
+                fastestDelay = delay;
+            }
+        }
+        if (fastest == null) {
+            return null;
+        }
+
+        List<BarcodeDecoder> rest = new ArrayList<>(selected);
+        rest.remove(fastest);
+        List<List<BarcodeDecoder>> stages = new ArrayList<>(2);
+        stages.add(Collections.singletonList(fastest));
+        stages.add(rest);
+        return new Plan(stages, variants, "hedge", fastestDelay);
+    }
+
+    private boolean warmedUp(List<BarcodeDecoder> decoders) {
+        for (BarcodeDecoder decoder : decoders) {
+            if (get(ENGINE + decoder.getName()).samples < MIN_SAMPLES) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private double efficiency(BarcodeDecoder decoder) {
+        Stat stat = get(ENGINE + decoder.getName());
+        return stat.rate / Math.max(1.0, stat.latencyMs);
+    }
+
+    /**
+     * 引擎与最近扫描场景的格式匹配度换算成的排序权重，在MIN_FORMAT_WEIGHT到1之间
+     * 匹配度为场景中各格式的占比乘以该格式在引擎成功结果中的占比之和，还没有格式统计时为1
+     */
+    private double formatWeight(String engine) {
+        String scenePrefix = FORMAT + SCENE + ":";
+        double affinity = 0;
+        boolean known = false;
+        for (Map.Entry<String, Stat> entry : stats.entrySet()) {
+            if (!entry.getKey().startsWith(scenePrefix)) {
+                continue;
+            }
+            known = true;
+            Stat share = stats.get(FORMAT + engine + ":" + entry.getKey().substring(scenePrefix.length()));
+            if (share != null) {
+                affinity += entry.getValue().rate * share.rate;
+            }
+        }
+        if (!known) {
+            return 1;
+        }
+        return MIN_FORMAT_WEIGHT + (1 - MIN_FORMAT_WEIGHT) * Math.min(1, affinity);
+    }
+
+    private Stat get(String key) {
+        Stat stat = stats.get(key);
+        if (stat == null) {
+            stat = new Stat();
+            stats.put(key, stat);
+        }
+        return stat;
+    }
+
+    /**
+     * 记录引擎处理一帧的结果
+     *
+     * @param format 解码成功时的条码格式，未知时为null
+     */
+    public synchronized void recordEngine(String engine, boolean success, long latencyMs, BarcodeFormat format) {
+        get(ENGINE + engine).update(alpha, success, latencyMs);
+        if (success) {
+            LatencyWindow window = successLatencies.get(engine);
+            if (window == null) {
+                window = new LatencyWindow();
+                successLatencies.put(engine, window);
+            }
+            window.add(latencyMs);
+        }
+        if (success && format != null) {
+            recordFormat(FORMAT + engine + ":", format, latencyMs);
+            recordFormat(FORMAT + SCENE + ":", format, latencyMs);
+        }
+    }
+
+    // 各格式的占比：命中的格式记1，同一前缀下已知的其他格式记0
+    private void recordFormat(String prefix, BarcodeFormat format, long latencyMs) {
+        String hitKey = prefix + format.name();
+        get(hitKey);
+        for (Map.Entry<String, Stat> entry : stats.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                entry.getValue().update(alpha, entry.getKey().equals(hitKey), latencyMs);
+            }
+        }
+    }
+
+    /**
+     * 记录引擎在某个输入变体上的一次尝试
+     */
+    public synchronized void recordVariant(String engine, String variant, boolean success, long latencyMs) {
+        get(VARIANT + engine + ":" + variant).update(alpha, success, latencyMs);
+    }
+
+    public synchronized double getSuccessRate(String engine) {
+        Stat stat = stats.get(ENGINE + engine);
+        return stat != null ? stat.rate : 0;
+    }
+
+    public synchronized double getLatencyMs(String engine) {
+        Stat stat = stats.get(ENGINE + engine);
+        return stat != null ? stat.latencyMs : 0;
+    }
+
+    /**
+     * 最近成功解码耗时的分位数，没有样本时返回-1
+     *
+     * @param percentile 0~1之间的分位数，如0.5为中位数
+     */
+    public synchronized long getLatencyPercentileMs(String engine, double percentile) {
+        LatencyWindow window = successLatencies.get(engine);
+        return window == null || window.count == 0 ? -1 : window.percentile(percentile);
+    }
+
+    public synchronized double getVariantSuccessRate(String engine, String variant) {
+        Stat stat = stats.get(VARIANT + engine + ":" + variant);
+        return stat != null ? stat.rate : 0;
+    }
+
+    /**
+     * 某引擎成功解码的结果中该格式的占比，参与引擎排序
+     */
+    public synchronized double getFormatShare(String engine, BarcodeFormat format) {
+        Stat stat = stats.get(FORMAT + engine + ":" + format.name());
+        return stat != null ? stat.rate : 0;
+    }
+
+    /**
+     * 导出统计数据，用于跨会话保存
+     */
+    public synchronized String toJson() {
+        try {
+            JSONObject entries = new JSONObject();
+            for (Map.Entry<String, Stat> entry : stats.entrySet()) {
+                Stat stat = entry.getValue();
+                entries.put(entry.getKey(), new JSONObject()
+                        .put("rate", stat.rate)
+                        .put("latency", stat.latencyMs)
+                        .put("samples", stat.samples));
+            }
+            return new JSONObject()
+                    .put("version", JSON_VERSION)
+                    .put("entries", entries)
+                    .toString();
+        } catch (JSONException e) {
+            Log.e(TAG, "导出调度统计失败", e);
+            return null;
+        }
+    }
+
+    /**
+     * 恢复之前导出的统计数据，格式不符时保留当前统计
+     */
+    public synchronized void loadJson(String json) {
+        if (json == null || json.isEmpty()) {
+            return;
+        }
+        try {
+            JSONObject root = new JSONObject(json);
+            if (root.optInt("version") != JSON_VERSION) {
+                Log.w(TAG, "调度统计版本不符，忽略");
+                return;
+            }
+            JSONObject entries = root.getJSONObject("entries");
+            Map<String, Stat> loaded = new HashMap<>();
+            Iterator<String> keys = entries.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                JSONObject value = entries.getJSONObject(key);
+                Stat stat = new Stat();
+                stat.rate = value.getDouble("rate");
+                stat.latencyMs = value.getDouble("latency");
+                stat.samples = value.getLong("samples");
+                loaded.put(key, stat);
+            }
+            stats.clear();
+            stats.putAll(loaded);
+            Log.d(TAG, "已恢复调度统计: " + loaded.size() + "项");
+        } catch (JSONException e) {
+            Log.e(TAG, "恢复调度统计失败", e);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("AdaptiveScheduler{budget=").append(cpuBudgetMs).append("ms")
+                .append(", hedge=").append(hedge);
+        for (Map.Entry<String, LatencyWindow> entry : successLatencies.entrySet()) {
+            builder.append(", p50/p90:").append(entry.getKey()).append('=')
+                    .append(entry.getValue().percentile(0.5)).append('/')
+                    .append(entry.getValue().percentile(0.9)).append("ms");
+        }
+        for (Map.Entry<String, Stat> entry : stats.entrySet()) {
+            Stat stat = entry.getValue();
+            builder.append(", ").append(entry.getKey())
+                    .append(String.format(Locale.US, "=%.2f/%.0fms/%d",
+                            stat.rate, stat.latencyMs, stat.samples));
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,121 @@
+package work.icu007.cameraxscan.decoder;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/28-14:10
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import android.graphics.Rect;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.Set;
+
+import work.icu007.cameraxscan.frame.FrameSnapshot;
+
+/**
+ * 解码引擎接口，DecoderManager只通过该接口调度各个引擎
+ * 新引擎实现该接口并在DecoderRegistry中注册即可参与解码，无需修改调度代码
+ */
+public interface BarcodeDecoder {
+
+    /**
+     * 引擎最适合的输入形式，调度器据此决定帧数据需要包含哪些内容
+     * 无论声明哪种输入，decode都必须能处理任意FrameSnapshot
+     */
+    enum InputType {
+        // 只读取亮度数据
+        LUMA,
+        // 读取包含色度的NV21数据
+        NV21,
+        // 读取包装为OpenCV Mat的亮度数据
+        MAT,
+        // 读取ARGB位图
+        BITMAP
+    }
+
+    /**
+     * 引擎名称，同时用作注册名和结果来源
+     */
+    String getName();
+
+    /**
+     * 引擎能识别的条码格式
+     */
+    Set<BarcodeFormat> getSupportedFormats();
+
+    InputType getPreferredInput();
+
+    /**
+     * 是否允许多个线程同时调用decode，返回false时调度器会串行调用
+     */
+    boolean isThreadSafe();
+
+    /**
+     * 同步解码一帧，不得修改或回收帧数据
+     *
+     * @return 解码结果，不会返回null
+     */
+    DecodeResult decode(FrameSnapshot frame);
+
+    /**
+     * 可取消的解码，引擎应在各个检查点调用token.throwIfCancelled()尽快退出
+     * 默认不检查取消标记
+     *
+     * @throws java.util.concurrent.CancellationException 解码被取消
+     */
+    default DecodeResult decode(FrameSnapshot frame, CancellationToken token) {
+        return decode(frame);
+    }
+
+    /**
+     * 是否支持只解码帧中的指定区域
+     */
+    default boolean supportsRegion() {
+        return false;
+    }
+
+    /**
+     * 只解码帧中的指定区域，不支持时直接返回未找到
+     *
+     * @param region 帧坐标下的区域
+     */
+    default DecodeResult decode(FrameSnapshot frame, Rect region) {
+        return DecodeResult.notFound(getName());
+    }
+
+    /**
+     * 可取消的区域解码，默认不检查取消标记
+     */
+    default DecodeResult decode(FrameSnapshot frame, Rect region, CancellationToken token) {
+        return decode(frame, region);
+    }
+
+    /**
+     * 是否能一次解码帧中的多个条码并给出位置
+     */
+    default boolean supportsMulti() {
+        return false;
+    }
+
+    /**
+     * 解码帧中的所有条码，结果的getCodes()包含每个条码及其帧坐标下的顶点
+     * 默认退回单码解码
+     */
+    default DecodeResult decodeMulti(FrameSnapshot frame, CancellationToken token) {
+        return decode(frame, token);
+    }
+
+    /**
+     * 一维码的读数是否会再经过多帧投票或帧内交叉验证，为true时引擎可以对一维码换用更快但更容易误读的解码方式
+     * 二维码不参与投票，不应受此影响；在解码线程以外调用，实现需保证可见性
+     */
+    default void setLinearVerified(boolean verified) {
+    }
+
+    /**
+     * 释放引擎持有的资源，之后不能再调用decode
+     */
+    void release();
+}
@@ -0,0 +1,47 @@
+package work.icu007.cameraxscan.decoder;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/30-10:15
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+/**
+ * 在ZXing读取二值化数据的位置检查取消标记
+ * 一维码每扫描一行调用一次getBlackRow，二维码及每个格式的读取器都会调用getBlackMatrix，
+ * TRY_HARDER的旋转重试通过createBinarizer创建新的二值化器，因此这几处覆盖了MultiFormatReader的主要循环
+ */
+class CancellableBinarizer extends Binarizer {
+    private final Binarizer delegate;
+    private final CancellationToken token;
+
+    CancellableBinarizer(Binarizer delegate, CancellationToken token) {
+        super(delegate.getLuminanceSource());
+        this.delegate = delegate;
+        this.token = token;
+    }
+
+    @Override
+    public BitArray getBlackRow(int y, BitArray row) throws NotFoundException {
+        token.throwIfCancelled();
+        return delegate.getBlackRow(y, row);
+    }
+
+    @Override
+    public BitMatrix getBlackMatrix() throws NotFoundException {
+        token.throwIfCancelled();
+        return delegate.getBlackMatrix();
+    }
+
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source) {
+        token.throwIfCancelled();
+        return new CancellableBinarizer(delegate.createBinarizer(source), token);
+    }
+}
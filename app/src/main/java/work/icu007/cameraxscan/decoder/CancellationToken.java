@@ -0,0 +1,120 @@
+package work.icu007.cameraxscan.decoder;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/30-09:50
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 协作式取消标记，解码引擎和图像处理在各个检查点调用throwIfCancelled
+ * CompletableFuture.cancel无法中断正在运行的解码，只能由解码代码自己尽快退出
+ * 标记可以带截止时间，超过截止时间等同于被取消，无需为每帧安排定时任务
+ * 子标记的截止时间不晚于父标记，父标记取消时子标记随之取消
+ */
+public final class CancellationToken {
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /**
+     * 永远不会被取消的标记，供不需要取消的调用使用
+     */
+    public static final CancellationToken NONE = new CancellationToken(null, NO_DEADLINE, false);
+
+    private final CancellationToken parent;
+    // System.nanoTime()下的截止时间，NO_DEADLINE表示没有截止时间
+    private final long deadlineNanos;
+    private final boolean cancellable;
+    private volatile boolean cancelled = false;
+    private volatile long cancelNanos = 0;
+
+    public CancellationToken() {
+        this(null, NO_DEADLINE, true);
+    }
+
+    private CancellationToken(CancellationToken parent, long deadlineNanos, boolean cancellable) {
+        this.parent = parent;
+        this.deadlineNanos = deadlineNanos;
+        this.cancellable = cancellable;
+    }
+
+    /**
+     * 创建在timeoutMs毫秒后到期的标记
+     */
+    public static CancellationToken withTimeout(long timeoutMs) {
+        return new CancellationToken(null, deadlineAfter(timeoutMs), true);
+    }
+
+    /**
+     * 创建子标记，截止时间取本标记的截止时间和budgetMs毫秒后两者中较早的一个
+     */
+    public CancellationToken child(long budgetMs) {
+        return new CancellationToken(this, Math.min(deadlineNanos, deadlineAfter(budgetMs)), true);
+    }
+
+    private static long deadlineAfter(long timeoutMs) {
+        long now = System.nanoTime();
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutMs));
+        // 避免溢出
+        return timeoutNanos >= NO_DEADLINE - now ? NO_DEADLINE : now + timeoutNanos;
+    }
+
+    public void cancel() {
+        if (cancellable && !cancelled) {
+            cancelNanos = System.nanoTime();
+            cancelled = true;
+        }
+    }
+
+    /**
+     * 本标记或父标记被取消，或已超过截止时间
+     */
+    public boolean isCancelled() {
+        return cancelled || isExpired() || (parent != null && parent.isCancelled());
+    }
+
+    /**
+     * 是否已超过截止时间（子标记的截止时间已包含父标记的截止时间）
+     */
+    public boolean isExpired() {
+        return deadlineNanos != NO_DEADLINE && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * 距离截止时间的剩余毫秒数，没有截止时间时返回Long.MAX_VALUE
+     */
+    public long getRemainingMillis() {
+        if (deadlineNanos == NO_DEADLINE) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * 已取消或已到期时抛出CancellationException
+     */
+    public void throwIfCancelled() {
+        if (cancelled || (parent != null && parent.isCancelled())) {
+            throw new CancellationException("解码已取消");
+        }
+        if (isExpired()) {
+            throw new CancellationException("已超过解码截止时间");
+        }
+    }
+
+    /**
+     * 距离取消或到期已经过去的时间，用于统计取消的响应延迟，未取消时返回0
+     */
+    public long getMillisSinceCancel() {
+        long now = System.nanoTime();
+        if (cancelled) {
+            return TimeUnit.NANOSECONDS.toMillis(now - cancelNanos);
+        }
+        if (parent != null && parent.isCancelled()) {
+            return parent.getMillisSinceCancel();
+        }
+        return isExpired() ? TimeUnit.NANOSECONDS.toMillis(now - deadlineNanos) : 0;
+    }
+}
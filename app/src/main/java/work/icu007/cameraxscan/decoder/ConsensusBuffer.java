@@ -0,0 +1,220 @@
+package work.icu007.cameraxscan.decoder;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/31-15:30
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一维码的多帧投票，模糊帧上偶尔会误读某一位数字，单帧结果不能直接采信
+ * 每种格式保留最近window帧的读数，同一读数来自requiredVotes个不同帧时接受；
+ * 自带校验位且校验通过的读数只需再有一帧印证
+ * 二维码自带纠错，格式未知的结果无法判断，都直接接受
+ * 每个扫描会话一个实例，方法都是同步的
+ */
+public final class ConsensusBuffer {
+
+    private static final class Vote {
+        final long epoch;
+        final String text;
+
+        Vote(long epoch, String text) {
+            this.epoch = epoch;
+            this.text = text;
+        }
+    }
+
+    private final int window;
+    private final int requiredVotes;
+    private final Map<BarcodeFormat, List<Vote>> votes = new EnumMap<>(BarcodeFormat.class);
+    private long pendingCount = 0;
+
+    /**
+     * @param window 投票窗口的帧数，只统计帧序号在最新一帧之前window帧以内的读数
+     * @param requiredVotes 接受一个读数所需的帧数，不大于1时关闭投票
+     */
+    public ConsensusBuffer(int window, int requiredVotes) {
+        if (window < 1 || requiredVotes > window) {
+            throw new IllegalArgumentException("无效的投票配置: window=" + window + ", votes=" + requiredVotes);
+        }
+        this.window = window;
+        this.requiredVotes = requiredVotes;
+    }
+
+    public boolean isEnabled() {
+        return requiredVotes > 1;
+    }
+
+    /**
+     * 记录一帧的读数
+     *
+     * @param epoch 读数所在帧的帧序号，同一帧的多个相同读数只计一票
+     * @return 读数已得到足够的印证，可以作为结果
+     */
+    public synchronized boolean offer(long epoch, BarcodeFormat format, String text) {
+        if (!isEnabled() || !isLinear(format)) {
+            return true;
+        }
+
+        List<Vote> formatVotes = votes.get(format);
+        if (formatVotes == null) {
+            formatVotes = new ArrayList<>(window);
+            votes.put(format, formatVotes);
+        }
+
+        // 帧可能乱序完成，窗口以见过的最大帧序号为准
+        long newest = epoch;
+        for (Vote vote : formatVotes) {
+            newest = Math.max(newest, vote.epoch);
+        }
+        int agreeing = 1;
+        boolean duplicate = false;
+        for (Iterator<Vote> it = formatVotes.iterator(); it.hasNext(); ) {
+            Vote vote = it.next();
+            if (vote.epoch <= newest - window) {
+                it.remove();
+            } else if (vote.text.equals(text)) {
+                if (vote.epoch == epoch) {
+                    duplicate = true;
+                } else {
+                    agreeing++;
+                }
+            }
+        }
+        if (epoch <= newest - window) {
+            // 来得太晚的帧不再参与投票
+            pendingCount++;
+            return false;
+        }
+        if (!duplicate) {
+            formatVotes.add(new Vote(epoch, text));
+        }
+
+        int needed = hasValidChecksum(format, text) ? Math.min(2, requiredVotes) : requiredVotes;
+        if (agreeing >= needed) {
+            return true;
+        }
+        pendingCount++;
+        return false;
+    }
+
+    /**
+     * 因印证不足而暂缓的读数数量
+     */
+    public synchronized long getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * 需要投票的一维码格式
+     */
+    static boolean isLinear(BarcodeFormat format) {
+        if (format == null) {
+            return false;
+        }
+        switch (format) {
+            case CODABAR:
+            case CODE_39:
+            case CODE_93:
+            case CODE_128:
+            case EAN_8:
+            case EAN_13:
+            case ITF:
+            case UPC_A:
+            case UPC_E:
+            case RSS_14:
+            case RSS_EXPANDED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 读数是否带有通过验证的校验位
+     * CODE_128的校验符是强制的，解码器已经验证过；EAN/UPC在这里按模10重新计算
+     */
+    static boolean hasValidChecksum(BarcodeFormat format, String text) {
+        switch (format) {
+            case CODE_128:
+                return true;
+            case EAN_8:
+                return text.length() == 8 && checkMod10(text);
+            case EAN_13:
+                return text.length() == 13 && checkMod10(text);
+            case UPC_A:
+                return text.length() == 12 && checkMod10(text);
+            case UPC_E:
+                return text.length() == 8 && checkMod10(expandUpcE(text));
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * GTIN的模10校验：从校验位左侧开始，奇数位乘3，偶数位乘1
+     */
+    static boolean checkMod10(String digits) {
+        if (digits == null || digits.length() < 2) {
+            return false;
+        }
+        int sum = 0;
+        int length = digits.length();
+        for (int i = length - 2, weight = 3; i >= 0; i--, weight = 4 - weight) {
+            char c = digits.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            sum += (c - '0') * weight;
+        }
+        char check = digits.charAt(length - 1);
+        return check >= '0' && check <= '9' && (10 - sum % 10) % 10 == check - '0';
+    }
+
+    /**
+     * 将8位UPC-E展开为12位UPC-A，校验位不变
+     */
+    static String expandUpcE(String upce) {
+        char[] c = upce.toCharArray();
+        StringBuilder result = new StringBuilder(12);
+        result.append(c[0]);
+        char last = c[6];
+        switch (last) {
+            case '0':
+            case '1':
+            case '2':
+                result.append(c, 1, 2).append(last).append("0000").append(c, 3, 3);
+                break;
+            case '3':
+                result.append(c, 1, 3).append("00000").append(c, 4, 2);
+                break;
+            case '4':
+                result.append(c, 1, 4).append("00000").append(c[5]);
+                break;
+            default:
+                result.append(c, 1, 5).append("0000").append(last);
+                break;
+        }
+        result.append(c[7]);
+        return result.toString();
+    }
+
+    @Override
+    public synchronized String toString() {
+        int total = 0;
+        for (List<Vote> formatVotes : votes.values()) {
+            total += formatVotes.size();
+        }
+        return "ConsensusBuffer{window=" + window + ", votes=" + requiredVotes
+                + ", buffered=" + total + ", pending=" + pendingCount + '}';
+    }
+}
@@ -0,0 +1,294 @@
+package work.icu007.cameraxscan.decoder;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/29-15:40
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import work.icu007.cameraxscan.frame.FrameSnapshot;
+
+/**
+ * 有界的解码流水线，同时解码的帧数不超过maxInFlight
+ * 达到上限后新帧进入等待队列，队列已满时丢弃最旧的等待帧，保证解码的总是最新画面
+ * 帧的准备和各引擎的解码任务都在专用的工作线程上执行，线程数由CPU核数决定
+ */
+public class DecodePipeline {
+    private static final String TAG = "DecodePipeline";
+    private static final int DEFAULT_MAX_IN_FLIGHT = 2;
+    private static final int DEFAULT_QUEUE_CAPACITY = 1;
+
+    /**
+     * 帧的解码逻辑，解码结束（无论成功、失败还是跳过）后必须调用一次done
+     * 实现方负责释放snapshot
+     */
+    public interface FrameHandler {
+        /**
+         * @param captureMs 提交前在相机线程上检查和拷贝帧数据的耗时
+         */
+        void handle(FrameSnapshot snapshot, ScanSession.FrameEpoch epoch, long submitTimeMs, long captureMs,
+                    Runnable done);
+    }
+
+    private static class PendingFrame {
+        final FrameSnapshot snapshot;
+        final ScanSession.FrameEpoch epoch;
+        final long submitTimeMs;
+        final long submitNanos;
+        final long captureMs;
+
+        PendingFrame(FrameSnapshot snapshot, ScanSession.FrameEpoch epoch, long captureMs) {
+            this.snapshot = snapshot;
+            this.epoch = epoch;
+            this.captureMs = captureMs;
+            this.submitTimeMs = System.currentTimeMillis();
+            this.submitNanos = System.nanoTime();
+        }
+    }
+
+    private final FrameHandler handler;
+    private final ScheduledThreadPoolExecutor executor;
+    private final ArrayDeque<PendingFrame> pendingFrames = new ArrayDeque<>();
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private boolean shutdown = false;
+
+    // 以下统计都在锁内更新
+    private int inFlight = 0;
+    private int peakQueueDepth = 0;
+    private long submittedCount = 0;
+    private long startedCount = 0;
+    private long completedCount = 0;
+    private long droppedCount = 0;
+    private long totalWaitNanos = 0;
+    private long maxWaitNanos = 0;
+
+    public DecodePipeline(FrameHandler handler) {
+        this(handler, defaultWorkerCount());
+    }
+
+    public DecodePipeline(FrameHandler handler, int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("workerCount必须大于0: " + workerCount);
+        }
+        this.handler = handler;
+        // 任务数受maxInFlight和引擎数限制，工作队列本身无需设上限
+        // 同一组线程也负责对冲等少量延迟任务，不再单独创建定时线程
+        this.executor = new ScheduledThreadPoolExecutor(workerCount, new DecodeThreadFactory());
+        this.executor.setRemoveOnCancelPolicy(true);
+        Log.d(TAG, "解码线程数: " + workerCount);
+    }
+
+    /**
+     * 默认线程数，保留一个核心给相机和UI线程
+     */
+    public static int defaultWorkerCount() {
+        return Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    /**
+     * 解码任务使用的线程池
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * 在解码线程上延迟执行一个轻量任务，线程池已关闭时返回null
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delayMs) {
+        try {
+            return executor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            Log.w(TAG, "解码线程池不可用，无法安排延迟任务");
+            return null;
+        }
+    }
+
+    /**
+     * 设置同时解码的最大帧数和等待队列容量
+     *
+     * @param maxInFlight 同时解码的帧数，应小于帧槽位数量
+     * @param queueCapacity 等待队列容量，为0时流水线满载就直接丢弃新帧
+     */
+    public synchronized void setLimits(int maxInFlight, int queueCapacity) {
+        if (maxInFlight < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException("无效的流水线配置: maxInFlight=" + maxInFlight
+                    + ", queueCapacity=" + queueCapacity);
+        }
+        this.maxInFlight = maxInFlight;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * 提交一帧，流水线接管snapshot的所有权
+     * 有空闲名额时立即开始，否则排队，队列溢出时释放最旧的等待帧
+     *
+     * @param epoch 提交时分配的会话和帧序号，原样交给FrameHandler
+     * @param captureMs 检查和拷贝帧数据的耗时，原样交给FrameHandler
+     */
+    public void submit(FrameSnapshot snapshot, ScanSession.FrameEpoch epoch, long captureMs) {
+        PendingFrame frame = new PendingFrame(snapshot, epoch, captureMs);
+        PendingFrame dropped = null;
+        boolean start = false;
+        synchronized (this) {
+            if (shutdown) {
+                dropped = frame;
+            } else {
+                submittedCount++;
+                if (inFlight < maxInFlight) {
+                    inFlight++;
+                    start = true;
+                } else {
+                    pendingFrames.addLast(frame);
+                    if (pendingFrames.size() > queueCapacity) {
+                        dropped = pendingFrames.pollFirst();
+                        droppedCount++;
+                    }
+                    peakQueueDepth = Math.max(peakQueueDepth, pendingFrames.size());
+                }
+            }
+        }
+
+        if (dropped != null) {
+            dropped.snapshot.release();
+        }
+        if (start) {
+            start(frame);
+        }
+    }
+
+    private void start(PendingFrame frame) {
+        long waitNanos = System.nanoTime() - frame.submitNanos;
+        synchronized (this) {
+            startedCount++;
+            totalWaitNanos += waitNanos;
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+        }
+
+        // done可能被调用多次（如handler抛异常后仍回调），只有第一次生效
+        AtomicInteger doneCalls = new AtomicInteger();
+        Runnable done = () -> {
+            if (doneCalls.getAndIncrement() == 0) {
+                onFrameDone();
+            }
+        };
+        try {
+            executor.execute(() -> {
+                try {
+                    handler.handle(frame.snapshot, frame.epoch, frame.submitTimeMs, frame.captureMs, done);
+                } catch (Exception e) {
+                    Log.e(TAG, "帧处理失败", e);
+                    frame.snapshot.release();
+                    done.run();
+                }
+            });
+        } catch (Exception e) {
+            // 线程池已关闭
+            Log.w(TAG, "解码线程池不可用，丢弃帧");
+            frame.snapshot.release();
+            done.run();
+        }
+    }
+
+    private void onFrameDone() {
+        PendingFrame next;
+        synchronized (this) {
+            completedCount++;
+            next = shutdown ? null : pendingFrames.pollFirst();
+            if (next == null) {
+                inFlight--;
+            }
+        }
+        // 名额直接交给下一帧，inFlight保持不变
+        if (next != null) {
+            start(next);
+        }
+    }
+
+    public synchronized int getQueueDepth() {
+        return pendingFrames.size();
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized long getSubmittedCount() {
+        return submittedCount;
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public synchronized long getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * 帧从提交到开始解码的平均等待时间
+     */
+    public synchronized long getAverageWaitMillis() {
+        return startedCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos / startedCount);
+    }
+
+    public synchronized long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+    }
+
+    /**
+     * 停止接收新帧并释放所有等待中的帧，等待正在执行的任务结束
+     */
+    public void shutdown() {
+        ArrayDeque<PendingFrame> remaining;
+        synchronized (this) {
+            shutdown = true;
+            remaining = new ArrayDeque<>(pendingFrames);
+            pendingFrames.clear();
+        }
+        for (PendingFrame frame : remaining) {
+            frame.snapshot.release();
+        }
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(500, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DecodePipeline{workers=" + executor.getCorePoolSize()
+                + ", maxInFlight=" + maxInFlight + ", inFlight=" + inFlight
+                + ", queue=" + pendingFrames.size() + "/" + queueCapacity + ", peakQueue=" + peakQueueDepth
+                + ", submitted=" + submittedCount + ", dropped=" + droppedCount + ", completed=" + completedCount
+                + ", avgWait=" + getAverageWaitMillis() + "ms, maxWait=" + getMaxWaitMillis() + "ms}";
+    }
+
+    private static class DecodeThreadFactory implements ThreadFactory {
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "decode-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package work.icu007.cameraxscan.decoder;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/28-14:20
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import android.graphics.Rect;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 单个引擎对单帧的解码结果
+ * 未解码成功时可以携带检测阶段定位到的候选区域，供调度器到更高分辨率上局部解码
+ * 多码解码时包含帧中的所有条码，text和format取自第一个
+ */
+public final class DecodeResult {
+    private final String decoderName;
+    private final String text;
+    private final BarcodeFormat format;
+    private final Rect candidateRegion;
+    private final List<DecodedCode> codes;
+
+    private DecodeResult(String decoderName, String text, BarcodeFormat format, Rect candidateRegion,
+                         List<DecodedCode> codes) {
+        this.decoderName = decoderName;
+        this.text = text;
+        this.format = format;
+        this.candidateRegion = candidateRegion;
+        this.codes = codes;
+    }
+
+    /**
+     * @param format 条码格式，引擎无法确定时为null
+     */
+    public static DecodeResult found(String decoderName, String text, BarcodeFormat format) {
+        return new DecodeResult(decoderName, text, format, null,
+                Collections.singletonList(new DecodedCode(text, format, null, decoderName)));
+    }
+
+    /**
+     * 多码解码的结果，codes为空时等同于未找到
+     */
+    public static DecodeResult found(String decoderName, List<DecodedCode> codes) {
+        if (codes.isEmpty()) {
+            return notFound(decoderName);
+        }
+        DecodedCode first = codes.get(0);
+        return new DecodeResult(decoderName, first.getText(), first.getFormat(), null,
+                Collections.unmodifiableList(codes));
+    }
+
+    public static DecodeResult notFound(String decoderName) {
+        return new DecodeResult(decoderName, null, null, null, Collections.emptyList());
+    }
+
+    /**
+     * @param candidateRegion 帧坐标下可能包含条码的区域
+     */
+    public static DecodeResult notFound(String decoderName, Rect candidateRegion) {
+        return new DecodeResult(decoderName, null, null, candidateRegion, Collections.emptyList());
+    }
+
+    public boolean isSuccess() {
+        return text != null && !text.isEmpty();
+    }
+
+    public String getDecoderName() {
+        return decoderName;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public BarcodeFormat getFormat() {
+        return format;
+    }
+
+    public Rect getCandidateRegion() {
+        return candidateRegion;
+    }
+
+    /**
+     * 帧中解码出的所有条码，单码解码时最多一个
+     */
+    public List<DecodedCode> getCodes() {
+        return codes;
+    }
+
+    @Override
+    public String toString() {
+        return "DecodeResult{" +
+                "decoder='" + decoderName + '\'' +
+                ", text='" + text + '\'' +
+                ", format=" + format +
+                ", candidate=" + candidateRegion +
+                ", codes=" + codes.size() +
+                '}';
+    }
+}
@@ -0,0 +1,165 @@
+package work.icu007.cameraxscan.decoder;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/4/1-14:20
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 一帧中解码出的单个条码，包含内容、格式和在帧中的位置
+ * 位置为帧坐标（未旋转的传感器方向）下的顶点，按x、y交替存放：
+ * 二维码和OpenCV、MLKit的结果通常是4个角点，ZXing的一维码只有扫描线的两个端点，引擎不提供位置时为空
+ */
+public final class DecodedCode {
+    // 两个结果的中心距离小于该值时总是视为同一位置
+    private static final float MIN_MERGE_DISTANCE = 16f;
+
+    private final String text;
+    private final BarcodeFormat format;
+    private final float[] corners;
+    // 读到该条码的引擎，合并后可能有多个
+    private final List<String> sources;
+
+    /**
+     * @param format 条码格式，未知时为null
+     * @param corners 帧坐标下的顶点，x、y交替，没有位置时为null
+     */
+    public DecodedCode(String text, BarcodeFormat format, float[] corners, String source) {
+        this(text, format, corners, Collections.singletonList(source));
+    }
+
+    private DecodedCode(String text, BarcodeFormat format, float[] corners, List<String> sources) {
+        this.text = text;
+        this.format = format;
+        this.corners = corners != null ? corners.clone() : new float[0];
+        this.sources = Collections.unmodifiableList(sources);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public BarcodeFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * 顶点坐标的副本，x、y交替
+     */
+    public float[] getCorners() {
+        return corners.clone();
+    }
+
+    public int getCornerCount() {
+        return corners.length / 2;
+    }
+
+    public boolean hasPosition() {
+        return corners.length >= 2;
+    }
+
+    public float getCenterX() {
+        return average(0);
+    }
+
+    public float getCenterY() {
+        return average(1);
+    }
+
+    /**
+     * 顶点包围盒的长边
+     */
+    public float getSize() {
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int i = 0; i + 1 < corners.length; i += 2) {
+            minX = Math.min(minX, corners[i]);
+            minY = Math.min(minY, corners[i + 1]);
+            maxX = Math.max(maxX, corners[i]);
+            maxY = Math.max(maxY, corners[i + 1]);
+        }
+        return hasPosition() ? Math.max(maxX - minX, maxY - minY) : 0;
+    }
+
+    public List<String> getSources() {
+        return sources;
+    }
+
+    private float average(int offset) {
+        if (!hasPosition()) {
+            return Float.NaN;
+        }
+        float sum = 0;
+        for (int i = offset; i < corners.length; i += 2) {
+            sum += corners[i];
+        }
+        return sum / getCornerCount();
+    }
+
+    /**
+     * 内容相同、格式不冲突且位置重合（或有一方没有位置）时视为同一个条码
+     * 同一托盘上可能贴着内容相同的多个标签，位置不同时仍算作不同条码
+     */
+    boolean isSameCode(DecodedCode other) {
+        if (!text.equals(other.text)) {
+            return false;
+        }
+        if (format != null && other.format != null && format != other.format) {
+            return false;
+        }
+        if (!hasPosition() || !other.hasPosition()) {
+            return true;
+        }
+        float dx = getCenterX() - other.getCenterX();
+        float dy = getCenterY() - other.getCenterY();
+        float limit = Math.max(MIN_MERGE_DISTANCE, Math.max(getSize(), other.getSize()) / 2);
+        return dx * dx + dy * dy <= limit * limit;
+    }
+
+    /**
+     * 合并同一条码的两个结果，保留顶点更多的位置和已知的格式，来源取并集
+     */
+    DecodedCode mergeWith(DecodedCode other) {
+        Set<String> mergedSources = new LinkedHashSet<>(sources);
+        mergedSources.addAll(other.sources);
+        return new DecodedCode(text, format != null ? format : other.format,
+                corners.length >= other.corners.length ? corners : other.corners,
+                new ArrayList<>(mergedSources));
+    }
+
+    /**
+     * 按位置和内容合并多个引擎的结果，保持首次出现的顺序
+     */
+    public static List<DecodedCode> merge(List<DecodedCode> codes) {
+        List<DecodedCode> merged = new ArrayList<>(codes.size());
+        for (DecodedCode code : codes) {
+            boolean found = false;
+            for (int i = 0; i < merged.size() && !found; i++) {
+                if (merged.get(i).isSameCode(code)) {
+                    merged.set(i, merged.get(i).mergeWith(code));
+                    found = true;
+                }
+            }
+            if (!found) {
+                merged.add(code);
+            }
+        }
+        return merged;
+    }
+
+    @Override
+    public String toString() {
+        return "DecodedCode{text='" + text + '\'' + ", format=" + format
+                + ", corners=" + Arrays.toString(corners) + ", sources=" + sources + '}';
+    }
+}
@@ -7,283 +7,900 @@ package work.icu007.cameraxscan.decoder;
  */
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.ImageFormat;
-import android.graphics.Matrix;
 import android.graphics.Rect;
-import android.graphics.YuvImage;
-import android.media.Image;
-import android.os.AsyncTask;
 import android.os.Environment;
+import android.text.TextUtils;
 import android.util.Log;
 
-import androidx.annotation.OptIn;
-import androidx.camera.core.ExperimentalGetImage;
 import androidx.camera.core.ImageProxy;
 
+import com.google.zxing.BarcodeFormat;
+
 import org.opencv.BuildConfig;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-
+import java.util.concurrent.atomic.AtomicLong;
+
+import work.icu007.cameraxscan.frame.FrameArena;
+import work.icu007.cameraxscan.frame.FrameBufferPool;
+import work.icu007.cameraxscan.frame.FrameGate;
+import work.icu007.cameraxscan.frame.FrameSnapshot;
+import work.icu007.cameraxscan.frame.LumaPyramid;
+import work.icu007.cameraxscan.frame.VariantGenerator;
+import work.icu007.cameraxscan.processor.CandidateRegion;
 import work.icu007.cameraxscan.processor.ImageProcessor;
 import work.icu007.cameraxscan.utils.ScanResult;
 import work.icu007.cameraxscan.utils.ScanResultListener;
 
 public class DecoderManager {
     private static final String TAG = "DecoderManager";
-    private final ScheduledExecutorService scheduledExecutor;
+    // 有界解码流水线，限制同时解码的帧数并提供解码线程
+    private final DecodePipeline pipeline;
     private final ScanResultListener listener;
-    private final MLKitDecoder mlKitDecoder;
-    private final ZXingDecoder zXingDecoder;
+    // 按注册顺序参与解码的引擎
+    private final List<BarcodeDecoder> decoders;
+    // 是否有引擎需要色度数据，全部只读亮度时只提取Y平面
+    private final boolean needsChroma;
     private final ImageProcessor imageProcessor;
-    private final AtomicBoolean resultFound = new AtomicBoolean(false);
-    private volatile boolean isScanning = false;
-
-    // 跟踪正在处理的图像
-    private final Set<ImageProxy> activeImages = Collections.synchronizedSet(new HashSet<>());
-
+    private final FrameBufferPool bufferPool = FrameBufferPool.getInstance();
+    // 当前扫描会话，每个会话只接受一个结果，resumeScanning时开始新会话
+    private final AtomicLong sessionIds = new AtomicLong();
+    private volatile ScanSession session;
+
+    // 金字塔层数和起始层，起始层越高越先尝试低分辨率
+    private static final int DEFAULT_PYRAMID_LEVELS = 3;
+    private static final int DEFAULT_START_LEVEL = 1;
+    private volatile int pyramidLevels = DEFAULT_PYRAMID_LEVELS;
+    private volatile int startLevel = DEFAULT_START_LEVEL;
+    private final Map<String, PyramidStats> pyramidStats = new LinkedHashMap<>();
+    private final AdaptiveScheduler scheduler = new AdaptiveScheduler();
+    // 正在解码的帧的取消标记，有引擎成功时全部取消
+    private final Set<CancellationToken> activeTokens = ConcurrentHashMap.newKeySet();
+
+    // 每帧的截止时间为若干个帧间隔，帧间隔由传感器时间戳估计，超过截止时间的解码直接放弃
+    private static final double DEFAULT_FRAME_INTERVAL_MS = 33;
+    private static final float DEFAULT_DEADLINE_FRAMES = 2f;
+    private static final long MIN_FRAME_BUDGET_MS = 50;
+    // 帧间隔超过该值视为相机暂停，不计入估计
+    private static final long MAX_FRAME_INTERVAL_MS = 500;
+    // 未单独设置预算的引擎，预算为其平均耗时的倍数，没有统计时使用整帧预算
+    private static final double ENGINE_BUDGET_LATENCY_FACTOR = 3;
+    private static final long MIN_ENGINE_BUDGET_MS = 20;
+    private volatile float deadlineFrames = DEFAULT_DEADLINE_FRAMES;
+    private volatile double frameIntervalMs = DEFAULT_FRAME_INTERVAL_MS;
+    // 只在分析线程上访问
+    private long lastFrameTimestampNs = 0;
+    private final Map<String, Long> engineBudgets = new ConcurrentHashMap<>();
+    // 一维码的多帧投票：最近若干帧中有足够多的帧读到同一内容才接受，关闭时恢复ZXing的TRY_HARDER
+    private static final int DEFAULT_CONSENSUS_WINDOW = 5;
+    private static final int DEFAULT_CONSENSUS_VOTES = 3;
+    private volatile int consensusWindow = DEFAULT_CONSENSUS_WINDOW;
+    private volatile int consensusVotes = DEFAULT_CONSENSUS_VOTES;
+    // 连续扫描：得到结果后不结束会话，相同条码在去重窗口内只上报一次
+    private static final int DEFAULT_DEDUP_CAPACITY = 256;
+    private static final long DEFAULT_DEDUP_WINDOW_MS = 3000;
+    private volatile boolean continuous = false;
+    private final DedupCache dedupCache = new DedupCache(DEFAULT_DEDUP_CAPACITY, DEFAULT_DEDUP_WINDOW_MS);
+    // 解码前的清晰度和运动门控，只在分析线程上检查
+    private final FrameGate frameGate = new FrameGate();
+    // 多码模式：一帧中的所有条码合并为一个结果
+    private volatile boolean multiCode = false;
+    // 原始帧失败后是否把反色、二值化、旋转等变体分发给各引擎，关闭时只尝试检测出的候选区域
+    private volatile boolean variantFanOut = true;
+    // 检测阶段最多交给解码阶段的候选区域数，每个区域与每个引擎组成一个解码任务
+    private static final int DEFAULT_MAX_REGIONS = 3;
+    // 在金字塔的该层上检测候选区域，层数不足时使用最粗的一层
+    private static final int DETECTION_LEVEL = 1;
+    private volatile int maxRegions = DEFAULT_MAX_REGIONS;
+
+    /**
+     * 使用注册表中默认启用的引擎
+     */
     public DecoderManager(ScanResultListener resultListener) {
+        this(resultListener, DecoderRegistry.getDefaultNames());
+    }
+
+    /**
+     * @param engineNames 参与解码的引擎注册名，按顺序调度
+     */
+    public DecoderManager(ScanResultListener resultListener, List<String> engineNames) {
         this.listener = resultListener;
-        this.scheduledExecutor = Executors.newScheduledThreadPool(2);
-        this.mlKitDecoder = new MLKitDecoder();
-        this.zXingDecoder = new ZXingDecoder();
+        this.pipeline = new DecodePipeline(this::decodeSnapshot);
+        this.decoders = DecoderRegistry.createAll(engineNames);
         this.imageProcessor = new ImageProcessor();
+
+        boolean chroma = false;
+        for (BarcodeDecoder decoder : decoders) {
+            pyramidStats.put(decoder.getName(), new PyramidStats(decoder.getName()));
+            chroma |= decoder.getPreferredInput() == BarcodeDecoder.InputType.NV21;
+        }
+        this.needsChroma = chroma;
+        applyLinearVerified();
+        this.session = newSession();
+        Log.d(TAG, "解码引擎: " + engineNames + ", 已创建" + decoders.size() + "个");
     }
 
     // 资源共享类
     private static class SharedImageResources {
-        Bitmap originalBitmap;
-        Bitmap processedBitmap;
+        FrameSnapshot snapshot;
+        // 原始帧的多分辨率金字塔，第0层即snapshot
+        LumaPyramid pyramid;
+        // 检测阶段找到的候选区域，按得分排序，原始帧都失败后才检测
+        volatile List<CandidateRegion> regions = Collections.emptyList();
+        // 从原始帧裁出并摆正的候选区域，可能由多个线程同时加入
+        final ConcurrentLinkedQueue<FrameSnapshot> regionFrames = new ConcurrentLinkedQueue<>();
+        // VariantGenerator生成的其余变体，可能由多个线程同时加入
+        final ConcurrentLinkedQueue<FrameSnapshot> variantFrames = new ConcurrentLinkedQueue<>();
+        // 该帧所有解码和处理共用的取消标记
+        CancellationToken token;
+        // 帧所属的扫描会话和帧序号
+        ScanSession.FrameEpoch epoch;
+        // 开始解码的时间，不含排队时间
+        long decodeStartMs;
+        // 以下为各阶段的耗时和边界，用于结果的stageTimings
+        long captureMs;
+        long pyramidMs;
+        // 金字塔建好、开始解码原始帧的时间
+        long rawStartMs;
+        // 原始帧的所有阶段结束的时间，未结束时为-1
+        volatile long rawEndMs = -1;
+        // 检测候选区域的耗时，未检测时为-1
+        volatile long detectMs = -1;
+        // 生成变体和裁剪区域在各线程上的耗时之和
+        final AtomicLong variantsMs = new AtomicLong();
+        final AtomicLong regionsMs = new AtomicLong();
+        // 保证资源只清理一次
+        final AtomicBoolean cleaned = new AtomicBoolean(false);
     }
 
 
     public void decodeAsync(ImageProxy imageProxy) {
-        // 每次开始新解码前重置状态
-        resumeScanning();
+        // 当前会话已有结果时不再解码，直到调用resumeScanning开始新会话
+        ScanSession current = session;
+        if (!current.isOpen()) {
+            imageProxy.close();
+            return;
+        }
 
-        // 如果不在扫描状态，直接返回
-        if (!isScanning) {
+        updateFrameInterval(imageProxy.getImageInfo().getTimestamp());
+        long captureStart = System.currentTimeMillis();
+
+        // 模糊或移动中的帧在复制之前就跳过
+        FrameGate.Verdict verdict = gate(imageProxy);
+        if (verdict != FrameGate.Verdict.PASS) {
             imageProxy.close();
             return;
         }
 
-        // 记录处理中的图像
-        activeImages.add(imageProxy);
+        // 一次性提取帧数据后立即关闭ImageProxy，让CameraX尽快送来下一帧
+        FrameSnapshot snapshot = takeSnapshot(imageProxy);
+        if (snapshot == null) {
+            return;
+        }
+
+        // 流水线满载时丢弃最旧的等待帧，解码在流水线的工作线程上进行
+        pipeline.submit(snapshot, current.nextFrame(), System.currentTimeMillis() - captureStart);
+    }
+
+    /**
+     * 在相机的Y平面上直接检查清晰度和运动，只读取裁剪区域内的稀疏网格
+     */
+    private FrameGate.Verdict gate(ImageProxy imageProxy) {
+        if (!frameGate.isEnabled()) {
+            return FrameGate.Verdict.PASS;
+        }
+        try {
+            ImageProxy.PlaneProxy yPlane = imageProxy.getPlanes()[0];
+            Rect crop = imageProxy.getCropRect();
+            return frameGate.evaluate(yPlane.getBuffer(), yPlane.getRowStride(), yPlane.getPixelStride(),
+                    crop.left, crop.top, crop.width(), crop.height());
+        } catch (Exception e) {
+            Log.e(TAG, "帧质量检查失败", e);
+            return FrameGate.Verdict.PASS;
+        }
+    }
+
+    /**
+     * 在流水线工作线程上解码一帧，所有任务结束并清理资源后调用done
+     *
+     * @param epoch 提交时分配的会话和帧序号
+     * @param startTime 帧提交到流水线的时间，解码耗时包含排队时间
+     * @param captureMs 提交前检查和拷贝帧数据的耗时
+     */
+    private void decodeSnapshot(FrameSnapshot snapshot, ScanSession.FrameEpoch epoch,
+                                long startTime, long captureMs, Runnable done) {
+        // 排队期间会话已有结果或已被新会话取代时直接跳过
+        if (!epoch.getSession().isOpen()) {
+            snapshot.release();
+            done.run();
+            return;
+        }
 
-        // 记录开始时间
-        final long startTime = System.currentTimeMillis();
+        // 截止时间从提交时算起，在队列中等待过久的帧直接放弃
+        long remainingMs = getFrameBudgetMs() - (System.currentTimeMillis() - startTime);
+        if (remainingMs <= 0) {
+            Log.d(TAG, "帧" + epoch + "在队列中已超过截止时间");
+            snapshot.release();
+            done.run();
+            return;
+        }
 
+        SharedImageResources resources = null;
         try {
-            // 创建一个共享资源对象，包含所有从imageProxy中提取的图像数据
-            SharedImageResources resources = extractImageResources(imageProxy);
+            // 创建一个共享资源对象，处理器和解码器都从同一份帧数据读取
+            resources = extractImageResources(snapshot, remainingMs);
 
             // 如果资源提取失败，直接清理并返回
-            if (resources == null || resources.originalBitmap == null) {
-                cleanupImageProxy(imageProxy);
+            if (resources == null) {
+                snapshot.release();
+                done.run();
                 return;
             }
 
-            // 创建超时处理
-            ScheduledFuture<?> timeoutFuture = scheduleTimeout(imageProxy, resources, startTime);
+            resources.epoch = epoch;
+            resources.captureMs = captureMs;
 
-            // 创建两个解码任务
-            CompletableFuture<ScanResult> mlKitFuture = createMLKitTask(resources, startTime);
-            CompletableFuture<ScanResult> zxingFuture = createZXingTask(resources, startTime);
+            List<CompletableFuture<ScanResult>> futures;
+            if (multiCode) {
+                // 多码模式：所有引擎同时找出整帧中的全部条码，结束后按位置和内容合并为一个结果
+                futures = Collections.singletonList(createMultiTask(resources, startTime));
+            } else {
+                // 根据历史统计决定本帧的引擎顺序、并行方式以及要尝试的输入变体
+                AdaptiveScheduler.Plan plan = scheduler.plan(decoders, candidateVariants());
+                Log.d(TAG, "调度计划: " + plan + ", 预算: " + remainingMs + "ms");
+                futures = createStagedTasks(plan, resources, startTime);
+            }
 
-            // 处理成功的结果
-            handleSuccessfulResult(mlKitFuture, zxingFuture, imageProxy, resources, timeoutFuture);
+            // 处理成功的结果，多码结果已在帧内交叉验证，不再参与多帧投票
+            handleSuccessfulResult(futures, resources, startTime, multiCode);
 
             // 处理所有任务完成的情况
-            handleTasksCompletion(mlKitFuture, zxingFuture, imageProxy, resources, timeoutFuture);
+            handleTasksCompletion(futures, resources, startTime, done);
 
         } catch (Exception e) {
             Log.e(TAG, "解码初始化失败", e);
-            cleanupImageProxy(imageProxy);
+            if (resources != null) {
+                cleanupResources(resources);
+            } else {
+                snapshot.release();
+            }
+            done.run();
         }
     }
 
-    private SharedImageResources extractImageResources(ImageProxy imageProxy) {
+    /**
+     * @param budgetMs 本帧剩余的时间预算，图像处理和所有引擎共用
+     */
+    private SharedImageResources extractImageResources(FrameSnapshot snapshot, long budgetMs) {
+        SharedImageResources resources = null;
         try {
-            SharedImageResources resources = new SharedImageResources();
+            resources = new SharedImageResources();
+            resources.snapshot = snapshot;
+            resources.decodeStartMs = System.currentTimeMillis();
+            resources.token = CancellationToken.withTimeout(budgetMs);
+            activeTokens.add(resources.token);
+            resources.pyramid = LumaPyramid.build(snapshot, pyramidLevels);
+            resources.rawStartMs = System.currentTimeMillis();
+            resources.pyramidMs = resources.rawStartMs - resources.decodeStartMs;
+
+            // 保存调试图像（仅在DEBUG模式），候选区域在裁剪时保存
+            if (BuildConfig.DEBUG) {
+                saveDebugImage(snapshot.getBitmap(), "original", snapshot.getRotationDegrees());
+            }
 
-            // 转换原始图像
-            resources.originalBitmap = imageToBitmap(imageProxy);
-            if (resources.originalBitmap == null) {
-                Log.e(TAG, "无法从ImageProxy创建Bitmap");
-                return null;
+            return resources;
+        } catch (Exception e) {
+            Log.e(TAG, "提取图像资源失败", e);
+            if (resources != null) {
+                activeTokens.remove(resources.token);
+                if (resources.pyramid != null) {
+                    resources.pyramid.release();
+                }
             }
+            return null;
+        }
+    }
 
-            // 处理图像以增强条码识别
-            try {
-                resources.processedBitmap = imageProcessor.process(imageProxy);
+    /**
+     * 按阶段创建解码任务，同一阶段并行，前一阶段全部失败后才开始下一阶段
+     */
+    private List<CompletableFuture<ScanResult>> createStagedTasks(AdaptiveScheduler.Plan plan,
+                                                                 SharedImageResources resources, long startTime) {
+        List<CompletableFuture<ScanResult>> futures = new ArrayList<>(decoders.size());
+        CompletableFuture<Boolean> gate = CompletableFuture.completedFuture(true);
+        List<List<BarcodeDecoder>> stages = plan.getStages();
+        for (int i = 0; i < stages.size(); i++) {
+            List<BarcodeDecoder> stage = stages.get(i);
+            List<CompletableFuture<ScanResult>> stageFutures = new ArrayList<>(stage.size());
+            for (BarcodeDecoder decoder : stage) {
+                stageFutures.add(createDecodeTask(decoder, resources, startTime, gate));
+            }
+            futures.addAll(stageFutures);
+            gate = allFailed(stageFutures);
+            // 对冲：第一阶段超过延迟仍无结果时提前放行第二阶段，第一阶段继续运行
+            if (i == 0 && plan.getHedgeDelayMs() >= 0) {
+                gate = hedge(gate, plan.getHedgeDelayMs(), resources.token);
+            }
+        }
 
-                // 保存调试图像（仅在DEBUG模式）
-                if (BuildConfig.DEBUG) {
-                    saveDebugImage(resources.originalBitmap, "original");
-                    if (resources.processedBitmap != null) {
-                        saveDebugImage(resources.processedBitmap, "processed");
-                    }
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "图像处理失败", e);
-                // 继续使用原始图像
+        gate.thenRun(() -> resources.rawEndMs = System.currentTimeMillis());
+
+        // 原始帧全部失败后，各变体×各引擎的任务同时分发到所有解码线程
+        futures.addAll(createVariantTasks(plan, resources, startTime, gate));
+        return futures;
+    }
+
+    /**
+     * 支持多码的引擎并行解码原始分辨率的整帧，全部结束后合并
+     * 标签在整托画面中通常很小，不使用金字塔的低分辨率层
+     *
+     * @return 合并后的结果，在所有引擎任务结束后才完成
+     */
+    private CompletableFuture<ScanResult> createMultiTask(SharedImageResources resources, long startTime) {
+        List<CompletableFuture<DecodeResult>> engineFutures = new ArrayList<>(decoders.size());
+        for (BarcodeDecoder decoder : decoders) {
+            if (decoder.supportsMulti()) {
+                engineFutures.add(CompletableFuture.supplyAsync(
+                        () -> decodeMulti(decoder, resources), pipeline.getExecutor()));
             }
+        }
+        boolean verify = resources.epoch.getSession().getConsensus().isEnabled();
+        return CompletableFuture.allOf(engineFutures.toArray(new CompletableFuture[0]))
+                .handle((ignored, ex) -> mergeCodes(engineFutures, verify, startTime));
+    }
 
-            return resources;
+    private DecodeResult decodeMulti(BarcodeDecoder decoder, SharedImageResources resources) {
+        if (resources.token.isCancelled()) return null;
+
+        CancellationToken token = resources.token.child(getEngineBudgetMs(decoder));
+        long engineStart = System.currentTimeMillis();
+        try {
+            DecodeResult result;
+            if (decoder.isThreadSafe()) {
+                result = decoder.decodeMulti(resources.snapshot, token);
+            } else {
+                synchronized (decoder) {
+                    token.throwIfCancelled();
+                    result = decoder.decodeMulti(resources.snapshot, token);
+                }
+            }
+            scheduler.recordEngine(decoder.getName(), result.isSuccess(),
+                    System.currentTimeMillis() - engineStart, result.getFormat());
+            return result;
+        } catch (CancellationException e) {
+            Log.d(TAG, decoder.getName() + "多码" + e.getMessage());
+            return null;
         } catch (Exception e) {
-            Log.e(TAG, "提取图像资源失败", e);
+            Log.e(TAG, decoder.getName() + "多码解码失败", e);
             return null;
         }
     }
 
-    private CompletableFuture<ScanResult> createMLKitTask(SharedImageResources resources, long startTime) {
-        return CompletableFuture.supplyAsync(() -> {
-            if (resultFound.get()) return null; // 如果已找到结果，立即返回
+    /**
+     * 合并各引擎的条码，同一位置的相同内容只保留一个
+     *
+     * @param verify 为true时一维码需要校验位通过或至少两个引擎读到相同内容，否则丢弃
+     */
+    private static ScanResult mergeCodes(List<CompletableFuture<DecodeResult>> engineFutures, boolean verify,
+                                         long startTime) {
+        List<DecodedCode> all = new ArrayList<>();
+        for (CompletableFuture<DecodeResult> future : engineFutures) {
+            DecodeResult result = future.getNow(null);
+            if (result != null) {
+                all.addAll(result.getCodes());
+            }
+        }
+
+        List<DecodedCode> codes = new ArrayList<>();
+        Set<String> engines = new LinkedHashSet<>();
+        for (DecodedCode code : DecodedCode.merge(all)) {
+            BarcodeFormat format = code.getFormat();
+            if (verify && ConsensusBuffer.isLinear(format) && !ConsensusBuffer.hasValidChecksum(format, code.getText())
+                    && code.getSources().size() < 2) {
+                Log.d(TAG, "丢弃未经验证的一维码: " + code);
+                continue;
+            }
+            codes.add(code);
+            engines.addAll(code.getSources());
+        }
 
+        long decodeTime = System.currentTimeMillis() - startTime;
+        String decoderType = TextUtils.join("+", engines);
+        if (codes.isEmpty()) {
+            return new ScanResult(false, null, decoderType, decodeTime);
+        }
+        Log.d(TAG, "多码解码: " + codes.size() + "个, 合并前" + all.size() + "个");
+        return new ScanResult(true, codes.get(0).getText(), decoderType, decodeTime, codes.get(0).getFormat(), codes);
+    }
+
+    /**
+     * @param gate 前一阶段的结果，为false（已有引擎成功）时本任务直接跳过
+     */
+    private CompletableFuture<ScanResult> createDecodeTask(BarcodeDecoder decoder, SharedImageResources resources,
+                                                         long startTime, CompletableFuture<Boolean> gate) {
+        return gate.thenApplyAsync(previousFailed -> {
+            if (!previousFailed || resources.token.isCancelled()) return null; // 如果已找到结果，立即返回
+
+            // 引擎的预算从开始运行时算起，不晚于整帧的截止时间
+            CancellationToken token = resources.token.child(getEngineBudgetMs(decoder));
+            long engineStart = System.currentTimeMillis();
             try {
-                ScanResult result = null;
-                // 首先尝试处理过的图像
-                if (resources.processedBitmap != null && !resources.processedBitmap.isRecycled()) {
-                    result = mlKitDecoder.decodeFromBitmap(resources.processedBitmap);
-                }
 
-                // 如果处理过的图像失败，尝试原始图像
-                if ((result == null || !result.isSuccess()) && !resultFound.get()
-                        && resources.originalBitmap != null && !resources.originalBitmap.isRecycled()) {
-                    result = mlKitDecoder.decodeFromBitmap(resources.originalBitmap);
-                }
+                // 从粗到细逐层尝试原始帧的金字塔，变体由createVariantTasks另行分发
+                DecodeResult result = decodePyramid(decoder, resources.pyramid, token);
 
-                // 如果解码成功，计算耗时并创建新的ScanResult
-                if (result != null && result.isSuccess()) {
-                    long decodeTime = System.currentTimeMillis() - startTime;
-                    return new ScanResult(true, result.getText(), "MLKit", decodeTime);
+                // 计算解码时间
+                long now = System.currentTimeMillis();
+                long decodeTime = now - startTime;
+                scheduler.recordEngine(decoder.getName(), result.isSuccess(), now - engineStart, result.getFormat());
+
+                return result.isSuccess() ?
+                        new ScanResult(true, result.getText(), decoder.getName(), decodeTime, result.getFormat()) :
+                        new ScanResult(false, null, decoder.getName(), decodeTime);
+            } catch (CancellationException e) {
+                // 记录从取消到引擎实际退出的延迟
+                Log.d(TAG, decoder.getName() + e.getMessage() + ", 响应" + token.getMillisSinceCancel() + "ms");
+                if (token.isExpired()) {
+                    // 超过预算视为失败，让调度器的耗时统计反映真实开销
+                    scheduler.recordEngine(decoder.getName(), false,
+                            System.currentTimeMillis() - engineStart, null);
                 }
-                return result;
+                return null;
             } catch (Exception e) {
-                if (!(e instanceof CancellationException)) {
-                    Log.e(TAG, "MLKit解码失败", e);
-                }
+                Log.e(TAG, decoder.getName() + "解码失败", e);
                 return null;
             }
-        }, AsyncTask.THREAD_POOL_EXECUTOR);
+        }, pipeline.getExecutor());
     }
 
+    /**
+     * 本帧可以尝试的输入变体，检测出的候选区域总是排在最前
+     */
+    private List<String> candidateVariants() {
+        List<String> variants = new ArrayList<>(1 + VariantGenerator.NAMES.size());
+        variants.add(AdaptiveScheduler.VARIANT_DETECTED);
+        if (variantFanOut) {
+            variants.addAll(VariantGenerator.NAMES);
+        }
+        return variants;
+    }
 
-    private CompletableFuture<ScanResult> createZXingTask(SharedImageResources resources, long startTime) {
-        return CompletableFuture.supplyAsync(() -> {
-            if (resultFound.get()) return null; // 如果已找到结果，立即返回
+    /**
+     * 原始帧的所有阶段都失败后，先并行生成计划中的各个变体，每个变体生成后立即与每个引擎组成一个解码任务
+     * 任务都提交到流水线的工作线程，任一任务成功后通过会话仲裁和取消标记让其余任务尽快退出
+     *
+     * @param gate 最后一个阶段的结果，为false时不生成变体
+     */
+    private List<CompletableFuture<ScanResult>> createVariantTasks(AdaptiveScheduler.Plan plan,
+                                                                  SharedImageResources resources, long startTime,
+                                                                  CompletableFuture<Boolean> gate) {
+        List<BarcodeDecoder> engines = new ArrayList<>();
+        for (List<BarcodeDecoder> stage : plan.getStages()) {
+            engines.addAll(stage);
+        }
+        List<CompletableFuture<ScanResult>> futures = new ArrayList<>(plan.getVariants().size() * engines.size());
+        for (String variant : plan.getVariants()) {
+            if (AdaptiveScheduler.VARIANT_DETECTED.equals(variant)) {
+                futures.addAll(createRegionTasks(engines, resources, startTime, gate));
+                continue;
+            }
+            CompletableFuture<FrameSnapshot> frame = gate.thenApplyAsync(previousFailed ->
+                    previousFailed && !resources.token.isCancelled() ? generateVariant(resources, variant) : null,
+                    pipeline.getExecutor());
+            for (BarcodeDecoder decoder : engines) {
+                futures.add(frame.thenApplyAsync(variantFrame ->
+                                decodeVariant(decoder, variant, variantFrame, resources, startTime),
+                        pipeline.getExecutor()));
+            }
+        }
+        return futures;
+    }
 
-            try {
-                String decodedText = null;
-                // 首先尝试处理过的图像
-                if (resources.processedBitmap != null) {
-                    decodedText = zXingDecoder.decode(resources.processedBitmap);
-                }
+    /**
+     * 两阶段的检测后解码：先在低分辨率层上检测并排序候选区域，
+     * 再把前maxRegions个区域分别裁剪摆正，每个区域生成后立即与每个引擎组成一个解码任务
+     * 任务数在检测前就已确定，检测到的区域不足时多余的任务直接跳过
+     */
+    private List<CompletableFuture<ScanResult>> createRegionTasks(List<BarcodeDecoder> engines,
+                                                                 SharedImageResources resources, long startTime,
+                                                                 CompletableFuture<Boolean> gate) {
+        int regionCount = maxRegions;
+        CompletableFuture<List<CandidateRegion>> detected = gate.thenApplyAsync(previousFailed ->
+                previousFailed && !resources.token.isCancelled() ?
+                        detectRegions(resources, regionCount) : Collections.<CandidateRegion>emptyList(),
+                pipeline.getExecutor());
+
+        List<CompletableFuture<ScanResult>> futures = new ArrayList<>(regionCount * engines.size());
+        for (int i = 0; i < regionCount; i++) {
+            int rank = i;
+            CompletableFuture<FrameSnapshot> crop = detected.thenApplyAsync(regions ->
+                    rank < regions.size() && !resources.token.isCancelled() ?
+                            extractRegion(resources, regions.get(rank)) : null,
+                    pipeline.getExecutor());
+            for (BarcodeDecoder decoder : engines) {
+                futures.add(crop.thenApplyAsync(regionFrame ->
+                                decodeRegion(decoder, rank, regionFrame, resources, startTime),
+                        pipeline.getExecutor()));
+            }
+        }
+        return futures;
+    }
 
-                // 如果处理过的图像失败，尝试原始图像
-                if (decodedText == null && !resultFound.get() && resources.originalBitmap != null
-                        && !resources.originalBitmap.isRecycled()) {
-                    decodedText = zXingDecoder.decode(resources.originalBitmap);
-                }
+    private List<CandidateRegion> detectRegions(SharedImageResources resources, int maxCount) {
+        long detectStart = System.currentTimeMillis();
+        try {
+            int level = Math.min(DETECTION_LEVEL, resources.pyramid.getLevelCount() - 1);
+            List<CandidateRegion> regions = imageProcessor.detect(resources.pyramid.getLevel(level),
+                    LumaPyramid.getScale(level), maxCount, resources.token);
+            resources.regions = regions;
+            resources.detectMs = System.currentTimeMillis() - detectStart;
+            return regions;
+        } catch (CancellationException e) {
+            Log.d(TAG, "检测候选区域已取消");
+            return Collections.emptyList();
+        } catch (Exception e) {
+            Log.e(TAG, "检测候选区域失败", e);
+            return Collections.emptyList();
+        }
+    }
 
-                // 计算解码时间
-                long decodeTime = System.currentTimeMillis() - startTime;
+    /**
+     * 裁剪一个候选区域并登记到resources，随帧一起清理，失败时返回null
+     */
+    private FrameSnapshot extractRegion(SharedImageResources resources, CandidateRegion region) {
+        long extractStart = System.currentTimeMillis();
+        FrameSnapshot frame = imageProcessor.extract(resources.snapshot, region);
+        resources.regionsMs.addAndGet(System.currentTimeMillis() - extractStart);
+        if (frame != null) {
+            resources.regionFrames.add(frame);
+            if (BuildConfig.DEBUG) {
+                saveDebugImage(frame.getBitmap(), "region", 0);
+            }
+        }
+        return frame;
+    }
 
-                return decodedText != null ?
-                        new ScanResult(true, decodedText, "ZXing", decodeTime) :
-                        new ScanResult(false, null, "ZXing", decodeTime);
-            } catch (Exception e) {
-                if (!(e instanceof CancellationException)) {
-                    Log.e(TAG, "ZXing解码失败", e);
-                }
-                return null;
+    /**
+     * 解码一个候选区域，结果的位置为该区域在原始帧中的四边形
+     *
+     * @param rank 区域在检测结果中的排名
+     */
+    private ScanResult decodeRegion(BarcodeDecoder decoder, int rank, FrameSnapshot frame,
+                                    SharedImageResources resources, long startTime) {
+        if (frame == null || resources.token.isCancelled()) return null;
+
+        CancellationToken token = resources.token.child(getEngineBudgetMs(decoder));
+        long regionStart = System.currentTimeMillis();
+        try {
+            DecodeResult result = decodeFrame(decoder, frame, null, token);
+            long now = System.currentTimeMillis();
+            scheduler.recordVariant(decoder.getName(), AdaptiveScheduler.VARIANT_DETECTED, result.isSuccess(),
+                    now - regionStart);
+            if (!result.isSuccess()) {
+                return new ScanResult(false, null, decoder.getName(), now - startTime);
             }
-        }, AsyncTask.THREAD_POOL_EXECUTOR);
+            CandidateRegion region = resources.regions.get(rank);
+            Log.d(TAG, decoder.getName() + "在第" + (rank + 1) + "个候选区域解码成功: " + region);
+            return new ScanResult(true, result.getText(), decoder.getName(), now - startTime, result.getFormat(),
+                    Collections.singletonList(new DecodedCode(result.getText(), result.getFormat(),
+                            region.getCorners(), decoder.getName())));
+        } catch (CancellationException e) {
+            Log.d(TAG, decoder.getName() + "(区域" + (rank + 1) + ")" + e.getMessage());
+            return null;
+        } catch (Exception e) {
+            Log.e(TAG, decoder.getName() + "解码候选区域失败", e);
+            return null;
+        }
     }
 
-    private ScheduledFuture<?> scheduleTimeout(ImageProxy imageProxy, SharedImageResources resources, long startTime) {
-        if (scheduledExecutor.isShutdown()) return null;
-        return scheduledExecutor.schedule(() -> {
-            if (!resultFound.get()) {
-                // 保存超时图像用于调试
-                if (BuildConfig.DEBUG) {
-                    saveTimeoutDebugImages(resources);
-                }
+    /**
+     * 生成一个变体并登记到resources，随帧一起清理，失败时返回null
+     */
+    private FrameSnapshot generateVariant(SharedImageResources resources, String variant) {
+        long generateStart = System.currentTimeMillis();
+        try {
+            FrameSnapshot frame = VariantGenerator.generate(resources.snapshot, variant);
+            resources.variantsMs.addAndGet(System.currentTimeMillis() - generateStart);
+            resources.variantFrames.add(frame);
+            return frame;
+        } catch (CancellationException e) {
+            Log.d(TAG, "生成变体" + variant + "已取消");
+            return null;
+        } catch (Exception e) {
+            Log.e(TAG, "生成变体" + variant + "失败", e);
+            return null;
+        }
+    }
+
+    private ScanResult decodeVariant(BarcodeDecoder decoder, String variant, FrameSnapshot frame,
+                                     SharedImageResources resources, long startTime) {
+        if (frame == null || resources.token.isCancelled()) return null;
+
+        CancellationToken token = resources.token.child(getEngineBudgetMs(decoder));
+        long variantStart = System.currentTimeMillis();
+        try {
+            DecodeResult result = decodeFrame(decoder, frame, null, token);
+            long now = System.currentTimeMillis();
+            scheduler.recordVariant(decoder.getName(), variant, result.isSuccess(), now - variantStart);
+            return new ScanResult(result.isSuccess(), result.isSuccess() ? result.getText() : null,
+                    decoder.getName(), now - startTime, result.getFormat());
+        } catch (CancellationException e) {
+            Log.d(TAG, decoder.getName() + "(" + variant + ")" + e.getMessage());
+            return null;
+        } catch (Exception e) {
+            Log.e(TAG, decoder.getName() + "解码变体" + variant + "失败", e);
+            return null;
+        }
+    }
 
-                // 清理资源
-                cleanupResources(imageProxy, resources);
+    // 阶段内所有任务都结束且没有成功结果时为true
+    private static CompletableFuture<Boolean> allFailed(List<CompletableFuture<ScanResult>> stageFutures) {
+        return CompletableFuture.allOf(stageFutures.toArray(new CompletableFuture[0]))
+                .handle((ignored, ex) -> {
+                    for (CompletableFuture<ScanResult> future : stageFutures) {
+                        ScanResult result = future.getNow(null);
+                        if (result != null && result.isSuccess()) {
+                            return false;
+                        }
+                    }
+                    return true;
+                });
+    }
 
-                long timeoutTime = System.currentTimeMillis() - startTime;
-                Log.d(TAG, "解码超时取消, 耗时: " + timeoutTime + "ms");
+    /**
+     * 在gate完成或延迟到期时（以先到者为准）放行下一阶段
+     * 延迟任务只在对冲计划中安排，gate先完成时立即取消
+     */
+    private CompletableFuture<Boolean> hedge(CompletableFuture<Boolean> gate, long delayMs,
+                                             CancellationToken token) {
+        CompletableFuture<Boolean> hedged = new CompletableFuture<>();
+        ScheduledFuture<?> timer = pipeline.schedule(() -> {
+            if (hedged.complete(!token.isCancelled())) {
+                Log.d(TAG, "首个引擎" + delayMs + "ms内未出结果，启动对冲引擎");
+            }
+        }, delayMs);
+        gate.thenAccept(previousFailed -> {
+            if (timer != null) {
+                timer.cancel(false);
             }
-        }, 3, TimeUnit.SECONDS);
+            hedged.complete(previousFailed);
+        });
+        return hedged;
     }
 
-    private void handleSuccessfulResult(
-            CompletableFuture<ScanResult> mlKitFuture,
-            CompletableFuture<ScanResult> zxingFuture,
-            ImageProxy imageProxy,
-            SharedImageResources resources,
-            ScheduledFuture<?> timeoutFuture) {
+    /**
+     * 从粗到细逐层解码，粗层定位到候选区域但未能解码时直接到原始帧的对应区域局部解码
+     */
+    private DecodeResult decodePyramid(BarcodeDecoder decoder, LumaPyramid pyramid, CancellationToken token) {
+        FrameSnapshot base = pyramid.getLevel(0);
+        PyramidStats stats = pyramidStats.get(decoder.getName());
+        DecodeResult result = DecodeResult.notFound(decoder.getName());
+        boolean regionTried = false;
+
+        for (int level = firstLevel(pyramid); level >= 0 && !token.isCancelled(); level--) {
+            long levelStart = System.currentTimeMillis();
+            result = decodeFrame(decoder, pyramid.getLevel(level), null, token);
+            stats.recordAttempt(level, result.isSuccess());
+            scheduler.recordVariant(decoder.getName(), "L" + level, result.isSuccess(),
+                    System.currentTimeMillis() - levelStart);
+            if (result.isSuccess()) {
+                return result;
+            }
+
+            // 只在第一次定位到候选时尝试局部解码，区域失败后继续逐层提高分辨率
+            Rect candidate = result.getCandidateRegion();
+            if (level > 0 && candidate != null && !regionTried && decoder.supportsRegion()
+                    && !token.isCancelled()) {
+                regionTried = true;
+                Rect region = scaleRegion(candidate, LumaPyramid.getScale(level),
+                        base.getWidth(), base.getHeight());
+                if (region != null) {
+                    long regionStart = System.currentTimeMillis();
+                    result = decodeFrame(decoder, base, region, token);
+                    stats.recordRegionAttempt(result.isSuccess());
+                    scheduler.recordVariant(decoder.getName(), AdaptiveScheduler.VARIANT_REGION,
+                            result.isSuccess(), System.currentTimeMillis() - regionStart);
+                    if (result.isSuccess()) {
+                        return result;
+                    }
+                }
+            }
+        }
+        return result;
+    }
 
-        // 处理MLKit结果
-        mlKitFuture.thenAccept(result -> {
-            if (result != null && result.isSuccess() && resultFound.compareAndSet(false, true)) {
-                Log.d(TAG, "MLKit成功解码: " + result.getText() + ", 耗时: " + result.getDecodeTime() + "ms");
+    // 非线程安全的引擎在同一实例上串行调用
+    private DecodeResult decodeFrame(BarcodeDecoder decoder, FrameSnapshot frame, Rect region,
+                                     CancellationToken token) {
+        if (decoder.isThreadSafe()) {
+            return region == null ? decoder.decode(frame, token) : decoder.decode(frame, region, token);
+        }
+        synchronized (decoder) {
+            // 等锁期间可能已被取消
+            token.throwIfCancelled();
+            return region == null ? decoder.decode(frame, token) : decoder.decode(frame, region, token);
+        }
+    }
 
-                // 取消其他任务
-                cancelTasks(zxingFuture, timeoutFuture);
+    private int firstLevel(LumaPyramid pyramid) {
+        return Math.max(0, Math.min(startLevel, pyramid.getLevelCount() - 1));
+    }
 
-                // 通知结果
-                handleScanResult(result);
+    /**
+     * 将粗层的候选区域放大到原始帧坐标，过小或覆盖整帧时返回null
+     */
+    private static Rect scaleRegion(Rect candidate, int scale, int width, int height) {
+        int left = Math.max(0, candidate.left * scale);
+        int top = Math.max(0, candidate.top * scale);
+        int right = Math.min(width, candidate.right * scale);
+        int bottom = Math.min(height, candidate.bottom * scale);
 
-                // 清理资源
-                cleanupResources(imageProxy, resources);
+        if (right - left < LumaPyramid.MIN_LEVEL_SIZE / 4 || bottom - top < LumaPyramid.MIN_LEVEL_SIZE / 4) {
+            return null;
+        }
+        if (right - left >= width && bottom - top >= height) {
+            return null;
+        }
+        return new Rect(left, top, right, bottom);
+    }
+
+    /**
+     * 按传感器时间戳估计帧间隔，只在分析线程上调用
+     */
+    private void updateFrameInterval(long timestampNs) {
+        if (lastFrameTimestampNs > 0 && timestampNs > lastFrameTimestampNs) {
+            double interval = (timestampNs - lastFrameTimestampNs) / 1_000_000.0;
+            if (interval <= MAX_FRAME_INTERVAL_MS) {
+                frameIntervalMs += 0.1 * (interval - frameIntervalMs);
             }
-        });
+        }
+        lastFrameTimestampNs = timestampNs;
+    }
+
+    /**
+     * 每帧的时间预算：帧间隔乘以deadlineFrames，不少于MIN_FRAME_BUDGET_MS
+     */
+    public long getFrameBudgetMs() {
+        return Math.max(MIN_FRAME_BUDGET_MS, Math.round(frameIntervalMs * deadlineFrames));
+    }
 
-        // 处理ZXing结果
-        zxingFuture.thenAccept(result -> {
-            if (result != null && result.isSuccess() && resultFound.compareAndSet(false, true)) {
-                Log.d(TAG, "ZXing成功解码: " + result.getText() + ", 耗时: " + result.getDecodeTime() + "ms");
+    private long getEngineBudgetMs(BarcodeDecoder decoder) {
+        Long configured = engineBudgets.get(decoder.getName());
+        if (configured != null) {
+            return configured;
+        }
+        double latency = scheduler.getLatencyMs(decoder.getName());
+        if (latency <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(MIN_ENGINE_BUDGET_MS, Math.round(latency * ENGINE_BUDGET_LATENCY_FACTOR));
+    }
 
-                // 取消其他任务
-                cancelTasks(mlKitFuture, timeoutFuture);
+    private void handleSuccessfulResult(
+            List<CompletableFuture<ScanResult>> futures,
+            SharedImageResources resources,
+            long startTime,
+            boolean verified) {
+
+        ScanSession.FrameEpoch epoch = resources.epoch;
+        CancellationToken frameToken = resources.token;
+        for (CompletableFuture<ScanResult> future : futures) {
+            future.thenAccept(result -> {
+                if (result == null || !result.isSuccess()) {
+                    return;
+                }
+                // 一维码需要多帧印证，本帧已投出一票，其余任务不必继续
+                if (!verified
+                        && !epoch.getSession().getConsensus().offer(epoch.getEpoch(), result.getFormat(), result.getText())) {
+                    Log.d(TAG, "等待多帧确认: " + result.getText() + ", 帧: " + epoch
+                            + ", 来自: " + result.getDecoderType());
+                    frameToken.cancel();
+                    return;
+                }
+                ScanSession resultSession = epoch.getSession();
+                ScanResult reported = result;
+                // 连续扫描时去重缓存代替会话仲裁，同一条码在窗口内只上报一次
+                if (resultSession.isContinuous() && resultSession.isOpen()) {
+                    reported = filterDuplicates(result);
+                    if (reported == null) {
+                        Log.d(TAG, "重复条码: " + result.getText() + ", 帧: " + epoch);
+                        frameToken.cancel();
+                        return;
+                    }
+                }
+                reported = reported.withStageTimings(stageTimings(resources, startTime));
+                // 每个会话只有第一个到达的结果生效，已结束会话的结果直接丢弃
+                if (!resultSession.tryAccept(epoch, reported)) {
+                    Log.d(TAG, "丢弃过期结果, 帧: " + epoch + ", 来自: " + result.getDecoderType());
+                    return;
+                }
+                Log.d(TAG, reported.getDecoderType() + "成功解码: " + reported.getText()
+                        + (reported.getCodes().size() > 1 ? "等" + reported.getCodes().size() + "个条码" : "")
+                        + ", 帧: " + epoch + ", 耗时: " + reported.getDecodeTime() + "ms");
+
+                // 取消其他任务，连续扫描时其他帧可能是另一个条码，只取消本帧
+                if (resultSession.isContinuous()) {
+                    frameToken.cancel();
+                } else {
+                    cancelTasks();
+                }
 
                 // 通知结果
-                handleScanResult(result);
+                handleScanResult(reported);
+            });
+        }
+    }
+
+    /**
+     * 结果被接受时各阶段的耗时，只包含本帧实际经过的阶段
+     * 原始帧仍在解码时（结果来自原始帧或对冲）raw记到结果被接受为止
+     */
+    private static Map<String, Long> stageTimings(SharedImageResources resources, long startTime) {
+        long now = System.currentTimeMillis();
+        long rawEnd = resources.rawEndMs;
+        Map<String, Long> timings = new LinkedHashMap<>();
+        timings.put(ScanResult.STAGE_CAPTURE, resources.captureMs);
+        timings.put(ScanResult.STAGE_QUEUE, resources.decodeStartMs - startTime);
+        timings.put(ScanResult.STAGE_PYRAMID, resources.pyramidMs);
+        timings.put(ScanResult.STAGE_RAW, (rawEnd >= 0 ? rawEnd : now) - resources.rawStartMs);
+        if (resources.detectMs >= 0) {
+            timings.put(ScanResult.STAGE_DETECT, resources.detectMs);
+        }
+        if (!resources.variantFrames.isEmpty()) {
+            timings.put(ScanResult.STAGE_VARIANTS, resources.variantsMs.get());
+        }
+        if (!resources.regionFrames.isEmpty()) {
+            timings.put(ScanResult.STAGE_REGIONS, resources.regionsMs.get());
+        }
+        timings.put(ScanResult.STAGE_DECODE, now - resources.decodeStartMs);
+        return timings;
+    }
 
-                // 清理资源
-                cleanupResources(imageProxy, resources);
+    /**
+     * 去掉去重窗口内已上报过的条码，全部重复时返回null
+     */
+    private ScanResult filterDuplicates(ScanResult result) {
+        long now = System.currentTimeMillis();
+        List<DecodedCode> fresh = new ArrayList<>(result.getCodes().size());
+        for (DecodedCode code : result.getCodes()) {
+            if (dedupCache.offer(code.getFormat() + ":" + code.getText(), now)) {
+                fresh.add(code);
             }
-        });
+        }
+        if (fresh.isEmpty()) {
+            return null;
+        }
+        if (fresh.size() == result.getCodes().size()) {
+            return result;
+        }
+        return new ScanResult(true, fresh.get(0).getText(), result.getDecoderType(), result.getDecodeTime(),
+                fresh.get(0).getFormat(), fresh);
     }
 
     private void handleTasksCompletion(
-            CompletableFuture<ScanResult> mlKitFuture,
-            CompletableFuture<ScanResult> zxingFuture,
-            ImageProxy imageProxy,
+            List<CompletableFuture<ScanResult>> futures,
             SharedImageResources resources,
-            ScheduledFuture<?> timeoutFuture) {
+            long startTime,
+            Runnable done) {
 
-        CompletableFuture.allOf(mlKitFuture, zxingFuture)
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
                 .exceptionally(ex -> {
                     // CancellationException是正常的取消操作，不应视为错误
                     if (!(ex.getCause() instanceof CancellationException)) {
@@ -292,273 +909,325 @@ public class DecoderManager {
                     return null;
                 })
                 .thenRun(() -> {
-                    // 只有在没有找到结果的情况下清理资源
-                    if (!resultFound.get()) {
-                        // 取消超时任务
-                        if (timeoutFuture != null && !timeoutFuture.isDone()) {
-                            timeoutFuture.cancel(false);
+                    // 超过截止时间仍未得出结果
+                    if (resources.token.isExpired() && resources.epoch.getSession().isOpen()) {
+                        Log.d(TAG, "帧" + resources.epoch + "解码超时, 耗时: "
+                                + (System.currentTimeMillis() - startTime) + "ms");
+                        if (BuildConfig.DEBUG) {
+                            saveTimeoutDebugImages(resources);
                         }
-
-                        cleanupResources(imageProxy, resources);
                     }
+
+                    // 门控按完整解码一帧的平均耗时估算跳帧节省的时间
+                    frameGate.recordDecodeMillis(System.currentTimeMillis() - resources.decodeStartMs);
+
+                    // 所有任务都结束后才清理资源，避免回收仍在被读取的帧数据
+                    cleanupResources(resources);
+                    done.run();
                 });
     }
 
-    private void cancelTasks(CompletableFuture<?> future, ScheduledFuture<?> timeoutFuture) {
-        if (future != null && !future.isDone()) {
-            future.cancel(true);
-        }
-
-        if (timeoutFuture != null && !timeoutFuture.isDone()) {
-            timeoutFuture.cancel(false);
+    private void cancelTasks() {
+        // CompletableFuture.cancel不会中断正在运行的解码，反而会让allOf提前完成并回收仍在使用的帧数据，
+        // 因此这里只取消所有帧的标记，由引擎在检查点抛出CancellationException尽快退出
+        for (CancellationToken token : activeTokens) {
+            token.cancel();
         }
     }
 
-    private void cleanupResources(ImageProxy imageProxy, SharedImageResources resources) {
+    private void cleanupResources(SharedImageResources resources) {
         try {
-            // 回收位图
-            if (resources != null) {
-                if (resources.originalBitmap != null && !resources.originalBitmap.isRecycled()) {
-                    resources.originalBitmap.recycle();
+            if (resources != null && resources.cleaned.compareAndSet(false, true)) {
+                activeTokens.remove(resources.token);
+                // 位图都由各自的帧数据负责回收
+                if (resources.pyramid != null) {
+                    resources.pyramid.release();
+                }
+                for (FrameSnapshot frame : resources.regionFrames) {
+                    frame.release();
                 }
-                if (resources.processedBitmap != null && !resources.processedBitmap.isRecycled()) {
-                    resources.processedBitmap.recycle();
+                for (FrameSnapshot frame : resources.variantFrames) {
+                    frame.release();
+                }
+                if (resources.snapshot != null) {
+                    resources.snapshot.release();
                 }
             }
-
-            // 关闭ImageProxy
-            cleanupImageProxy(imageProxy);
-
         } catch (Exception e) {
             Log.e(TAG, "清理资源时出错", e);
         }
     }
 
-    private void cleanupImageProxy(ImageProxy imageProxy) {
+    private void saveTimeoutDebugImages(SharedImageResources resources) {
         try {
-            // 确保ImageProxy尚未关闭
-            if (isImageProxyClosed(imageProxy)) {
-                Log.d(TAG, "ImageProxy已经关闭，跳过关闭操作");
-            } else {
-                imageProxy.close();
+            int rotationDegrees = resources.snapshot.getRotationDegrees();
+            saveDebugImage(resources.snapshot.getBitmap(), "timeout_original", rotationDegrees);
+            for (FrameSnapshot frame : resources.regionFrames) {
+                // 候选区域已摆正
+                saveDebugImage(frame.getBitmap(), "timeout_region", 0);
             }
         } catch (Exception e) {
-            Log.e(TAG, "关闭ImageProxy时出错", e);
-        } finally {
-            // 从活动集合中移除
-            activeImages.remove(imageProxy);
+            Log.e(TAG, "保存超时调试图像失败", e);
         }
     }
 
-    @OptIn(markerClass = ExperimentalGetImage.class)
-    private boolean isImageProxyClosed(ImageProxy imageProxy) {
-        if (imageProxy == null) return true;
 
+    private FrameSnapshot takeSnapshot(ImageProxy imageProxy) {
         try {
-            return imageProxy.getImage() == null;
-        } catch (IllegalStateException e) {
-            return true;
+            // 旋转角度只作为元数据保存，不再旋转像素
+            return FrameSnapshot.from(imageProxy, needsChroma);
+        } catch (Exception e) {
+            Log.e(TAG, "从ImageProxy提取帧数据失败", e);
+            return null;
+        } finally {
+            imageProxy.close();
         }
     }
 
-    private void saveTimeoutDebugImages(SharedImageResources resources) {
+    private void saveDebugImage(Bitmap bitmap, String prefix, int rotationDegrees) {
+        if (bitmap == null || bitmap.isRecycled()) return;
+
+        Bitmap upright = null;
         try {
-            if (resources.originalBitmap != null && !resources.originalBitmap.isRecycled()) {
-                saveDebugImage(resources.originalBitmap, "timeout_original");
+            File picturesDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES);
+            File debugDir = new File(picturesDir, "ScannerDebug");
+            if (!debugDir.exists() && !debugDir.mkdirs()) {
+                Log.e(TAG, "无法创建调试目录");
+                return;
             }
-            if (resources.processedBitmap != null && !resources.processedBitmap.isRecycled()) {
-                saveDebugImage(resources.processedBitmap, "timeout_processed");
+
+            String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+            File imageFile = new File(debugDir, prefix + "_" + timestamp + ".jpg");
+
+            // 只有调试图像需要正向像素
+            upright = FrameSnapshot.rotate(bitmap, rotationDegrees);
+            try (FileOutputStream out = new FileOutputStream(imageFile)) {
+                upright.compress(Bitmap.CompressFormat.JPEG, 90, out);
+                Log.d(TAG, "已保存调试图像: " + imageFile.getAbsolutePath());
             }
         } catch (Exception e) {
-            Log.e(TAG, "保存超时调试图像失败", e);
+            Log.e(TAG, "保存调试图像失败", e);
+        } finally {
+            // 回收旋转产生的临时位图
+            if (upright != null && upright != bitmap) {
+                upright.recycle();
+            }
         }
     }
 
-
-    // 优化后的图像转换方法，更加健壮
-    @OptIn(markerClass = ExperimentalGetImage.class)
-    private Bitmap imageToBitmap(ImageProxy imageProxy) {
-        Image image = imageProxy.getImage();
-        if (image == null) {
-            Log.e(TAG, "ImageProxy中的Image为null");
-            return null;
-        }
-
-        try {
-            return convertYuv420ToBitmap(image, imageProxy.getImageInfo().getRotationDegrees());
-        } catch (Exception e) {
-            Log.e(TAG, "将ImageProxy转换为Bitmap失败", e);
-            return null;
+    private void handleScanResult(ScanResult result) {
+        if (result.isSuccess() && listener != null) {
+            listener.onScanResult(result);
         }
     }
 
-    // 保留您原有的convertYuv420ToBitmap方法，这里不再重复
-    private Bitmap convertYuv420ToBitmap(Image image, int rotationDegrees) {
-        if (image.getFormat() != ImageFormat.YUV_420_888) {
-            Log.e(TAG, "不支持的图像格式: " + image.getFormat());
-            return null;
+    /**
+     * 结束当前会话并开始新的扫描会话，旧会话中仍在解码的帧会被取消，其结果不再上报
+     */
+    public void resumeScanning() {
+        ScanSession previous = session;
+        previous.close();
+        for (CancellationToken token : activeTokens) {
+            token.cancel();
         }
+        session = newSession();
+        Log.d(TAG, "开始扫描会话: " + session.getId() + ", 上一会话: " + previous);
+    }
 
-        int width = image.getWidth();
-        int height = image.getHeight();
+    private ScanSession newSession() {
+        return new ScanSession(sessionIds.incrementAndGet(),
+                new ConsensusBuffer(consensusWindow, consensusVotes), continuous);
+    }
 
-        // 获取YUV平面
-        Image.Plane[] planes = image.getPlanes();
-        ByteBuffer yBuffer = planes[0].getBuffer();
-        ByteBuffer uBuffer = planes[1].getBuffer();
-        ByteBuffer vBuffer = planes[2].getBuffer();
+    /**
+     * 切换连续扫描模式并立即开始新会话
+     * 连续扫描时相机和解码一直运行，每个新条码都回调一次监听器，相同条码在去重窗口内只回调一次
+     */
+    public void setContinuous(boolean continuous) {
+        this.continuous = continuous;
+        dedupCache.clear();
+        resumeScanning();
+    }
 
-        // 计算每个平面的行跨度
-        int yStride = planes[0].getRowStride();
-        int uvStride = planes[1].getRowStride();
-        int uvPixelStride = planes[1].getPixelStride();
+    public boolean isContinuous() {
+        return continuous;
+    }
 
-        // 准备NV21数据，这是YuvImage所需的格式
-        byte[] nv21 = new byte[width * height * 3 / 2];
-        int ySize = width * height;
+    /**
+     * 设置连续扫描的去重窗口，为0时不去重
+     */
+    public void setDedupWindowMs(long windowMs) {
+        dedupCache.setWindowMs(windowMs);
+    }
 
-        // 复制Y平面
-        if (yStride == width) {
-            // 没有行填充，可以一次性复制
-            yBuffer.get(nv21, 0, ySize);
-        } else {
-            // 有行填充，需要按行复制
-            int yBufferPos = 0;
-            for (int row = 0; row < height; row++) {
-                yBuffer.position(yBufferPos);
-                yBuffer.get(nv21, row * width, width);
-                yBufferPos += yStride;
-            }
-        }
+    public DedupCache getDedupCache() {
+        return dedupCache;
+    }
 
-        // 交错复制U和V平面
-        int uvPos = 0;
-        int uvBufferPos = 0;
-        for (int row = 0; row < height / 2; row++) {
-            for (int col = 0; col < width / 2; col++) {
-                // 复制V值
-                vBuffer.position(uvBufferPos);
-                nv21[ySize + uvPos] = vBuffer.get();
-                uvPos++;
+    /**
+     * 当前会话是否仍在等待结果
+     */
+    public boolean isScanning() {
+        return session.isOpen();
+    }
 
-                // 复制U值
-                uBuffer.position(uvBufferPos);
-                nv21[ySize + uvPos] = uBuffer.get();
-                uvPos++;
+    public ScanSession getSession() {
+        return session;
+    }
 
-                uvBufferPos += uvPixelStride;
-            }
-            if (uvPixelStride == 2 && width % 2 == 1) {
-                // 调整UV缓冲区位置
-                uvBufferPos += 1;
-            }
-            uvBufferPos += (uvStride - width);
+    /**
+     * 设置金字塔层数和起始层，起始层为0时只解码原始分辨率
+     */
+    public void setPyramidLevels(int levelCount, int startLevel) {
+        if (levelCount < 1 || startLevel < 0 || startLevel >= levelCount) {
+            throw new IllegalArgumentException("无效的金字塔配置: levels=" + levelCount + ", start=" + startLevel);
         }
+        this.pyramidLevels = levelCount;
+        this.startLevel = startLevel;
+    }
 
-        // 使用YuvImage将NV21转换为JPEG
-        YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, width, height, null);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        yuvImage.compressToJpeg(new Rect(0, 0, width, height), 100, out);
-
-        // 从JPEG创建Bitmap
-        byte[] jpegData = out.toByteArray();
-        Bitmap bitmap = BitmapFactory.decodeByteArray(jpegData, 0, jpegData.length);
-
-        // 应用旋转
-        if (rotationDegrees != 0 && bitmap != null) {
-            Matrix matrix = new Matrix();
-            matrix.postRotate(rotationDegrees);
-            try {
-                Bitmap rotatedBitmap = Bitmap.createBitmap(
-                        bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(),
-                        matrix, true);
+    /**
+     * 设置对冲模式，OFF时多个引擎直接竞速
+     */
+    public void setHedge(AdaptiveScheduler.Hedge hedge) {
+        scheduler.setHedge(hedge);
+    }
 
-                // 回收原始位图
-                if (bitmap != rotatedBitmap) {
-                    bitmap.recycle();
-                }
+    /**
+     * 原始帧失败后是否分发反色、二值化、旋转等变体，关闭后只尝试检测出的候选区域
+     */
+    public void setVariantFanOut(boolean variantFanOut) {
+        this.variantFanOut = variantFanOut;
+    }
 
-                bitmap = rotatedBitmap;
-            } catch (OutOfMemoryError e) {
-                Log.e(TAG, "旋转位图时内存不足", e);
-                // 保持原始位图不变
-            }
+    /**
+     * 设置检测阶段最多交给解码阶段的候选区域数，任务数为区域数乘以引擎数
+     */
+    public void setMaxRegions(int maxRegions) {
+        if (maxRegions < 1) {
+            throw new IllegalArgumentException("maxRegions必须大于0: " + maxRegions);
         }
+        this.maxRegions = maxRegions;
+    }
 
-        try {
-            out.close();
-        } catch (IOException e) {
-            Log.e(TAG, "关闭输出流失败", e);
-        }
+    /**
+     * 开关解码前的清晰度和运动门控
+     */
+    public void setFrameGateEnabled(boolean enabled) {
+        frameGate.setEnabled(enabled);
+    }
 
-        return bitmap;
+    /**
+     * 帧质量门控，可读取跳过的帧数和估算节省的解码时间
+     */
+    public FrameGate getFrameGate() {
+        return frameGate;
     }
 
+    /**
+     * 切换多码模式：每帧由所有支持多码的引擎找出全部条码，按位置和内容合并后作为一个结果上报
+     * 结果的getCodes()包含每个条码的格式和帧坐标下的顶点
+     */
+    public void setMultiCode(boolean multiCode) {
+        this.multiCode = multiCode;
+    }
 
-    private void saveDebugImage(Bitmap bitmap, String prefix) {
-        if (bitmap == null || bitmap.isRecycled()) return;
+    public boolean isMultiCode() {
+        return multiCode;
+    }
 
-        try {
-            File picturesDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES);
-            File debugDir = new File(picturesDir, "ScannerDebug");
-            if (!debugDir.exists() && !debugDir.mkdirs()) {
-                Log.e(TAG, "无法创建调试目录");
-                return;
-            }
+    /**
+     * 设置一维码的多帧投票，从下一个会话开始生效
+     * 投票开启时ZXing对一维码不再使用TRY_HARDER，单帧更快，误读由投票过滤；二维码不投票，保持不变
+     *
+     * @param window 投票窗口的帧数
+     * @param requiredVotes 接受读数所需的帧数，带校验位的读数只需2帧，不大于1时关闭投票
+     */
+    public void setConsensus(int window, int requiredVotes) {
+        if (window < 1 || requiredVotes > window) {
+            throw new IllegalArgumentException("无效的投票配置: window=" + window + ", votes=" + requiredVotes);
+        }
+        this.consensusWindow = window;
+        this.consensusVotes = requiredVotes;
+        applyLinearVerified();
+    }
 
-            String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
-            File imageFile = new File(debugDir, prefix + "_" + timestamp + ".jpg");
+    // 只影响本管理器创建的引擎实例
+    private void applyLinearVerified() {
+        boolean verified = consensusVotes > 1;
+        for (BarcodeDecoder decoder : decoders) {
+            decoder.setLinearVerified(verified);
+        }
+    }
 
-            try (FileOutputStream out = new FileOutputStream(imageFile)) {
-                bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
-                Log.d(TAG, "已保存调试图像: " + imageFile.getAbsolutePath());
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "保存调试图像失败", e);
+    /**
+     * 设置每帧的截止时间为帧间隔的多少倍
+     */
+    public void setDeadlineFrames(float deadlineFrames) {
+        if (deadlineFrames <= 0) {
+            throw new IllegalArgumentException("deadlineFrames必须大于0: " + deadlineFrames);
         }
+        this.deadlineFrames = deadlineFrames;
     }
 
-    private void handleScanResult(ScanResult result) {
-        if (result.isSuccess() && listener != null) {
-            isScanning = false;
-            listener.onScanResult(result);
+    /**
+     * 为某个引擎单独设置时间预算，预算不会超过整帧的截止时间
+     *
+     * @param budgetMs 预算毫秒数，不大于0时恢复按平均耗时计算
+     */
+    public void setEngineBudgetMs(String engineName, long budgetMs) {
+        if (budgetMs > 0) {
+            engineBudgets.put(engineName, budgetMs);
+        } else {
+            engineBudgets.remove(engineName);
         }
     }
 
-    public void resumeScanning() {
-        isScanning = true;
-        resultFound.set(false); // 重置结果状态
+    /**
+     * 某个引擎的金字塔命中统计，引擎未启用时返回null
+     */
+    public PyramidStats getPyramidStats(String engineName) {
+        return pyramidStats.get(engineName);
     }
 
-    public void release() {
-        mlKitDecoder.release();
-        zXingDecoder.release();
-
-        // 清理所有活动图像
-        synchronized (activeImages) {
-            for (ImageProxy imageProxy : activeImages) {
-                try {
-                    if (!isImageProxyClosed(imageProxy)) {
-                        imageProxy.close();
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "释放时关闭ImageProxy失败", e);
-                }
-            }
-            activeImages.clear();
-        }
+    /**
+     * 自适应调度器，可读取学习到的统计数据，或通过toJson/loadJson跨会话保存
+     */
+    public AdaptiveScheduler getScheduler() {
+        return scheduler;
+    }
 
-        if (scheduledExecutor != null && !scheduledExecutor.isShutdown()) {
-            scheduledExecutor.shutdown();
-            try {
-                // 等待任务完成
-                if (!scheduledExecutor.awaitTermination(500, TimeUnit.MILLISECONDS)) {
-                    scheduledExecutor.shutdownNow();
+    /**
+     * 解码流水线，可调整同时解码的帧数或读取排队、丢帧统计
+     */
+    public DecodePipeline getPipeline() {
+        return pipeline;
+    }
+
+    public void release() {
+        Log.d(TAG, "帧缓冲池统计: " + bufferPool);
+        Log.d(TAG, "调度统计: " + scheduler);
+        Log.d(TAG, "解码流水线统计: " + pipeline);
+        Log.d(TAG, "扫描会话: " + session);
+        Log.d(TAG, "去重统计: " + dedupCache);
+        Log.d(TAG, "帧质量门控: " + frameGate);
+        Log.d(TAG, "帧槽位统计: " + FrameArena.getInstance());
+        Log.d(TAG, "金字塔命中统计: " + pyramidStats.values());
+        // 先取消进行中的帧，引擎在检查点尽快退出，流水线才能在等待时限内停下
+        cancelTasks();
+        pipeline.shutdown();
+        // 等待超时后可能仍有解码在执行，非线程安全的引擎与decodeFrame使用同一把锁，
+        // 等当前调用结束再释放；排在锁后面的解码会因标记已取消而直接退出
+        for (BarcodeDecoder decoder : decoders) {
+            if (decoder.isThreadSafe()) {
+                decoder.release();
+            } else {
+                synchronized (decoder) {
+                    decoder.release();
                 }
-            } catch (InterruptedException e) {
-                scheduledExecutor.shutdownNow();
             }
         }
+        imageProcessor.release();
     }
 }
 
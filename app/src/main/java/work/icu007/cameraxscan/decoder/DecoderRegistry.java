@@ -0,0 +1,115 @@
+package work.icu007.cameraxscan.decoder;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/28-14:30
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 解码引擎注册表，按名称登记引擎的创建方式
+ * 注册顺序即调度顺序；默认启用的引擎组成DecoderManager的默认引擎列表，
+ * 其余引擎可以按部署需要通过名称显式启用，用于对比测试
+ */
+public final class DecoderRegistry {
+    private static final String TAG = "DecoderRegistry";
+
+    public static final String MLKIT = "MLKit";
+    public static final String ZXING = "ZXing";
+    public static final String OPENCV_BARCODE = "OpenCV-Barcode";
+    public static final String OPENCV_QRCODE = "OpenCV-QRCode";
+
+    private static final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    private static final class Entry {
+        final Supplier<BarcodeDecoder> factory;
+        final boolean enabledByDefault;
+
+        Entry(Supplier<BarcodeDecoder> factory, boolean enabledByDefault) {
+            this.factory = factory;
+            this.enabledByDefault = enabledByDefault;
+        }
+    }
+
+    static {
+        register(MLKIT, MLKitBarcodeDecoder::new, true);
+        register(ZXING, ZXingBarcodeDecoder::new, true);
+        register(OPENCV_BARCODE, OpenCVBarcodeDecoder::new, false);
+        register(OPENCV_QRCODE, OpenCVQRCodeDecoder::new, false);
+    }
+
+    private DecoderRegistry() {
+    }
+
+    /**
+     * 注册引擎，同名引擎会被替换
+     *
+     * @param factory 每次创建一个新的引擎实例
+     * @param enabledByDefault 是否出现在默认引擎列表中
+     */
+    public static synchronized void register(String name, Supplier<BarcodeDecoder> factory,
+                                             boolean enabledByDefault) {
+        entries.put(name, new Entry(factory, enabledByDefault));
+    }
+
+    public static synchronized void unregister(String name) {
+        entries.remove(name);
+    }
+
+    public static synchronized List<String> getRegisteredNames() {
+        return Collections.unmodifiableList(new ArrayList<>(entries.keySet()));
+    }
+
+    public static synchronized List<String> getDefaultNames() {
+        List<String> names = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().enabledByDefault) {
+                names.add(entry.getKey());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 按名称创建引擎，未注册或创建失败时返回null
+     */
+    public static BarcodeDecoder create(String name) {
+        Entry entry;
+        synchronized (DecoderRegistry.class) {
+            entry = entries.get(name);
+        }
+        if (entry == null) {
+            Log.w(TAG, "未注册的解码引擎: " + name);
+            return null;
+        }
+        try {
+            return entry.factory.get();
+        } catch (Exception e) {
+            Log.e(TAG, "创建解码引擎失败: " + name, e);
+            return null;
+        }
+    }
+
+    /**
+     * 按名称依次创建引擎，跳过无法创建的引擎
+     */
+    public static List<BarcodeDecoder> createAll(List<String> names) {
+        List<BarcodeDecoder> decoders = new ArrayList<>();
+        for (String name : names) {
+            BarcodeDecoder decoder = create(name);
+            if (decoder != null) {
+                decoders.add(decoder);
+            }
+        }
+        return decoders;
+    }
+}
@@ -0,0 +1,87 @@
+package work.icu007.cameraxscan.decoder;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/4/1-09:40
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 连续扫描的结果去重，同一条码在最后一次被看到后windowMs毫秒内不再上报
+ * 条码一直停留在画面中时不断刷新时间，移出画面超过窗口后再次出现才会重新上报
+ * 按访问顺序淘汰，最多记住capacity个条码，方法都是同步的
+ */
+public final class DedupCache {
+    private final int capacity;
+    private volatile long windowMs;
+    private final LinkedHashMap<String, Long> lastSeen;
+    private long suppressedCount = 0;
+
+    public DedupCache(int capacity, long windowMs) {
+        if (capacity < 1 || windowMs < 0) {
+            throw new IllegalArgumentException("无效的去重配置: capacity=" + capacity + ", windowMs=" + windowMs);
+        }
+        this.capacity = capacity;
+        this.windowMs = windowMs;
+        this.lastSeen = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > DedupCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * 记录一次读到的条码
+     *
+     * @param key 条码的唯一标识，通常为格式加内容
+     * @param nowMs 当前时间，单调递增即可
+     * @return 是新条码或已超过去重窗口，应当上报
+     */
+    public synchronized boolean offer(String key, long nowMs) {
+        Long previous = lastSeen.put(key, nowMs);
+        if (previous != null && nowMs - previous < windowMs) {
+            suppressedCount++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 设置去重窗口，为0时不去重
+     */
+    public void setWindowMs(long windowMs) {
+        if (windowMs < 0) {
+            throw new IllegalArgumentException("windowMs不能为负: " + windowMs);
+        }
+        this.windowMs = windowMs;
+    }
+
+    public long getWindowMs() {
+        return windowMs;
+    }
+
+    public synchronized void clear() {
+        lastSeen.clear();
+    }
+
+    public synchronized int size() {
+        return lastSeen.size();
+    }
+
+    /**
+     * 因重复而被抑制的次数
+     */
+    public synchronized long getSuppressedCount() {
+        return suppressedCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DedupCache{size=" + lastSeen.size() + "/" + capacity + ", window=" + windowMs
+                + "ms, suppressed=" + suppressedCount + '}';
+    }
+}
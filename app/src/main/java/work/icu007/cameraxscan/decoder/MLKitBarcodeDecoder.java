@@ -0,0 +1,157 @@
+package work.icu007.cameraxscan.decoder;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/28-14:50
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import android.graphics.Point;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.zxing.BarcodeFormat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import work.icu007.cameraxscan.frame.FrameSnapshot;
+
+/**
+ * MLKit解码引擎，优先读取NV21数据，仅有亮度的帧退回灰度位图
+ */
+public class MLKitBarcodeDecoder implements BarcodeDecoder {
+    private static final Set<BarcodeFormat> FORMATS = Collections.unmodifiableSet(EnumSet.of(
+            BarcodeFormat.AZTEC, BarcodeFormat.CODABAR, BarcodeFormat.CODE_39, BarcodeFormat.CODE_93,
+            BarcodeFormat.CODE_128, BarcodeFormat.DATA_MATRIX, BarcodeFormat.EAN_8, BarcodeFormat.EAN_13,
+            BarcodeFormat.ITF, BarcodeFormat.PDF_417, BarcodeFormat.QR_CODE,
+            BarcodeFormat.UPC_A, BarcodeFormat.UPC_E));
+
+    private final MLKitDecoder decoder = new MLKitDecoder();
+
+    @Override
+    public String getName() {
+        return DecoderRegistry.MLKIT;
+    }
+
+    @Override
+    public Set<BarcodeFormat> getSupportedFormats() {
+        return FORMATS;
+    }
+
+    @Override
+    public InputType getPreferredInput() {
+        return InputType.NV21;
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override
+    public DecodeResult decode(FrameSnapshot frame) {
+        return decode(frame, CancellationToken.NONE);
+    }
+
+    @Override
+    public DecodeResult decode(FrameSnapshot frame, CancellationToken token) {
+        Barcode barcode = decoder.detect(frame, token);
+        if (barcode == null) {
+            return DecodeResult.notFound(getName());
+        }
+        return DecodeResult.found(getName(), barcode.getRawValue(), toFormat(barcode.getFormat()));
+    }
+
+    @Override
+    public boolean supportsMulti() {
+        return true;
+    }
+
+    @Override
+    public DecodeResult decodeMulti(FrameSnapshot frame, CancellationToken token) {
+        List<Barcode> barcodes = decoder.detectAll(frame, token);
+        List<DecodedCode> codes = new ArrayList<>(barcodes.size());
+        for (Barcode barcode : barcodes) {
+            codes.add(new DecodedCode(barcode.getRawValue(), toFormat(barcode.getFormat()),
+                    toFrameCorners(barcode.getCornerPoints(), frame), getName()));
+        }
+        return DecodeResult.found(getName(), codes);
+    }
+
+    @Override
+    public void release() {
+        decoder.release();
+    }
+
+    /**
+     * MLKit的角点以按rotationDegrees旋转后的正向图像为参照，转换回未旋转的帧坐标，与其他引擎一致
+     */
+    static float[] toFrameCorners(Point[] points, FrameSnapshot frame) {
+        if (points == null) {
+            return null;
+        }
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        float[] corners = new float[points.length * 2];
+        for (int i = 0; i < points.length; i++) {
+            int x = points[i].x;
+            int y = points[i].y;
+            switch (frame.getRotationDegrees()) {
+                case 90:
+                    corners[i * 2] = y;
+                    corners[i * 2 + 1] = height - 1 - x;
+                    break;
+                case 180:
+                    corners[i * 2] = width - 1 - x;
+                    corners[i * 2 + 1] = height - 1 - y;
+                    break;
+                case 270:
+                    corners[i * 2] = width - 1 - y;
+                    corners[i * 2 + 1] = x;
+                    break;
+                default:
+                    corners[i * 2] = x;
+                    corners[i * 2 + 1] = y;
+                    break;
+            }
+        }
+        return corners;
+    }
+
+    // MLKit格式常量转换为统一的ZXing格式枚举
+    private static BarcodeFormat toFormat(int format) {
+        switch (format) {
+            case Barcode.FORMAT_AZTEC:
+                return BarcodeFormat.AZTEC;
+            case Barcode.FORMAT_CODABAR:
+                return BarcodeFormat.CODABAR;
+            case Barcode.FORMAT_CODE_39:
+                return BarcodeFormat.CODE_39;
+            case Barcode.FORMAT_CODE_93:
+                return BarcodeFormat.CODE_93;
+            case Barcode.FORMAT_CODE_128:
+                return BarcodeFormat.CODE_128;
+            case Barcode.FORMAT_DATA_MATRIX:
+                return BarcodeFormat.DATA_MATRIX;
+            case Barcode.FORMAT_EAN_8:
+                return BarcodeFormat.EAN_8;
+            case Barcode.FORMAT_EAN_13:
+                return BarcodeFormat.EAN_13;
+            case Barcode.FORMAT_ITF:
+                return BarcodeFormat.ITF;
+            case Barcode.FORMAT_PDF417:
+                return BarcodeFormat.PDF_417;
+            case Barcode.FORMAT_QR_CODE:
+                return BarcodeFormat.QR_CODE;
+            case Barcode.FORMAT_UPC_A:
+                return BarcodeFormat.UPC_A;
+            case Barcode.FORMAT_UPC_E:
+                return BarcodeFormat.UPC_E;
+            default:
+                return null;
+        }
+    }
+}
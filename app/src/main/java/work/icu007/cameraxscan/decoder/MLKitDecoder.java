@@ -7,43 +7,32 @@ package work.icu007.cameraxscan.decoder;
  */
 
 
-import android.annotation.SuppressLint;
 import android.graphics.Bitmap;
-import android.media.Image;
 import android.util.Log;
 
-import androidx.annotation.NonNull;
-import androidx.camera.core.ImageProxy;
-
-import com.google.android.gms.tasks.Task;
-import com.google.android.gms.tasks.Tasks;
 import com.google.mlkit.vision.barcode.BarcodeScanner;
 import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
 import com.google.mlkit.vision.barcode.BarcodeScanning;
 import com.google.mlkit.vision.barcode.common.Barcode;
 import com.google.mlkit.vision.common.InputImage;
 
-import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
-import work.icu007.cameraxscan.utils.ScanResult;
+import work.icu007.cameraxscan.frame.FrameSnapshot;
 
 public class MLKitDecoder {
     private static final String TAG = "MLKitDecoder";
-    private final ExecutorService executor;
+    // 没有截止时间时同步等待的上限
+    private static final long MAX_WAIT_MS = 2000;
+    // 等待期间检查取消标记的间隔
+    private static final long CANCEL_CHECK_INTERVAL_MS = 5;
     private final BarcodeScanner scanner;
 
     public MLKitDecoder() {
-        // 创建一个线程池用于异步处理
-        this.executor = Executors.newSingleThreadExecutor();
-
         // 配置条码扫描选项 - 支持所有格式
         BarcodeScannerOptions options = new BarcodeScannerOptions.Builder()
                 .setBarcodeFormats(
@@ -55,164 +44,108 @@ public class MLKitDecoder {
     }
 
     /**
-     * 从ImageProxy解码条码
+     * 优雅地关闭解码器，释放资源
      */
-    @SuppressLint("UnsafeOptInUsageError")
-    public CompletableFuture<ScanResult> decode(ImageProxy imageProxy) {
-        CompletableFuture<ScanResult> future = new CompletableFuture<>();
-
-        Image mediaImage = imageProxy.getImage();
-        if (mediaImage == null) {
-            future.complete(new ScanResult(false, null, "MLKit"));
-            imageProxy.close();
-            return future;
-        }
-
-        InputImage image = InputImage.fromMediaImage(mediaImage, imageProxy.getImageInfo().getRotationDegrees());
-
-        // 添加安全检查
-        if (isShutdown(executor)) {
-            Log.w(TAG, "Executor已被关闭，无法处理解码请求");
-            future.complete(new ScanResult(false, null, "MLKit"));
-            imageProxy.close();
-            return future;
-        }
-
-        // 使用MLKit扫描条码
-        scanner.process(image)
-                .addOnSuccessListener(task -> {
-                    // 在主线程处理结果，避免使用可能被关闭的executor
-                    if (task != null && !task.isEmpty()) {
-                        Barcode barcode = task.get(0);
-                        String value = barcode.getRawValue();
-                        if (value != null && !value.isEmpty()) {
-                            Log.d(TAG, "MLKit解码成功: " + value);
-                            future.complete(new ScanResult(true, value, "MLKit"));
-                        } else {
-                            future.complete(new ScanResult(false, null, "MLKit"));
-                        }
-                    } else {
-                        future.complete(new ScanResult(false, null, "MLKit"));
-                    }
-                    imageProxy.close();
-                })
-                .addOnFailureListener(e -> {
-                    // 在主线程处理错误
-                    Log.e(TAG, "MLKit解码失败", e);
-                    future.complete(new ScanResult(false, null, "MLKit"));
-                    imageProxy.close();
-                });
-
-        return future;
-    }
-
-    // 检查执行器是否已关闭
-    private boolean isShutdown(Executor executor) {
-        if (executor instanceof ExecutorService) {
-            return ((ExecutorService) executor).isShutdown();
-        } else if (executor instanceof ThreadPoolExecutor) {
-            return ((ThreadPoolExecutor) executor).isShutdown();
-        }
-        // 无法确定状态时，假设未关闭
-        return false;
+    public void release() {
+        scanner.close();
     }
 
-
     /**
-     * 从Bitmap解码条码
+     * 从共享帧数据识别条码（同步版本），有色度数据时直接使用NV21，否则退回灰度位图
+     *
+     * @param snapshot 帧数据
+     * @return 识别到的第一个条码，未识别到时返回null
      */
-    public CompletableFuture<ScanResult> decodeBitmap(Bitmap bitmap) {
-        CompletableFuture<ScanResult> future = new CompletableFuture<>();
-
-        // 从Bitmap创建输入图像
-        InputImage image = InputImage.fromBitmap(bitmap, 0);
-
-        // 使用MLKit扫描条码
-        scanner.process(image)
-                .addOnSuccessListener(executor, barcodes -> {
-                    if (barcodes.size() > 0) {
-                        Barcode barcode = barcodes.get(0);
-                        String value = barcode.getRawValue();
-                        if (value != null && !value.isEmpty()) {
-                            Log.d(TAG, "MLKit从Bitmap解码成功: " + value);
-                            future.complete(new ScanResult(true, value, "MLKit"));
-                        } else {
-                            future.complete(new ScanResult(false, null, "MLKit"));
-                        }
-                    } else {
-                        future.complete(new ScanResult(false, null, "MLKit"));
-                    }
-                })
-                .addOnFailureListener(executor, e -> {
-                    Log.e(TAG, "MLKit从Bitmap解码失败", e);
-                    future.complete(new ScanResult(false, null, "MLKit"));
-                });
-
-        return future;
+    public Barcode detect(FrameSnapshot snapshot) {
+        return detect(snapshot, CancellationToken.NONE);
     }
 
     /**
-     * 优雅地关闭解码器，释放资源
+     * 可取消的识别，等待MLKit结果期间定期检查取消标记和截止时间
+     *
+     * @throws java.util.concurrent.CancellationException 已取消或已超过截止时间
      */
-    public void release() {
-        scanner.close();
-        executor.shutdown();
+    public Barcode detect(FrameSnapshot snapshot, CancellationToken token) {
+        List<Barcode> barcodes = detectAll(snapshot, token);
+        return barcodes.isEmpty() ? null : barcodes.get(0);
     }
 
     /**
-     * 从Bitmap解码条码（同步版本）
+     * 识别帧中的所有条码，角点坐标以旋转后的正向图像为参照
      *
-     * @param bitmap 要解码的位图
-     * @return 扫描结果
+     * @return 所有有内容的条码，未识别到时返回空列表
+     * @throws java.util.concurrent.CancellationException 已取消或已超过截止时间
      */
-    public ScanResult decodeFromBitmap(Bitmap bitmap) {
-        if (bitmap == null || bitmap.isRecycled()) {
-            return new ScanResult(false, null, "MLKit");
+    public List<Barcode> detectAll(FrameSnapshot snapshot, CancellationToken token) {
+        if (snapshot == null) {
+            return Collections.emptyList();
+        }
+        if (!snapshot.hasChroma()) {
+            // 金字塔、变体和候选区域都是灰度NV21，只有外部传入的纯亮度帧才需要创建位图
+            Bitmap bitmap = snapshot.getBitmap();
+            if (bitmap == null || bitmap.isRecycled()) {
+                return Collections.emptyList();
+            }
+            return processSync(InputImage.fromBitmap(bitmap, snapshot.getRotationDegrees()), "Bitmap", token);
         }
 
-        // 从Bitmap创建输入图像
-        InputImage image = InputImage.fromBitmap(bitmap, 0);
+        // NV21数据和旋转角度直接交给MLKit，数据可能位于直接内存槽位中
+        InputImage image = InputImage.fromByteBuffer(
+                snapshot.getNv21Buffer(),
+                snapshot.getWidth(),
+                snapshot.getHeight(),
+                snapshot.getRotationDegrees(),
+                InputImage.IMAGE_FORMAT_NV21);
+        return processSync(image, "NV21", token);
+    }
+
+    // 同步等待MLKit处理结果，返回所有有内容的条码
+    // MLKit的处理本身无法取消，取消或到期后不再等待，迟到的结果直接丢弃
+    private List<Barcode> processSync(InputImage image, String source, CancellationToken token) {
+        token.throwIfCancelled();
 
         // 使用CountDownLatch实现同步等待
         CountDownLatch latch = new CountDownLatch(1);
-        final ScanResult[] result = new ScanResult[1];
+        final List<Barcode> result = new ArrayList<>();
 
         // 使用MLKit扫描条码
         scanner.process(image)
                 .addOnSuccessListener(barcodes -> {
-                    if (barcodes != null && !barcodes.isEmpty()) {
-                        Barcode barcode = barcodes.get(0);
-                        String value = barcode.getRawValue();
-                        if (value != null && !value.isEmpty()) {
-                            Log.d(TAG, "MLKit从Bitmap同步解码成功: " + value);
-                            result[0] = new ScanResult(true, value, "MLKit");
-                        } else {
-                            result[0] = new ScanResult(false, null, "MLKit");
+                    if (barcodes != null) {
+                        for (Barcode barcode : barcodes) {
+                            String value = barcode.getRawValue();
+                            if (value != null && !value.isEmpty()) {
+                                result.add(barcode);
+                            }
+                        }
+                        if (!result.isEmpty()) {
+                            Log.d(TAG, "MLKit从" + source + "同步解码成功: " + result.size() + "个");
                         }
-                    } else {
-                        result[0] = new ScanResult(false, null, "MLKit");
                     }
                     latch.countDown();
                 })
                 .addOnFailureListener(e -> {
-                    Log.e(TAG, "MLKit从Bitmap同步解码失败", e);
-                    result[0] = new ScanResult(false, null, "MLKit");
+                    Log.e(TAG, "MLKit从" + source + "同步解码失败", e);
                     latch.countDown();
                 });
 
         try {
-            // 等待最多2秒钟
-            boolean completed = latch.await(2, TimeUnit.SECONDS);
-            if (!completed) {
-                Log.w(TAG, "MLKit从Bitmap解码超时");
-                return new ScanResult(false, null, "MLKit");
+            // 分段等待，每段之间检查取消标记，没有截止时间时最多等待MAX_WAIT_MS
+            long waitLimit = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MS);
+            while (!latch.await(CANCEL_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                token.throwIfCancelled();
+                if (System.nanoTime() - waitLimit >= 0) {
+                    Log.w(TAG, "MLKit从" + source + "解码超时");
+                    return Collections.emptyList();
+                }
             }
         } catch (InterruptedException e) {
             Log.e(TAG, "等待MLKit解码结果被中断", e);
             Thread.currentThread().interrupt();
-            return new ScanResult(false, null, "MLKit");
+            return Collections.emptyList();
         }
 
-        return result[0] != null ? result[0] : new ScanResult(false, null, "MLKit");
+        // latch保证了监听器写入的可见性
+        return result;
     }
-}
\ No newline at end of file
+}
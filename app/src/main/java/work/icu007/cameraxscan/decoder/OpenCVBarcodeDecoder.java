@@ -0,0 +1,92 @@
+package work.icu007.cameraxscan.decoder;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/28-15:40
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import com.google.zxing.BarcodeFormat;
+
+import org.opencv.core.Mat;
+import org.opencv.objdetect.BarcodeDetector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 基于OpenCV BarcodeDetector的一维码解码引擎
+ */
+public class OpenCVBarcodeDecoder extends OpenCVDecoder {
+    private static final Set<BarcodeFormat> FORMATS = Collections.unmodifiableSet(EnumSet.of(
+            BarcodeFormat.EAN_8, BarcodeFormat.EAN_13, BarcodeFormat.UPC_A, BarcodeFormat.UPC_E));
+
+    private final BarcodeDetector detector = new BarcodeDetector();
+
+    @Override
+    public String getName() {
+        return DecoderRegistry.OPENCV_BARCODE;
+    }
+
+    @Override
+    public Set<BarcodeFormat> getSupportedFormats() {
+        return FORMATS;
+    }
+
+    @Override
+    protected DecodeResult decodeMat(Mat gray) {
+        List<String> infos = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        Mat points = new Mat();
+        try {
+            if (detector.detectAndDecodeWithType(gray, infos, types, points)) {
+                for (int i = 0; i < infos.size(); i++) {
+                    String text = infos.get(i);
+                    if (text != null && !text.isEmpty()) {
+                        return DecodeResult.found(getName(), text,
+                                i < types.size() ? toFormat(types.get(i)) : null);
+                    }
+                }
+            }
+            // 检测到条码但未能解码时返回候选区域
+            return DecodeResult.notFound(getName(), boundingRect(points, gray.cols(), gray.rows()));
+        } finally {
+            points.release();
+        }
+    }
+
+    @Override
+    protected DecodeResult decodeMatMulti(Mat gray) {
+        List<String> infos = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        Mat points = new Mat();
+        try {
+            List<DecodedCode> codes = new ArrayList<>();
+            if (detector.detectAndDecodeWithType(gray, infos, types, points)) {
+                float[] coords = cornerArray(points);
+                for (int i = 0; i < infos.size(); i++) {
+                    String text = infos.get(i);
+                    if (text != null && !text.isEmpty()) {
+                        codes.add(new DecodedCode(text, i < types.size() ? toFormat(types.get(i)) : null,
+                                cornersOf(coords, i), getName()));
+                    }
+                }
+            }
+            return DecodeResult.found(getName(), codes);
+        } finally {
+            points.release();
+        }
+    }
+
+    // OpenCV的类型名如"EAN_13"，与ZXing的枚举名一致
+    private static BarcodeFormat toFormat(String type) {
+        try {
+            return type != null ? BarcodeFormat.valueOf(type) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
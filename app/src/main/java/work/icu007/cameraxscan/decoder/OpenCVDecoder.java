@@ -0,0 +1,193 @@
+package work.icu007.cameraxscan.decoder;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/28-15:20
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import android.graphics.Rect;
+import android.util.Log;
+
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+import work.icu007.cameraxscan.frame.FrameSnapshot;
+
+/**
+ * OpenCV解码引擎的公共部分：把帧数据的亮度包装为单通道Mat
+ * 直接内存中的帧数据直接包装，不复制像素；堆内数据写入复用的Mat
+ * OpenCV的检测器不是线程安全的，由调度器串行调用
+ */
+abstract class OpenCVDecoder implements BarcodeDecoder {
+    private static final String TAG = "OpenCVDecoder";
+
+    private final Mat grayMat;
+
+    OpenCVDecoder() {
+        if (!OpenCVLoader.initDebug()) {
+            throw new IllegalStateException("OpenCV初始化失败");
+        }
+        grayMat = new Mat();
+    }
+
+    /**
+     * 在单通道灰度图上检测并解码
+     *
+     * @param gray 只读的灰度图，可能是整帧的子区域
+     */
+    protected abstract DecodeResult decodeMat(Mat gray);
+
+    /**
+     * 在单通道灰度图上检测并解码所有条码，顶点坐标相对于gray
+     * 默认退回单码解码
+     */
+    protected DecodeResult decodeMatMulti(Mat gray) {
+        return decodeMat(gray);
+    }
+
+    @Override
+    public InputType getPreferredInput() {
+        return InputType.MAT;
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return false;
+    }
+
+    @Override
+    public DecodeResult decode(FrameSnapshot frame) {
+        return decode(frame, null, CancellationToken.NONE);
+    }
+
+    @Override
+    public DecodeResult decode(FrameSnapshot frame, CancellationToken token) {
+        return decode(frame, null, token);
+    }
+
+    @Override
+    public boolean supportsRegion() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsMulti() {
+        return true;
+    }
+
+    @Override
+    public DecodeResult decodeMulti(FrameSnapshot frame, CancellationToken token) {
+        return decode(frame, null, token, true);
+    }
+
+    @Override
+    public DecodeResult decode(FrameSnapshot frame, Rect region) {
+        return decode(frame, region, CancellationToken.NONE);
+    }
+
+    /**
+     * OpenCV的检测在本地代码中无法中途打断，只在进入检测前检查取消标记
+     */
+    @Override
+    public DecodeResult decode(FrameSnapshot frame, Rect region, CancellationToken token) {
+        return decode(frame, region, token, false);
+    }
+
+    private DecodeResult decode(FrameSnapshot frame, Rect region, CancellationToken token, boolean multi) {
+        token.throwIfCancelled();
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        Mat wrappedMat = null;
+        Mat regionMat = null;
+
+        try {
+            Mat gray;
+            if (frame.isDirect()) {
+                wrappedMat = new Mat(height, width, CvType.CV_8UC1, frame.getLuma());
+                gray = wrappedMat;
+            } else {
+                grayMat.create(height, width, CvType.CV_8UC1);
+                grayMat.put(0, 0, frame.getLumaArray(), 0, width * height);
+                gray = grayMat;
+            }
+
+            token.throwIfCancelled();
+            if (multi) {
+                return decodeMatMulti(gray);
+            }
+            if (region != null) {
+                regionMat = gray.submat(region.top, region.bottom, region.left, region.right);
+                return decodeMat(regionMat);
+            }
+            return decodeMat(gray);
+        } catch (CancellationException e) {
+            throw e;
+        } catch (Exception e) {
+            Log.e(TAG, getName() + "解码失败", e);
+            return DecodeResult.notFound(getName());
+        } finally {
+            // 只释放Mat头，像素仍归帧数据所有
+            if (regionMat != null) {
+                regionMat.release();
+            }
+            if (wrappedMat != null) {
+                wrappedMat.release();
+            }
+        }
+    }
+
+    @Override
+    public void release() {
+        grayMat.release();
+    }
+
+    /**
+     * 检测器输出的所有顶点（CV_32FC2），x、y交替，没有顶点时返回空数组
+     */
+    static float[] cornerArray(Mat points) {
+        if (points == null || points.empty()) {
+            return new float[0];
+        }
+        float[] coords = new float[(int) (points.total() * points.channels())];
+        points.get(0, 0, coords);
+        return coords;
+    }
+
+    /**
+     * 第index个条码的4个顶点，顶点不足时返回null
+     */
+    static float[] cornersOf(float[] coords, int index) {
+        int from = index * 8;
+        return from + 8 <= coords.length ? Arrays.copyOfRange(coords, from, from + 8) : null;
+    }
+
+    /**
+     * 检测器输出的顶点（CV_32FC2）的包围盒，没有顶点时返回null
+     */
+    static Rect boundingRect(Mat points, int width, int height) {
+        if (points == null || points.empty()) {
+            return null;
+        }
+        float[] coords = new float[(int) (points.total() * points.channels())];
+        points.get(0, 0, coords);
+
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int i = 0; i + 1 < coords.length; i += 2) {
+            minX = Math.min(minX, coords[i]);
+            minY = Math.min(minY, coords[i + 1]);
+            maxX = Math.max(maxX, coords[i]);
+            maxY = Math.max(maxY, coords[i + 1]);
+        }
+        return new Rect(
+                Math.max(0, (int) minX),
+                Math.max(0, (int) minY),
+                Math.min(width, (int) Math.ceil(maxX)),
+                Math.min(height, (int) Math.ceil(maxY)));
+    }
+}
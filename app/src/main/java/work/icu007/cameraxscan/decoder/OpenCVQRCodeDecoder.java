@@ -0,0 +1,75 @@
+package work.icu007.cameraxscan.decoder;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/28-15:50
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import com.google.zxing.BarcodeFormat;
+
+import org.opencv.core.Mat;
+import org.opencv.objdetect.QRCodeDetector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 基于OpenCV QRCodeDetector的二维码解码引擎
+ */
+public class OpenCVQRCodeDecoder extends OpenCVDecoder {
+    private static final Set<BarcodeFormat> FORMATS =
+            Collections.unmodifiableSet(EnumSet.of(BarcodeFormat.QR_CODE));
+
+    private final QRCodeDetector detector = new QRCodeDetector();
+
+    @Override
+    public String getName() {
+        return DecoderRegistry.OPENCV_QRCODE;
+    }
+
+    @Override
+    public Set<BarcodeFormat> getSupportedFormats() {
+        return FORMATS;
+    }
+
+    @Override
+    protected DecodeResult decodeMat(Mat gray) {
+        Mat points = new Mat();
+        try {
+            String text = detector.detectAndDecode(gray, points);
+            if (text != null && !text.isEmpty()) {
+                return DecodeResult.found(getName(), text, BarcodeFormat.QR_CODE);
+            }
+            // 定位到二维码但未能解码时返回候选区域
+            return DecodeResult.notFound(getName(), boundingRect(points, gray.cols(), gray.rows()));
+        } finally {
+            points.release();
+        }
+    }
+
+    @Override
+    protected DecodeResult decodeMatMulti(Mat gray) {
+        List<String> infos = new ArrayList<>();
+        Mat points = new Mat();
+        try {
+            List<DecodedCode> codes = new ArrayList<>();
+            if (detector.detectAndDecodeMulti(gray, infos, points)) {
+                float[] coords = cornerArray(points);
+                for (int i = 0; i < infos.size(); i++) {
+                    String text = infos.get(i);
+                    // 定位到但未能解码的二维码内容为空
+                    if (text != null && !text.isEmpty()) {
+                        codes.add(new DecodedCode(text, BarcodeFormat.QR_CODE, cornersOf(coords, i), getName()));
+                    }
+                }
+            }
+            return DecodeResult.found(getName(), codes);
+        } finally {
+            points.release();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package work.icu007.cameraxscan.decoder;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/27-15:50
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import work.icu007.cameraxscan.frame.LumaPyramid;
+
+/**
+ * 金字塔各层的解码尝试和命中次数，用于按实际标签尺寸调整默认的起始层
+ */
+public class PyramidStats {
+    private final String name;
+    private final AtomicLongArray attempts = new AtomicLongArray(LumaPyramid.MAX_LEVELS);
+    private final AtomicLongArray hits = new AtomicLongArray(LumaPyramid.MAX_LEVELS);
+    // 粗层定位到候选区域后在原始帧上局部解码
+    private final AtomicLong regionAttempts = new AtomicLong();
+    private final AtomicLong regionHits = new AtomicLong();
+
+    public PyramidStats(String name) {
+        this.name = name;
+    }
+
+    public void recordAttempt(int level, boolean hit) {
+        attempts.incrementAndGet(level);
+        if (hit) {
+            hits.incrementAndGet(level);
+        }
+    }
+
+    public void recordRegionAttempt(boolean hit) {
+        regionAttempts.incrementAndGet();
+        if (hit) {
+            regionHits.incrementAndGet();
+        }
+    }
+
+    public long getAttempts(int level) {
+        return attempts.get(level);
+    }
+
+    public long getHits(int level) {
+        return hits.get(level);
+    }
+
+    public long getRegionAttempts() {
+        return regionAttempts.get();
+    }
+
+    public long getRegionHits() {
+        return regionHits.get();
+    }
+
+    /**
+     * 某层的命中率，没有尝试过时返回0
+     */
+    public float getHitRate(int level) {
+        long count = attempts.get(level);
+        return count == 0 ? 0f : (float) hits.get(level) / count;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(name).append("{");
+        for (int level = 0; level < LumaPyramid.MAX_LEVELS; level++) {
+            builder.append("L").append(level).append("=")
+                    .append(hits.get(level)).append("/").append(attempts.get(level)).append(", ");
+        }
+        return builder.append("region=").append(regionHits.get()).append("/").append(regionAttempts.get())
+                .append("}").toString();
+    }
+}
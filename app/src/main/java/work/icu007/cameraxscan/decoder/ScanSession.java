@@ -0,0 +1,162 @@
+package work.icu007.cameraxscan.decoder;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/30-15:10
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import work.icu007.cameraxscan.utils.ScanResult;
+
+/**
+ * 一次扫描会话，从开始扫描到得出结果（或被新会话取代）为止
+ * 会话内的每一帧按提交顺序分配递增的帧序号，所有帧的结果通过CAS竞争，每个会话只接受一个结果
+ * 会话结束后到达的结果全部丢弃，不再依赖全局标志的重置时机
+ * 一维码的结果先经过会话内的多帧投票，得到足够印证后才参与竞争
+ * 连续扫描的会话不会因结果而结束，每个（去重后的）结果都被接受，直到会话被关闭
+ */
+public final class ScanSession {
+    private static final int STATE_OPEN = 0;
+    private static final int STATE_DECIDED = 1;
+    private static final int STATE_CLOSED = 2;
+
+    /**
+     * 帧所属的会话和帧序号
+     */
+    public static final class FrameEpoch {
+        private final ScanSession session;
+        private final long epoch;
+
+        private FrameEpoch(ScanSession session, long epoch) {
+            this.session = session;
+            this.epoch = epoch;
+        }
+
+        public ScanSession getSession() {
+            return session;
+        }
+
+        public long getEpoch() {
+            return epoch;
+        }
+
+        @Override
+        public String toString() {
+            return session.getId() + "#" + epoch;
+        }
+    }
+
+    private final long id;
+    private final ConsensusBuffer consensus;
+    private final boolean continuous;
+    private final AtomicInteger state = new AtomicInteger(STATE_OPEN);
+    private final AtomicLong nextEpoch = new AtomicLong();
+    private final AtomicLong discardedCount = new AtomicLong();
+    private final AtomicLong acceptedCount = new AtomicLong();
+    // 单次扫描只在CAS成功的线程中写入一次，连续扫描时为最近接受的结果
+    private volatile long winningEpoch = -1;
+    private volatile ScanResult winner;
+
+    ScanSession(long id, ConsensusBuffer consensus, boolean continuous) {
+        this.id = id;
+        this.consensus = consensus;
+        this.continuous = continuous;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * 为新提交的帧分配序号
+     */
+    public FrameEpoch nextFrame() {
+        return new FrameEpoch(this, nextEpoch.getAndIncrement());
+    }
+
+    /**
+     * 是否为连续扫描会话
+     */
+    public boolean isContinuous() {
+        return continuous;
+    }
+
+    /**
+     * 本会话的多帧投票
+     */
+    public ConsensusBuffer getConsensus() {
+        return consensus;
+    }
+
+    /**
+     * 会话仍在等待结果
+     */
+    public boolean isOpen() {
+        return state.get() == STATE_OPEN;
+    }
+
+    /**
+     * 尝试让某一帧的结果成为本会话的结果，会话已有结果或已关闭时返回false并计入丢弃数
+     * 连续扫描的会话只要未关闭就接受，会话保持开放
+     */
+    boolean tryAccept(FrameEpoch frame, ScanResult result) {
+        boolean accepted = frame.session == this
+                && (continuous ? state.get() == STATE_OPEN : state.compareAndSet(STATE_OPEN, STATE_DECIDED));
+        if (!accepted) {
+            discardedCount.incrementAndGet();
+            return false;
+        }
+        acceptedCount.incrementAndGet();
+        winningEpoch = frame.epoch;
+        winner = result;
+        return true;
+    }
+
+    /**
+     * 关闭会话，之后的结果都会被丢弃
+     */
+    void close() {
+        state.compareAndSet(STATE_OPEN, STATE_CLOSED);
+    }
+
+    public ScanResult getWinner() {
+        return winner;
+    }
+
+    public long getWinningEpoch() {
+        return winningEpoch;
+    }
+
+    /**
+     * 已分配的帧数
+     */
+    public long getFrameCount() {
+        return nextEpoch.get();
+    }
+
+    /**
+     * 已接受的结果数，单次扫描的会话最多为1
+     */
+    public long getAcceptedCount() {
+        return acceptedCount.get();
+    }
+
+    /**
+     * 会话结束后到达而被丢弃的结果数
+     */
+    public long getDiscardedCount() {
+        return discardedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        String stateName = state.get() == STATE_OPEN ? "open" : state.get() == STATE_DECIDED ? "decided" : "closed";
+        return "ScanSession{id=" + id + ", state=" + stateName + (continuous ? ", continuous" : "")
+                + ", frames=" + getFrameCount() + ", accepted=" + getAcceptedCount()
+                + ", winningEpoch=" + winningEpoch + ", discarded=" + getDiscardedCount()
+                + ", consensus=" + consensus + '}';
+    }
+}
@@ -0,0 +1,128 @@
+package work.icu007.cameraxscan.decoder;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/24-10:15
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 直接读取YUV图像Y平面的亮度源
+ * 不经过NV21/JPEG/Bitmap转换，按行跨度、像素跨度和裁剪区域原地读取亮度数据
+ */
+public class YPlaneLuminanceSource extends LuminanceSource {
+    private final ByteBuffer buffer;
+    private final int rowStride;
+    private final int pixelStride;
+    private final int left;
+    private final int top;
+
+    /**
+     * @param buffer Y平面数据，读取时不会修改其position
+     * @param rowStride Y平面行跨度
+     * @param pixelStride Y平面像素跨度
+     * @param left 裁剪区域左边界
+     * @param top 裁剪区域上边界
+     * @param width 裁剪区域宽度
+     * @param height 裁剪区域高度
+     */
+    public YPlaneLuminanceSource(ByteBuffer buffer, int rowStride, int pixelStride,
+                                 int left, int top, int width, int height) {
+        super(width, height);
+        if (pixelStride < 1 || rowStride < (width - 1) * pixelStride + 1) {
+            throw new IllegalArgumentException("无效的跨度: rowStride=" + rowStride + ", pixelStride=" + pixelStride);
+        }
+        // 使用独立的视图，避免与其他读取者共享position
+        this.buffer = buffer.duplicate();
+        this.rowStride = rowStride;
+        this.pixelStride = pixelStride;
+        this.left = left;
+        this.top = top;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("请求的行超出图像范围: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        readRow(y, row, 0);
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        int width = getWidth();
+        int height = getHeight();
+        byte[] matrix = new byte[width * height];
+
+        // 没有行填充和裁剪时可以一次性复制
+        if (pixelStride == 1 && rowStride == width && left == 0) {
+            buffer.position(top * rowStride);
+            buffer.get(matrix, 0, matrix.length);
+            return matrix;
+        }
+
+        for (int y = 0; y < height; y++) {
+            readRow(y, matrix, y * width);
+        }
+        return matrix;
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height) {
+        return new YPlaneLuminanceSource(buffer, rowStride, pixelStride,
+                this.left + left, this.top + top, width, height);
+    }
+
+    @Override
+    public boolean isRotateSupported() {
+        return true;
+    }
+
+    /**
+     * 仅在解码器确实需要时（如TRY_HARDER下的一维码）才生成旋转后的亮度数据
+     */
+    @Override
+    public LuminanceSource rotateCounterClockwise() {
+        int width = getWidth();
+        int height = getHeight();
+        byte[] matrix = getMatrix();
+        byte[] rotated = new byte[width * height];
+
+        // 逆时针旋转90度后，原图(x, y)位于新图(y, width - 1 - x)
+        for (int y = 0; y < height; y++) {
+            int rowOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                rotated[(width - 1 - x) * height + y] = matrix[rowOffset + x];
+            }
+        }
+        return new PlanarYUVLuminanceSource(rotated, height, width, 0, 0, height, width, false);
+    }
+
+    private void readRow(int y, byte[] dst, int dstOffset) {
+        int width = getWidth();
+        int rowStart = (top + y) * rowStride + left * pixelStride;
+        if (pixelStride == 1) {
+            buffer.position(rowStart);
+            buffer.get(dst, dstOffset, width);
+        } else {
+            for (int x = 0; x < width; x++) {
+                dst[dstOffset + x] = buffer.get(rowStart + x * pixelStride);
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package work.icu007.cameraxscan.decoder;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/28-15:00
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import android.graphics.Rect;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import work.icu007.cameraxscan.frame.FrameSnapshot;
+
+/**
+ * ZXing解码引擎，直接读取亮度数据
+ * 未能解码但检测到特征点时，返回特征点包围盒外扩后的候选区域
+ */
+public class ZXingBarcodeDecoder implements BarcodeDecoder {
+    private static final Set<BarcodeFormat> FORMATS =
+            Collections.unmodifiableSet(EnumSet.copyOf(ZXingDecoder.SUPPORTED_FORMATS));
+    // 候选区域在特征点包围盒外扩展的比例
+    private static final float REGION_MARGIN_RATIO = 0.5f;
+    private static final int REGION_MARGIN_MIN = 8;
+
+    private final ZXingDecoder decoder = new ZXingDecoder();
+    // 一维码会经过投票时不使用TRY_HARDER，每个解码管理器的引擎实例各自设置
+    private volatile boolean fastLinear = false;
+
+    @Override
+    public String getName() {
+        return DecoderRegistry.ZXING;
+    }
+
+    @Override
+    public Set<BarcodeFormat> getSupportedFormats() {
+        return FORMATS;
+    }
+
+    @Override
+    public InputType getPreferredInput() {
+        return InputType.LUMA;
+    }
+
+    /**
+     * 每个线程使用各自的MultiFormatReader，可以并行解码多帧或多个图像变体
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override
+    public void setLinearVerified(boolean verified) {
+        fastLinear = verified;
+    }
+
+    @Override
+    public DecodeResult decode(FrameSnapshot frame) {
+        return decode(frame, CancellationToken.NONE);
+    }
+
+    @Override
+    public DecodeResult decode(FrameSnapshot frame, CancellationToken token) {
+        List<ResultPoint> candidates = new ArrayList<>();
+        Result result = ZXingDecoder.decodeResult(frame, candidates, token, fastLinear);
+        if (result != null) {
+            return DecodeResult.found(getName(), result.getText(), result.getBarcodeFormat());
+        }
+        return DecodeResult.notFound(getName(),
+                candidateRegion(candidates, frame.getWidth(), frame.getHeight()));
+    }
+
+    @Override
+    public boolean supportsMulti() {
+        return true;
+    }
+
+    @Override
+    public DecodeResult decodeMulti(FrameSnapshot frame, CancellationToken token) {
+        Result[] results = ZXingDecoder.decodeMultiple(frame, token, fastLinear);
+        List<DecodedCode> codes = new ArrayList<>(results.length);
+        for (Result result : results) {
+            codes.add(new DecodedCode(result.getText(), result.getBarcodeFormat(),
+                    toCorners(result.getResultPoints()), getName()));
+        }
+        return DecodeResult.found(getName(), codes);
+    }
+
+    // 二维码为定位图案的中心，一维码为扫描线的两个端点
+    private static float[] toCorners(ResultPoint[] points) {
+        if (points == null) {
+            return null;
+        }
+        int count = 0;
+        float[] corners = new float[points.length * 2];
+        for (ResultPoint point : points) {
+            if (point != null) {
+                corners[count++] = point.getX();
+                corners[count++] = point.getY();
+            }
+        }
+        return Arrays.copyOf(corners, count);
+    }
+
+    @Override
+    public boolean supportsRegion() {
+        return true;
+    }
+
+    @Override
+    public DecodeResult decode(FrameSnapshot frame, Rect region) {
+        return decode(frame, region, CancellationToken.NONE);
+    }
+
+    @Override
+    public DecodeResult decode(FrameSnapshot frame, Rect region, CancellationToken token) {
+        Result result = ZXingDecoder.decodeResult(frame, region, token, fastLinear);
+        if (result != null) {
+            return DecodeResult.found(getName(), result.getText(), result.getBarcodeFormat());
+        }
+        return DecodeResult.notFound(getName());
+    }
+
+    @Override
+    public void release() {
+        decoder.release();
+    }
+
+    /**
+     * 特征点包围盒向外扩展后的区域，没有特征点时返回null
+     */
+    private static Rect candidateRegion(List<ResultPoint> points, int width, int height) {
+        if (points.isEmpty()) {
+            return null;
+        }
+
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (ResultPoint point : points) {
+            minX = Math.min(minX, point.getX());
+            minY = Math.min(minY, point.getY());
+            maxX = Math.max(maxX, point.getX());
+            maxY = Math.max(maxY, point.getY());
+        }
+
+        float margin = Math.max(maxX - minX, maxY - minY) * REGION_MARGIN_RATIO + REGION_MARGIN_MIN;
+        return new Rect(
+                Math.max(0, (int) (minX - margin)),
+                Math.max(0, (int) (minY - margin)),
+                Math.min(width, (int) Math.ceil(maxX + margin)),
+                Math.min(height, (int) Math.ceil(maxY + margin)));
+    }
+}
@@ -7,55 +7,199 @@ package work.icu007.cameraxscan.decoder;
  */
 
 import android.graphics.Bitmap;
-import android.graphics.ImageFormat;
 import android.graphics.Rect;
-import android.graphics.YuvImage;
-import android.media.Image;
 import android.util.Log;
 
-import androidx.annotation.OptIn;
-import androidx.camera.core.ExperimentalGetImage;
-import androidx.camera.core.ImageProxy;
-
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.BinaryBitmap;
 import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
 import com.google.zxing.MultiFormatReader;
 import com.google.zxing.NotFoundException;
-import com.google.zxing.PlanarYUVLuminanceSource;
 import com.google.zxing.RGBLuminanceSource;
+import com.google.zxing.Reader;
 import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
 import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
 
-import java.io.ByteArrayOutputStream;
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import work.icu007.cameraxscan.frame.FrameSnapshot;
 
 public class ZXingDecoder {
     private static final String TAG = "ZXingDecoder";
-    private static final MultiFormatReader multiFormatReader = new MultiFormatReader();
+    // 只添加需要的条码格式，可以根据需要添加其他格式
+    static final List<BarcodeFormat> SUPPORTED_FORMATS = Collections.unmodifiableList(Arrays.asList(
+            BarcodeFormat.QR_CODE,
+            BarcodeFormat.CODE_128,
+            BarcodeFormat.CODE_39,
+            BarcodeFormat.EAN_13,
+            BarcodeFormat.EAN_8,
+            BarcodeFormat.UPC_A,
+            BarcodeFormat.UPC_E));
+    // 按是否参与一维码投票拆分的格式
+    private static final List<BarcodeFormat> LINEAR_FORMATS = Collections.unmodifiableList(Arrays.asList(
+            BarcodeFormat.CODE_128,
+            BarcodeFormat.CODE_39,
+            BarcodeFormat.EAN_13,
+            BarcodeFormat.EAN_8,
+            BarcodeFormat.UPC_A,
+            BarcodeFormat.UPC_E));
+    private static final List<BarcodeFormat> MATRIX_FORMATS = Collections.singletonList(BarcodeFormat.QR_CODE);
+    // 检测阶段找到的特征点按线程收集，只有请求了候选点的解码才会设置
+    private static final ThreadLocal<List<ResultPoint>> candidateCollector = new ThreadLocal<>();
+    // 当前线程正在进行的解码的取消标记
+    private static final ThreadLocal<CancellationToken> currentToken = new ThreadLocal<>();
+    // 检测器每找到一个特征点回调一次，同时作为二维码检测阶段的取消检查点
+    private static final ResultPointCallback candidateCallback = point -> {
+        CancellationToken token = currentToken.get();
+        if (token != null) {
+            token.throwIfCancelled();
+        }
+        List<ResultPoint> candidates = candidateCollector.get();
+        if (candidates != null && point != null) {
+            candidates.add(point);
+        }
+    };
+
+    // 预先构建的不可变解码提示，所有线程的读取器共用
+    private static final Map<DecodeHintType, Object> HINTS = buildHints(SUPPORTED_FORMATS, true);
+    private static final Map<DecodeHintType, Object> FAST_LINEAR_HINTS = buildHints(LINEAR_FORMATS, false);
+    private static final Map<DecodeHintType, Object> MATRIX_HINTS = buildHints(MATRIX_FORMATS, true);
+    // MultiFormatReader不是线程安全的，每个解码线程持有自己的读取器，线程数由解码流水线限定
+    // 每种提示各用一个读取器，按调用方的设置选用，无需重新setHints
+    private static final ThreadLocal<MultiFormatReader> readers = newReaders(HINTS);
+    private static final ThreadLocal<MultiFormatReader> fastLinearReaders = newReaders(FAST_LINEAR_HINTS);
+    private static final ThreadLocal<MultiFormatReader> matrixReaders = newReaders(MATRIX_HINTS);
 
-    public ZXingDecoder() {
-        // 设置解码提示
+    private static Map<DecodeHintType, Object> buildHints(List<BarcodeFormat> formats, boolean tryHarder) {
         Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
+        if (tryHarder) {
+            hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        }
+        // 回调本身无状态，候选点和取消标记都按线程保存
+        hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, candidateCallback);
+        return Collections.unmodifiableMap(hints);
+    }
 
-        // 只添加需要的条码格式
-        List<BarcodeFormat> formats = new ArrayList<>();
-        formats.add(BarcodeFormat.QR_CODE);
-        formats.add(BarcodeFormat.CODE_128);
-        formats.add(BarcodeFormat.CODE_39);
-        formats.add(BarcodeFormat.EAN_13);
-        formats.add(BarcodeFormat.EAN_8);
-        formats.add(BarcodeFormat.UPC_A);
-        formats.add(BarcodeFormat.UPC_E);
-        // 可以根据需要添加其他格式
+    private static ThreadLocal<MultiFormatReader> newReaders(Map<DecodeHintType, Object> hints) {
+        return new ThreadLocal<MultiFormatReader>() {
+            @Override
+            protected MultiFormatReader initialValue() {
+                MultiFormatReader reader = new MultiFormatReader();
+                reader.setHints(hints);
+                return reader;
+            }
+        };
+    }
 
-        hints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
-        hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
-        multiFormatReader.setHints(hints);
+    /**
+     * 用当前线程的读取器解码
+     *
+     * @param fastLinear 为true时一维码不使用TRY_HARDER（误读由调用方的投票过滤），二维码仍使用TRY_HARDER；
+     *                   与MultiFormatReader一样先尝试一维码
+     * @param sideways 帧数据是否与显示方向相差90°，只在fastLinear时使用
+     */
+    private static Result decodeWith(BinaryBitmap bitmap, boolean fastLinear, boolean sideways)
+            throws NotFoundException {
+        if (!fastLinear) {
+            return readers.get().decodeWithState(bitmap);
+        }
+        // 没有TRY_HARDER时一维码读取器只横向扫描，不会自己旋转重试；
+        // 帧数据保持传感器方向，竖屏下屏幕上水平的条码在数据中是竖直的，先按显示方向扫描，再试另一个方向
+        try {
+            return decodeLinear(bitmap, sideways);
+        } catch (NotFoundException e) {
+            // 继续尝试另一个方向
+        }
+        try {
+            return decodeLinear(bitmap, !sideways);
+        } catch (NotFoundException e) {
+            // 二值化结果缓存在bitmap中，二维码读取器不会重复计算
+            return matrixReaders.get().decodeWithState(bitmap);
+        }
+    }
+
+    /**
+     * 用不带TRY_HARDER的一维码读取器解码，rotated为true时扫描逆时针旋转90°后的图像，
+     * 结果点和检测阶段收集的候选点都换算回旋转前的坐标
+     */
+    private static Result decodeLinear(BinaryBitmap bitmap, boolean rotated) throws NotFoundException {
+        if (!rotated) {
+            return fastLinearReaders.get().decodeWithState(bitmap);
+        }
+        if (!bitmap.isRotateSupported()) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+        List<ResultPoint> candidates = candidateCollector.get();
+        int mark = candidates != null ? candidates.size() : 0;
+        // 旋转后图像的高即旋转前的宽
+        int width = bitmap.getWidth();
+        try {
+            Result result = fastLinearReaders.get().decodeWithState(bitmap.rotateCounterClockwise());
+            ResultPoint[] points = result.getResultPoints();
+            if (points != null) {
+                for (int i = 0; i < points.length; i++) {
+                    points[i] = unrotate(points[i], width);
+                }
+            }
+            // 与OneDReader在TRY_HARDER下旋转重试时的记录一致
+            result.putMetadata(ResultMetadataType.ORIENTATION, 270);
+            return result;
+        } finally {
+            if (candidates != null) {
+                for (int i = mark; i < candidates.size(); i++) {
+                    candidates.set(i, unrotate(candidates.get(i), width));
+                }
+            }
+        }
+    }
+
+    // 逆时针旋转后的(x, y)对应旋转前的(width - 1 - y, x)
+    private static ResultPoint unrotate(ResultPoint point, int width) {
+        return point == null ? null : new ResultPoint(width - 1 - point.getY(), point.getX());
+    }
+
+    /**
+     * 帧数据与显示方向是否相差90°
+     */
+    private static boolean isSideways(FrameSnapshot snapshot) {
+        return snapshot.getRotationDegrees() % 180 != 0;
+    }
+
+    // 让多码读取器使用当前线程已设置好提示的MultiFormatReader，避免每次切块都重新setHints
+    private static final Reader THREAD_READER = threadReader(false, false);
+    private static final Reader FAST_LINEAR_THREAD_READER = threadReader(true, false);
+    private static final Reader FAST_LINEAR_SIDEWAYS_THREAD_READER = threadReader(true, true);
+
+    private static Reader threadReader(boolean fastLinear, boolean sideways) {
+        return new Reader() {
+            @Override
+            public Result decode(BinaryBitmap image) throws NotFoundException {
+                return decodeWith(image, fastLinear, sideways);
+            }
+
+            @Override
+            public Result decode(BinaryBitmap image, Map<DecodeHintType, ?> hints) throws NotFoundException {
+                return decodeWith(image, fastLinear, sideways);
+            }
+
+            @Override
+            public void reset() {
+                readers.get().reset();
+                fastLinearReaders.get().reset();
+                matrixReaders.get().reset();
+            }
+        };
     }
 
     public static String decode(Bitmap bitmap) {
@@ -71,7 +215,7 @@ public class ZXingDecoder {
             BinaryBitmap binaryBitmap = new BinaryBitmap(new HybridBinarizer(source));
 
             // 执行解码
-            Result result = multiFormatReader.decodeWithState(binaryBitmap);
+            Result result = readers.get().decodeWithState(binaryBitmap);
             if (result != null) {
                 return result.getText();
             }
@@ -83,68 +227,140 @@ public class ZXingDecoder {
         } catch (Exception e) {
             Log.e(TAG, "ZXing解码失败: ", e);
             return null;
+        }
+    }
+
+    /**
+     * 从共享帧数据的亮度视图解码，不创建Bitmap
+     */
+    public static String decode(FrameSnapshot snapshot) {
+        Result result = decodeResult(snapshot, (List<ResultPoint>) null);
+        return result != null ? result.getText() : null;
+    }
+
+    /**
+     * 从共享帧数据解码，失败时通过candidates返回检测阶段找到的特征点（坐标相对于该帧）
+     * 用于在低分辨率层定位候选区域后到高分辨率层局部解码
+     *
+     * @param candidates 不需要候选点时传null
+     * @return 完整的解码结果，未找到时返回null
+     */
+    public static Result decodeResult(FrameSnapshot snapshot, List<ResultPoint> candidates) {
+        return decodeResult(snapshot, candidates, CancellationToken.NONE);
+    }
+
+    /**
+     * 可取消的解码，token被取消后在下一个检查点抛出CancellationException
+     */
+    public static Result decodeResult(FrameSnapshot snapshot, List<ResultPoint> candidates,
+                                      CancellationToken token) {
+        return decodeResult(snapshot, candidates, token, false);
+    }
+
+    /**
+     * @param fastLinear 为true时一维码不使用TRY_HARDER，只应在一维码读数会经过投票时使用
+     */
+    public static Result decodeResult(FrameSnapshot snapshot, List<ResultPoint> candidates,
+                                      CancellationToken token, boolean fastLinear) {
+        int width = snapshot.getWidth();
+        YPlaneLuminanceSource source = new YPlaneLuminanceSource(
+                snapshot.getLuma(), width, 1, 0, 0, width, snapshot.getHeight());
+        boolean sideways = isSideways(snapshot);
+        if (candidates == null) {
+            return decodeSource(source, token, fastLinear, sideways);
+        }
+
+        candidateCollector.set(candidates);
+        try {
+            return decodeSource(source, token, fastLinear, sideways);
         } finally {
-            multiFormatReader.reset();
+            candidateCollector.remove();
         }
     }
 
-    public static String decode(ImageProxy imageProxy) {
+    /**
+     * 解码帧中的所有条码，结果点为帧坐标，未找到时返回空数组
+     * GenericMultipleBarcodeReader每找到一个条码就把其余区域切开继续查找，切块的二值化同样检查取消标记
+     */
+    public static Result[] decodeMultiple(FrameSnapshot snapshot, CancellationToken token) {
+        return decodeMultiple(snapshot, token, false);
+    }
+
+    /**
+     * @param fastLinear 为true时一维码不使用TRY_HARDER，只应在一维码读数会经过帧内交叉验证时使用
+     */
+    public static Result[] decodeMultiple(FrameSnapshot snapshot, CancellationToken token, boolean fastLinear) {
+        token.throwIfCancelled();
+        int width = snapshot.getWidth();
+        YPlaneLuminanceSource source = new YPlaneLuminanceSource(
+                snapshot.getLuma(), width, 1, 0, 0, width, snapshot.getHeight());
+        currentToken.set(token);
         try {
-            if (imageProxy.getFormat() != ImageFormat.YUV_420_888) {
-                Log.e(TAG, "不支持的图像格式: " + imageProxy.getFormat());
-                return null;
-            }
+            BinaryBitmap bitmap = new BinaryBitmap(
+                    new CancellableBinarizer(new HybridBinarizer(source), token));
+            Reader reader = !fastLinear ? THREAD_READER
+                    : isSideways(snapshot) ? FAST_LINEAR_SIDEWAYS_THREAD_READER : FAST_LINEAR_THREAD_READER;
+            Result[] results = new GenericMultipleBarcodeReader(reader).decodeMultiple(bitmap);
+            return results != null ? results : new Result[0];
+        } catch (NotFoundException e) {
+            Log.d(TAG, "ZXing未找到条码");
+            return new Result[0];
+        } catch (CancellationException e) {
+            throw e;
+        } catch (Exception e) {
+            Log.e(TAG, "ZXing多码解码失败: ", e);
+            return new Result[0];
+        } finally {
+            currentToken.remove();
+        }
+    }
 
-            byte[] yuvData = yuv420ToNv21(imageProxy);
-            int width = imageProxy.getWidth();
-            int height = imageProxy.getHeight();
+    /**
+     * 只解码共享帧数据中的指定区域，结果点坐标相对于该区域
+     */
+    public static Result decodeResult(FrameSnapshot snapshot, Rect region) {
+        return decodeResult(snapshot, region, CancellationToken.NONE);
+    }
 
-            // 创建ZXing需要的亮度源
-            PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(
-                    yuvData, width, height, 0, 0, width, height, false);
+    /**
+     * 可取消的区域解码
+     */
+    public static Result decodeResult(FrameSnapshot snapshot, Rect region, CancellationToken token) {
+        return decodeResult(snapshot, region, token, false);
+    }
 
-            // 创建二进制位图
-            BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
+    public static Result decodeResult(FrameSnapshot snapshot, Rect region, CancellationToken token,
+                                      boolean fastLinear) {
+        YPlaneLuminanceSource source = new YPlaneLuminanceSource(snapshot.getLuma(), snapshot.getWidth(), 1,
+                region.left, region.top, region.width(), region.height());
+        return decodeSource(source, token, fastLinear, isSideways(snapshot));
+    }
+
+    private static Result decodeSource(LuminanceSource source, CancellationToken token, boolean fastLinear,
+                                       boolean sideways) {
+        token.throwIfCancelled();
+        currentToken.set(token);
+        try {
+            BinaryBitmap bitmap = new BinaryBitmap(
+                    new CancellableBinarizer(new HybridBinarizer(source), token));
 
             // 执行解码
-            Result result = multiFormatReader.decodeWithState(bitmap);
-            if (result != null) {
-                return result.getText();
-            }
-            return null;
+            return decodeWith(bitmap, fastLinear, sideways);
         } catch (NotFoundException e) {
             // 找不到条码的异常单独处理，这是常见的非错误情况
             Log.d(TAG, "ZXing未找到条码");
             return null;
-        }  catch (Exception e) {
+        } catch (CancellationException e) {
+            // 取消需要传给调度器，不是解码错误
+            throw e;
+        } catch (Exception e) {
             Log.e(TAG, "ZXing解码失败: ", e);
             return null;
         } finally {
-            multiFormatReader.reset();
+            currentToken.remove();
         }
     }
 
-    // 将YUV_420_888格式转换为NV21格式，ZXing可以处理NV21
-    @OptIn(markerClass = ExperimentalGetImage.class)
-    private static byte[] yuv420ToNv21(ImageProxy imageProxy) {
-        Image image = imageProxy.getImage();
-        byte[] data = new byte[image.getWidth() * image.getHeight() * 3 / 2];
-        Image.Plane[] planes = image.getPlanes();
-        int bufferIndex = 0;
-
-        // Y平面
-        ByteBuffer yBuffer = planes[0].getBuffer();
-        int ySize = yBuffer.remaining();
-        yBuffer.get(data, 0, ySize);
-
-        // U和V平面交错
-        ByteBuffer uvBuffer = planes[2].getBuffer();
-        int uvSize = uvBuffer.remaining();
-        uvBuffer.get(data, ySize, uvSize);
-
-        return data;
-    }
-
     public void release() {
 
     }
@@ -0,0 +1,228 @@
+package work.icu007.cameraxscan.frame;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/28-10:20
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 固定数量的直接内存帧槽位，按分析分辨率在启动相机时一次性分配
+ * 相机帧直接复制进槽位，ZXing、MLKit和OpenCV都在同一块堆外内存上读取，不再占用Java堆
+ * 槽位用尽时最多等待waitTimeoutMs，超时或帧超出槽位大小时由调用方退回堆内缓冲池
+ * 槽位按引用计数共享：每次allocate对应一次free，最后一个使用者free后才丢弃槽位，
+ * 新页面的相机先启动、旧页面后销毁时不会释放新页面正在使用的槽位
+ */
+public class FrameArena {
+    private static final String TAG = "FrameArena";
+    private static final long DEFAULT_WAIT_TIMEOUT_MS = 30;
+    private static volatile FrameArena instance;
+
+    private final ArrayDeque<ByteBuffer> freeSlots = new ArrayDeque<>();
+    // 已借出的槽位，按对象身份比较（ByteBuffer.equals比较的是内容），重新分配后归还的旧槽位直接丢弃
+    private final Set<ByteBuffer> borrowedSlots = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int slotCount = 0;
+    private int slotSize = 0;
+    // 调用了allocate但尚未free的使用者数
+    private int references = 0;
+    private long waitTimeoutMs = DEFAULT_WAIT_TIMEOUT_MS;
+
+    // 以下统计都在锁内更新
+    private int inUse = 0;
+    private int peakInUse = 0;
+    private long acquireCount = 0;
+    private long waitCount = 0;
+    private long totalWaitNanos = 0;
+    private long maxWaitNanos = 0;
+    private long timeoutCount = 0;
+    private long oversizeCount = 0;
+
+    public static FrameArena getInstance() {
+        if (instance == null) {
+            synchronized (FrameArena.class) {
+                if (instance == null) {
+                    instance = new FrameArena();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 按分析分辨率分配槽位并增加一个引用，每个槽位可容纳一帧完整的NV21数据
+     * 规格不变时只增加引用，不会重新分配；规格变化时重新分配，旧槽位归还时被忽略
+     *
+     * @param width 分析图像宽度
+     * @param height 分析图像高度
+     * @param slotCount 槽位数量，应不少于同时在解码中的帧数
+     */
+    public synchronized void allocate(int width, int height, int slotCount) {
+        if (slotCount < 1) {
+            throw new IllegalArgumentException("slotCount必须大于0: " + slotCount);
+        }
+        int size = FrameBufferPool.bufferSize(width, height, FrameBufferPool.FORMAT_NV21);
+        references++;
+        if (size == slotSize && slotCount == this.slotCount) {
+            return;
+        }
+
+        discardSlots();
+        for (int i = 0; i < slotCount; i++) {
+            ByteBuffer slot = ByteBuffer.allocateDirect(size);
+            freeSlots.add(slot);
+        }
+        this.slotCount = slotCount;
+        this.slotSize = size;
+        Log.d(TAG, "已分配帧槽位: " + slotCount + " x " + size + "字节");
+    }
+
+    /**
+     * 释放一个引用，最后一个引用释放时丢弃所有槽位
+     * 仍在使用的槽位归还时会被忽略，堆外内存随之由GC回收
+     */
+    public synchronized void free() {
+        if (references == 0) {
+            return;
+        }
+        references--;
+        if (references > 0) {
+            Log.d(TAG, "仍有" + references + "个使用者，保留帧槽位");
+            return;
+        }
+        discardSlots();
+    }
+
+    private void discardSlots() {
+        freeSlots.clear();
+        borrowedSlots.clear();
+        slotCount = 0;
+        slotSize = 0;
+        inUse = 0;
+        notifyAll();
+    }
+
+    public synchronized void setWaitTimeout(long timeoutMs) {
+        this.waitTimeoutMs = Math.max(0, timeoutMs);
+    }
+
+    /**
+     * 借出一个槽位，返回的缓冲区position为0、limit为size
+     * 调用方只能通过duplicate读写，并在用完后原样归还
+     *
+     * @return 槽位，未分配、大小不够或等待超时时返回null
+     */
+    public synchronized ByteBuffer acquire(int size) {
+        if (slotCount == 0) {
+            return null;
+        }
+        acquireCount++;
+        if (size > slotSize) {
+            oversizeCount++;
+            return null;
+        }
+
+        if (freeSlots.isEmpty()) {
+            waitCount++;
+            long start = System.nanoTime();
+            long remaining = TimeUnit.MILLISECONDS.toNanos(waitTimeoutMs);
+            try {
+                while (freeSlots.isEmpty() && remaining > 0 && slotCount > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    remaining = TimeUnit.MILLISECONDS.toNanos(waitTimeoutMs) - (System.nanoTime() - start);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            long waited = System.nanoTime() - start;
+            totalWaitNanos += waited;
+            maxWaitNanos = Math.max(maxWaitNanos, waited);
+            if (freeSlots.isEmpty()) {
+                timeoutCount++;
+                return null;
+            }
+        }
+
+        ByteBuffer slot = freeSlots.poll();
+        borrowedSlots.add(slot);
+        inUse++;
+        peakInUse = Math.max(peakInUse, inUse);
+        slot.clear();
+        slot.limit(size);
+        return slot;
+    }
+
+    /**
+     * 归还槽位，不属于当前这一批的缓冲区会被忽略
+     */
+    public synchronized void release(ByteBuffer slot) {
+        if (slot == null || !borrowedSlots.remove(slot)) {
+            return;
+        }
+        freeSlots.add(slot);
+        inUse--;
+        notify();
+    }
+
+    public synchronized int getReferenceCount() {
+        return references;
+    }
+
+    public synchronized int getSlotCount() {
+        return slotCount;
+    }
+
+    public synchronized int getInUse() {
+        return inUse;
+    }
+
+    public synchronized int getPeakInUse() {
+        return peakInUse;
+    }
+
+    /**
+     * 因槽位用尽而等待的次数，持续增长说明槽位数量不足
+     */
+    public synchronized long getWaitCount() {
+        return waitCount;
+    }
+
+    public synchronized long getAverageWaitMillis() {
+        return waitCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos / waitCount);
+    }
+
+    public synchronized long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+    }
+
+    /**
+     * 等待超时后退回堆内缓冲池的次数
+     */
+    public synchronized long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    /**
+     * 帧数据超出槽位大小的次数，说明实际分析分辨率大于分配时的分辨率
+     */
+    public synchronized long getOversizeCount() {
+        return oversizeCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FrameArena{slots=" + slotCount + " x " + slotSize + ", refs=" + references
+                + ", inUse=" + inUse + ", peak=" + peakInUse
+                + ", acquire=" + acquireCount + ", wait=" + waitCount
+                + ", avgWait=" + getAverageWaitMillis() + "ms, maxWait=" + getMaxWaitMillis() + "ms"
+                + ", timeout=" + timeoutCount + ", oversize=" + oversizeCount + '}';
+    }
+}
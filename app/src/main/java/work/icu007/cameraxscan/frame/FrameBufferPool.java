@@ -0,0 +1,231 @@
+package work.icu007.cameraxscan.frame;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/24-15:40
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import android.graphics.ImageFormat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按(宽, 高, 格式)复用帧数据数组的缓冲池
+ * 持续扫描时每帧的NV21/亮度数组都从这里借出和归还，稳态下不再产生新的分配
+ * 容量按同时解码的帧数和每帧借出的缓冲区数量计算，同一规格另有上限，避免一种规格挤掉其他规格
+ */
+public class FrameBufferPool {
+    public static final int FORMAT_NV21 = ImageFormat.NV21;
+    // 与ImageFormat.Y8数值相同，仅包含亮度数据
+    public static final int FORMAT_LUMA = 0x20203859;
+
+    // 同时持有缓冲区的帧数：流水线中解码的2帧加排队的1帧
+    private static final int DEFAULT_FRAMES_IN_FLIGHT = 3;
+    // 候选区域的裁剪结果，与DecoderManager的默认区域数一致
+    private static final int DEFAULT_REGIONS_PER_FRAME = 3;
+    // 每帧最多借出的缓冲区：金字塔各层、各个变体、候选区域，以及帧槽位用尽时的帧拷贝
+    private static final int DEFAULT_BUFFERS_PER_FRAME = LumaPyramid.MAX_LEVELS
+            + VariantGenerator.NAMES.size() + DEFAULT_REGIONS_PER_FRAME + 1;
+    private static final int DEFAULT_MAX_BUFFERS = DEFAULT_FRAMES_IN_FLIGHT * DEFAULT_BUFFERS_PER_FRAME;
+    // 同一规格最多的是与原始帧同尺寸的变体
+    private static final int DEFAULT_MAX_BUFFERS_PER_SIZE = DEFAULT_FRAMES_IN_FLIGHT * VariantGenerator.NAMES.size();
+    private static volatile FrameBufferPool instance;
+
+    private final int maxBuffers;
+    private final int maxBuffersPerSize;
+    // 按最近使用排序，最后一个是最近使用的规格
+    private final List<Bucket> buckets = new ArrayList<>();
+    private int pooledCount = 0;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong discardCount = new AtomicLong();
+
+    // 同一规格的空闲缓冲区
+    private static class Bucket {
+        final int width;
+        final int height;
+        final int format;
+        final ArrayDeque<byte[]> buffers = new ArrayDeque<>();
+
+        Bucket(int width, int height, int format) {
+            this.width = width;
+            this.height = height;
+            this.format = format;
+        }
+
+        boolean matches(int width, int height, int format) {
+            return this.width == width && this.height == height && this.format == format;
+        }
+    }
+
+    public static FrameBufferPool getInstance() {
+        if (instance == null) {
+            synchronized (FrameBufferPool.class) {
+                if (instance == null) {
+                    instance = new FrameBufferPool(DEFAULT_MAX_BUFFERS, DEFAULT_MAX_BUFFERS_PER_SIZE);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @param maxBuffers 池中最多保留的空闲缓冲区数量（所有规格合计），同一规格不单独限制
+     */
+    public FrameBufferPool(int maxBuffers) {
+        this(maxBuffers, maxBuffers);
+    }
+
+    /**
+     * @param maxBuffers 池中最多保留的空闲缓冲区数量（所有规格合计）
+     * @param maxBuffersPerSize 同一规格最多保留的空闲缓冲区数量
+     */
+    public FrameBufferPool(int maxBuffers, int maxBuffersPerSize) {
+        if (maxBuffers < 1 || maxBuffersPerSize < 1) {
+            throw new IllegalArgumentException("无效的缓冲池容量: maxBuffers=" + maxBuffers
+                    + ", maxBuffersPerSize=" + maxBuffersPerSize);
+        }
+        this.maxBuffers = maxBuffers;
+        this.maxBuffersPerSize = Math.min(maxBuffersPerSize, maxBuffers);
+    }
+
+    /**
+     * 计算指定规格所需的缓冲区大小
+     */
+    public static int bufferSize(int width, int height, int format) {
+        switch (format) {
+            case FORMAT_NV21:
+                return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+            case FORMAT_LUMA:
+                return width * height;
+            default:
+                throw new IllegalArgumentException("不支持的缓冲区格式: " + format);
+        }
+    }
+
+    /**
+     * 借出一个缓冲区，池中没有可用缓冲区时新分配
+     * 借出的数组内容是上一次使用留下的数据，调用方需自行覆盖
+     */
+    public byte[] acquire(int width, int height, int format) {
+        int size = bufferSize(width, height, format);
+        synchronized (this) {
+            Bucket bucket = findBucket(width, height, format);
+            if (bucket != null && !bucket.buffers.isEmpty()) {
+                pooledCount--;
+                hitCount.incrementAndGet();
+                return bucket.buffers.pop();
+            }
+        }
+        missCount.incrementAndGet();
+        allocatedBytes.addAndGet(size);
+        return new byte[size];
+    }
+
+    /**
+     * 归还缓冲区，同一规格已满时丢弃，池已满时淘汰最久未使用规格的缓冲区
+     */
+    public void release(int width, int height, int format, byte[] buffer) {
+        if (buffer == null || buffer.length != bufferSize(width, height, format)) {
+            discardCount.incrementAndGet();
+            return;
+        }
+
+        synchronized (this) {
+            Bucket bucket = findBucket(width, height, format);
+            if (bucket != null && bucket.buffers.size() >= maxBuffersPerSize) {
+                discardCount.incrementAndGet();
+                return;
+            }
+            if (pooledCount >= maxBuffers && !evictLeastRecentlyUsed(bucket)) {
+                discardCount.incrementAndGet();
+                return;
+            }
+
+            if (bucket == null) {
+                bucket = new Bucket(width, height, format);
+                buckets.add(bucket);
+            }
+            bucket.buffers.push(buffer);
+            pooledCount++;
+        }
+    }
+
+    /**
+     * 清空池中所有空闲缓冲区
+     */
+    public synchronized void clear() {
+        buckets.clear();
+        pooledCount = 0;
+    }
+
+    // 查找规格对应的桶，并将其移动到最近使用的位置
+    private Bucket findBucket(int width, int height, int format) {
+        for (int i = buckets.size() - 1; i >= 0; i--) {
+            Bucket bucket = buckets.get(i);
+            if (bucket.matches(width, height, format)) {
+                if (i != buckets.size() - 1) {
+                    buckets.remove(i);
+                    buckets.add(bucket);
+                }
+                return bucket;
+            }
+        }
+        return null;
+    }
+
+    // 淘汰最久未使用规格的一个缓冲区，不淘汰正在归还的规格
+    private boolean evictLeastRecentlyUsed(Bucket keep) {
+        for (int i = 0; i < buckets.size(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket != keep && !bucket.buffers.isEmpty()) {
+                bucket.buffers.removeLast();
+                pooledCount--;
+                discardCount.incrementAndGet();
+                if (bucket.buffers.isEmpty()) {
+                    buckets.remove(i);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    public long getDiscardCount() {
+        return discardCount.get();
+    }
+
+    public synchronized int getPooledCount() {
+        return pooledCount;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameBufferPool{" +
+                "hits=" + hitCount.get() +
+                ", misses=" + missCount.get() +
+                ", allocatedBytes=" + allocatedBytes.get() +
+                ", discards=" + discardCount.get() +
+                ", pooled=" + getPooledCount() + "/" + maxBuffers +
+                ", maxPerSize=" + maxBuffersPerSize +
+                '}';
+    }
+}
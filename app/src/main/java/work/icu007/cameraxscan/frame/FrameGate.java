@@ -0,0 +1,226 @@
+package work.icu007.cameraxscan.frame;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/4/2-10:10
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解码前的清晰度和运动检查，对焦过程中或设备移动时的模糊帧直接跳过，不再复制和解码
+ * 只在稀疏网格上采样亮度：清晰度为相邻像素梯度能量的均值，运动量为与上一帧同一网格的平均亮度差
+ * 两个阈值都随场景自适应，连续跳过过多帧时强制放行一帧，避免低纹理场景永远无法解码
+ * evaluate只在相机分析线程上调用，统计可以从任意线程读取
+ */
+public class FrameGate {
+    /**
+     * 检查结果
+     */
+    public enum Verdict {
+        PASS,
+        BLURRY,
+        MOVING
+    }
+
+    // 网格每边最多的采样点数
+    static final int GRID_SIZE = 64;
+    // 前几帧用于建立基准，总是放行
+    static final int WARMUP_FRAMES = 3;
+    // 清晰度低于近期峰值的该比例时视为模糊，峰值每帧衰减，对焦完成后会重新抬高
+    static final double SHARPNESS_RATIO = 0.5;
+    static final double SHARPNESS_DECAY = 0.97;
+    // 运动量超过静止时噪声基线的倍数时视为移动，阈值不低于MIN_MOTION
+    static final double MOTION_FACTOR = 4;
+    static final double MIN_MOTION = 8;
+    static final double MOTION_ALPHA = 0.1;
+    // 最多连续跳过的帧数
+    static final int MAX_CONSECUTIVE_SKIPS = 5;
+    // 解码耗时的平滑系数，用于估算节省的解码时间
+    private static final double DECODE_COST_ALPHA = 0.2;
+
+    private volatile boolean enabled = true;
+
+    // 以下状态都在锁内访问
+    private byte[] previousGrid;
+    private byte[] currentGrid;
+    private int gridWidth;
+    private int gridHeight;
+    private double sharpnessPeak = 0;
+    private double motionBaseline = 0;
+    private double lastSharpness = 0;
+    private double lastMotion = 0;
+    private int consecutiveSkips = 0;
+
+    private long evaluatedCount = 0;
+    private long blurrySkipCount = 0;
+    private long movingSkipCount = 0;
+    private long forcedCount = 0;
+    private long gateNanos = 0;
+    private double decodeCostMs = 0;
+    private double savedMs = 0;
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 检查共享帧数据的亮度
+     */
+    public Verdict evaluate(FrameSnapshot snapshot) {
+        return evaluate(snapshot.getLuma(), snapshot.getWidth(), 1, 0, 0,
+                snapshot.getWidth(), snapshot.getHeight());
+    }
+
+    /**
+     * 检查亮度平面中的指定区域，可以直接读取相机的Y平面，不需要先复制
+     *
+     * @param luma 亮度数据，不修改其position
+     * @param rowStride 行跨度
+     * @param pixelStride 像素跨度
+     */
+    public synchronized Verdict evaluate(ByteBuffer luma, int rowStride, int pixelStride,
+                                         int left, int top, int width, int height) {
+        if (!enabled) {
+            return Verdict.PASS;
+        }
+        long start = System.nanoTime();
+
+        int stepX = Math.max(2, width / GRID_SIZE);
+        int stepY = Math.max(2, height / GRID_SIZE);
+        int columns = Math.max(0, (width - 2) / stepX);
+        int rows = Math.max(0, (height - 2) / stepY);
+        if (columns == 0 || rows == 0) {
+            return Verdict.PASS;
+        }
+        if (columns != gridWidth || rows != gridHeight) {
+            // 尺寸或扫描窗口变化后重新建立运动基准
+            gridWidth = columns;
+            gridHeight = rows;
+            previousGrid = null;
+            currentGrid = new byte[columns * rows];
+        }
+
+        int base = luma.position();
+        long energy = 0;
+        for (int row = 0; row < rows; row++) {
+            int y = top + 1 + row * stepY;
+            int rowOffset = base + y * rowStride;
+            for (int column = 0; column < columns; column++) {
+                int index = rowOffset + (left + 1 + column * stepX) * pixelStride;
+                int center = luma.get(index) & 0xFF;
+                int gx = (luma.get(index + pixelStride) & 0xFF) - (luma.get(index - pixelStride) & 0xFF);
+                int gy = (luma.get(index + rowStride) & 0xFF) - (luma.get(index - rowStride) & 0xFF);
+                energy += gx * gx + gy * gy;
+                currentGrid[row * columns + column] = (byte) center;
+            }
+        }
+        double sharpness = (double) energy / (columns * rows);
+        double motion = previousGrid == null ? 0 : meanAbsDiff(currentGrid, previousGrid);
+
+        byte[] swap = previousGrid != null ? previousGrid : new byte[currentGrid.length];
+        previousGrid = currentGrid;
+        currentGrid = swap;
+
+        Verdict verdict = classify(sharpness, motion);
+        gateNanos += System.nanoTime() - start;
+        return verdict;
+    }
+
+    /**
+     * 根据本帧的清晰度和运动量更新自适应阈值并给出结果
+     */
+    Verdict classify(double sharpness, double motion) {
+        evaluatedCount++;
+        lastSharpness = sharpness;
+        lastMotion = motion;
+        sharpnessPeak = Math.max(sharpness, sharpnessPeak * SHARPNESS_DECAY);
+
+        double motionThreshold = Math.max(MIN_MOTION, motionBaseline * MOTION_FACTOR);
+        boolean moving = motion > motionThreshold;
+        if (!moving) {
+            motionBaseline += (motion - motionBaseline) * MOTION_ALPHA;
+        }
+        boolean blurry = sharpness < sharpnessPeak * SHARPNESS_RATIO;
+
+        if (evaluatedCount <= WARMUP_FRAMES || (!moving && !blurry)) {
+            consecutiveSkips = 0;
+            return Verdict.PASS;
+        }
+        if (consecutiveSkips >= MAX_CONSECUTIVE_SKIPS) {
+            consecutiveSkips = 0;
+            forcedCount++;
+            return Verdict.PASS;
+        }
+
+        consecutiveSkips++;
+        savedMs += decodeCostMs;
+        if (moving) {
+            movingSkipCount++;
+            return Verdict.MOVING;
+        }
+        blurrySkipCount++;
+        return Verdict.BLURRY;
+    }
+
+    private static double meanAbsDiff(byte[] a, byte[] b) {
+        long sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += Math.abs((a[i] & 0xFF) - (b[i] & 0xFF));
+        }
+        return (double) sum / a.length;
+    }
+
+    /**
+     * 记录一帧完整解码的耗时，跳过的帧按平均耗时计入节省的时间
+     */
+    public synchronized void recordDecodeMillis(long decodeMs) {
+        decodeCostMs = decodeCostMs == 0 ? decodeMs : decodeCostMs + (decodeMs - decodeCostMs) * DECODE_COST_ALPHA;
+    }
+
+    public synchronized double getLastSharpness() {
+        return lastSharpness;
+    }
+
+    public synchronized double getLastMotion() {
+        return lastMotion;
+    }
+
+    public synchronized long getEvaluatedCount() {
+        return evaluatedCount;
+    }
+
+    public synchronized long getSkippedCount() {
+        return blurrySkipCount + movingSkipCount;
+    }
+
+    /**
+     * 按平均解码耗时估算的、跳过的帧节省的解码时间
+     */
+    public synchronized long getSavedMillis() {
+        return Math.round(savedMs);
+    }
+
+    /**
+     * 检查本身的平均耗时（微秒）
+     */
+    public synchronized long getAverageGateMicros() {
+        return evaluatedCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(gateNanos / evaluatedCount);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FrameGate{evaluated=" + evaluatedCount + ", blurry=" + blurrySkipCount
+                + ", moving=" + movingSkipCount + ", forced=" + forcedCount
+                + ", saved≈" + getSavedMillis() + "ms, gate=" + getAverageGateMicros() + "us"
+                + String.format(Locale.US, ", sharpness=%.1f/%.1f, motion=%.1f/%.1f}",
+                lastSharpness, sharpnessPeak, lastMotion, Math.max(MIN_MOTION, motionBaseline * MOTION_FACTOR));
+    }
+}
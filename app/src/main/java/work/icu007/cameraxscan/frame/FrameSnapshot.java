@@ -0,0 +1,306 @@
+package work.icu007.cameraxscan.frame;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/25-16:20
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageFormat;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.util.Log;
+
+import androidx.camera.core.ImageProxy;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 从ImageProxy一次性提取的不可变帧数据，由图像处理器和所有解码器共享
+ * 提取完成后即可关闭ImageProxy，像素保持传感器方向，旋转角度仅作为元数据携带
+ * 相机帧优先存放在FrameArena的直接内存槽位中，槽位不可用时退回堆内缓冲池
+ */
+public class FrameSnapshot {
+    private static final String TAG = "FrameSnapshot";
+    // 灰度NV21帧的色度值
+    private static final byte NEUTRAL_CHROMA = (byte) 128;
+
+    // position为0、limit为数据大小，只通过duplicate访问
+    private final ByteBuffer data;
+    // 堆内缓冲池借出的数组，数据位于FrameArena槽位时为null
+    private final byte[] array;
+    private final int format;
+    private final int width;
+    private final int height;
+    private final int cropLeft;
+    private final int cropTop;
+    private final int rotationDegrees;
+    private final long timestamp;
+
+    private Bitmap bitmap;
+    private boolean released = false;
+
+    private FrameSnapshot(ByteBuffer data, byte[] array, int format, int width, int height,
+                          int cropLeft, int cropTop, int rotationDegrees, long timestamp) {
+        this.data = data;
+        this.array = array;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.cropLeft = cropLeft;
+        this.cropTop = cropTop;
+        this.rotationDegrees = rotationDegrees;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * 从YUV_420_888格式的ImageProxy提取帧数据，缓冲区从缓冲池借出
+     * 只提取ImageProxy裁剪区域内的像素，返回后调用方即可关闭ImageProxy
+     *
+     * @param imageProxy 源图像
+     * @param includeChroma 是否同时提取色度数据，仅需亮度时传false可减少三分之一的复制量
+     * @return 帧数据，格式不支持时返回null
+     */
+    public static FrameSnapshot from(ImageProxy imageProxy, boolean includeChroma) {
+        if (imageProxy.getFormat() != ImageFormat.YUV_420_888) {
+            Log.e(TAG, "不支持的图像格式: " + imageProxy.getFormat());
+            return null;
+        }
+
+        // 裁剪区域对齐到偶数，保证色度平面按2x2采样对齐
+        Rect cropRect = imageProxy.getCropRect();
+        int left = cropRect.left & ~1;
+        int top = cropRect.top & ~1;
+        int width = Math.max(2, (cropRect.right - left) & ~1);
+        int height = Math.max(2, (cropRect.bottom - top) & ~1);
+
+        int format = includeChroma ? FrameBufferPool.FORMAT_NV21 : FrameBufferPool.FORMAT_LUMA;
+        ByteBuffer data = FrameArena.getInstance().acquire(FrameBufferPool.bufferSize(width, height, format));
+        byte[] array = null;
+        if (data == null) {
+            array = FrameBufferPool.getInstance().acquire(width, height, format);
+            data = ByteBuffer.wrap(array);
+        }
+
+        try {
+            if (includeChroma) {
+                Yuv420Converter.toNv21(imageProxy, left, top, width, height, data);
+            } else {
+                Yuv420Converter.toLuma(imageProxy, left, top, width, height, data);
+            }
+
+            return new FrameSnapshot(data, array, format, width, height, left, top,
+                    imageProxy.getImageInfo().getRotationDegrees(),
+                    imageProxy.getImageInfo().getTimestamp());
+        } catch (RuntimeException e) {
+            // 转换失败时归还槽位或缓冲区，否则槽位会一直处于借出状态
+            returnBuffer(data, array, width, height, format);
+            throw e;
+        }
+    }
+
+    /**
+     * 包装一块已经填充好的亮度缓冲区，快照接管其所有权并在release时归还缓冲池
+     *
+     * @param luma 从缓冲池以FORMAT_LUMA借出的亮度数据
+     */
+    public static FrameSnapshot wrapLuma(byte[] luma, int width, int height,
+                                         int rotationDegrees, long timestamp) {
+        if (luma.length != FrameBufferPool.bufferSize(width, height, FrameBufferPool.FORMAT_LUMA)) {
+            throw new IllegalArgumentException("亮度数据大小不匹配: " + luma.length);
+        }
+        return new FrameSnapshot(ByteBuffer.wrap(luma), luma, FrameBufferPool.FORMAT_LUMA,
+                width, height, 0, 0, rotationDegrees, timestamp);
+    }
+
+    /**
+     * 包装一块已经填充好的NV21缓冲区，快照接管其所有权并在release时归还缓冲池
+     *
+     * @param nv21 从缓冲池以FORMAT_NV21借出的数据
+     */
+    public static FrameSnapshot wrapNv21(byte[] nv21, int width, int height,
+                                         int rotationDegrees, long timestamp) {
+        if (nv21.length != FrameBufferPool.bufferSize(width, height, FrameBufferPool.FORMAT_NV21)) {
+            throw new IllegalArgumentException("NV21数据大小不匹配: " + nv21.length);
+        }
+        return new FrameSnapshot(ByteBuffer.wrap(nv21), nv21, FrameBufferPool.FORMAT_NV21,
+                width, height, 0, 0, rotationDegrees, timestamp);
+    }
+
+    /**
+     * 包装只填好了亮度的NV21缓冲区，色度填为中性值，得到灰度的NV21帧
+     * 金字塔、变体和候选区域都用这种格式，MLKit可以直接读取，无需为灰度数据创建ARGB位图
+     *
+     * @param nv21 从缓冲池以FORMAT_NV21借出、前width * height字节已写入亮度的数据
+     */
+    public static FrameSnapshot wrapGray(byte[] nv21, int width, int height,
+                                         int rotationDegrees, long timestamp) {
+        if (nv21.length != FrameBufferPool.bufferSize(width, height, FrameBufferPool.FORMAT_NV21)) {
+            throw new IllegalArgumentException("NV21数据大小不匹配: " + nv21.length);
+        }
+        Arrays.fill(nv21, width * height, nv21.length, NEUTRAL_CHROMA);
+        return wrapNv21(nv21, width, height, rotationDegrees, timestamp);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 帧数据左上角在原始分析图像中的横坐标
+     */
+    public int getCropLeft() {
+        return cropLeft;
+    }
+
+    /**
+     * 帧数据左上角在原始分析图像中的纵坐标
+     */
+    public int getCropTop() {
+        return cropTop;
+    }
+
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+
+    /**
+     * 图像的传感器时间戳（纳秒）
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean hasChroma() {
+        return format == FrameBufferPool.FORMAT_NV21;
+    }
+
+    /**
+     * 数据是否位于直接内存中，此时可以直接包装为OpenCV的Mat而无需复制
+     */
+    public boolean isDirect() {
+        return data.isDirect();
+    }
+
+    /**
+     * 亮度数据的只读视图，行跨度等于宽度，像素跨度为1
+     */
+    public ByteBuffer getLuma() {
+        ByteBuffer luma = data.duplicate();
+        luma.limit(width * height);
+        return luma.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * 亮度数据所在的共享数组，前width * height字节为亮度，行跨度等于宽度
+     * 仅堆内数据可用，供需要byte[]的接口（如Mat.put）直接读取，调用方不得修改
+     */
+    public byte[] getLumaArray() {
+        if (array == null) {
+            throw new IllegalStateException("帧数据位于直接内存中，请使用getLuma()");
+        }
+        return array;
+    }
+
+    /**
+     * NV21数据的共享视图，仅在提取了色度数据时可用
+     * 可直接交给InputImage.fromByteBuffer，调用方不得修改
+     */
+    public ByteBuffer getNv21Buffer() {
+        if (!hasChroma()) {
+            throw new IllegalStateException("帧数据未包含色度数据");
+        }
+        return data.duplicate();
+    }
+
+    /**
+     * 传感器方向的ARGB位图，首次调用时转换并缓存，由快照负责回收
+     * 仅有亮度数据时生成灰度位图，调用方不得回收返回的位图
+     */
+    public synchronized Bitmap getBitmap() {
+        if (released) return null;
+        if (bitmap == null) {
+            bitmap = hasChroma() ? createBitmap() : createGrayBitmap();
+        }
+        return bitmap;
+    }
+
+    private Bitmap createGrayBitmap() {
+        int[] pixels = new int[width * height];
+        ByteBuffer luma = getLuma();
+        for (int i = 0; i < pixels.length; i++) {
+            int y = luma.get(i) & 0xFF;
+            pixels[i] = 0xFF000000 | (y << 16) | (y << 8) | y;
+        }
+        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    private Bitmap createBitmap() {
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            // YuvImage只接受数组，直接内存中的数据需要先复制一份
+            byte[] nv21 = array;
+            if (nv21 == null) {
+                nv21 = new byte[data.limit()];
+                data.duplicate().get(nv21);
+            }
+            YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, width, height, null);
+            yuvImage.compressToJpeg(new Rect(0, 0, width, height), 100, out);
+
+            byte[] jpegData = out.toByteArray();
+            return BitmapFactory.decodeByteArray(jpegData, 0, jpegData.length);
+        } catch (Exception e) {
+            Log.e(TAG, "NV21转换为Bitmap失败", e);
+            return null;
+        }
+    }
+
+    /**
+     * 按旋转角度返回正向的位图副本，仅在确实需要正向像素时使用（如保存调试图像）
+     * 原位图不会被修改或回收
+     */
+    public static Bitmap rotate(Bitmap bitmap, int rotationDegrees) {
+        if (bitmap == null || rotationDegrees % 360 == 0) {
+            return bitmap;
+        }
+
+        Matrix matrix = new Matrix();
+        matrix.postRotate(rotationDegrees);
+        try {
+            return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        } catch (OutOfMemoryError e) {
+            Log.e(TAG, "旋转位图时内存不足", e);
+            return bitmap;
+        }
+    }
+
+    /**
+     * 回收缓存的位图并将缓冲区归还槽位或缓冲池，之后不能再访问像素数据
+     */
+    public synchronized void release() {
+        if (released) return;
+        released = true;
+        if (bitmap != null && !bitmap.isRecycled()) {
+            bitmap.recycle();
+        }
+        bitmap = null;
+        returnBuffer(data, array, width, height, format);
+    }
+
+    // array不为null时数据来自缓冲池，否则来自帧槽位
+    private static void returnBuffer(ByteBuffer data, byte[] array, int width, int height, int format) {
+        if (array != null) {
+            FrameBufferPool.getInstance().release(width, height, format, array);
+        } else {
+            FrameArena.getInstance().release(data);
+        }
+    }
+}
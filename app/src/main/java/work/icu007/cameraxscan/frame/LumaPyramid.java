@@ -0,0 +1,112 @@
+package work.icu007.cameraxscan.frame;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/27-15:30
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 每帧构建的亮度金字塔，第0层即原始帧，之后每层按2x2均值缩小一半
+ * 近距离的大码在低分辨率层就能识别，解码器从粗到细尝试，只在失败时才处理全分辨率
+ * 低分辨率层填充中性色度，同样可以作为NV21交给MLKit
+ */
+public class LumaPyramid {
+    /**
+     * 最多构建的层数（含第0层）
+     */
+    public static final int MAX_LEVELS = 4;
+    /**
+     * 某层的短边小于该值时不再继续缩小，过小的图像无法分辨条码模块
+     */
+    public static final int MIN_LEVEL_SIZE = 120;
+
+    private final List<FrameSnapshot> levels;
+
+    private LumaPyramid(List<FrameSnapshot> levels) {
+        this.levels = levels;
+    }
+
+    /**
+     * 从原始帧构建金字塔，各层缓冲区从缓冲池借出
+     *
+     * @param base 原始帧，作为第0层，所有权仍归调用方
+     * @param levelCount 期望的层数，实际层数受MAX_LEVELS和MIN_LEVEL_SIZE限制
+     */
+    public static LumaPyramid build(FrameSnapshot base, int levelCount) {
+        int count = Math.max(1, Math.min(levelCount, MAX_LEVELS));
+        List<FrameSnapshot> levels = new ArrayList<>(count);
+        levels.add(base);
+
+        FrameBufferPool pool = FrameBufferPool.getInstance();
+        FrameSnapshot previous = base;
+        for (int level = 1; level < count; level++) {
+            int width = (previous.getWidth() / 2) & ~1;
+            int height = (previous.getHeight() / 2) & ~1;
+            if (Math.min(width, height) < MIN_LEVEL_SIZE) {
+                break;
+            }
+
+            byte[] data = pool.acquire(width, height, FrameBufferPool.FORMAT_NV21);
+            downsample(previous.getLuma(), previous.getWidth(), data, width, height);
+
+            previous = FrameSnapshot.wrapGray(data, width, height,
+                    base.getRotationDegrees(), base.getTimestamp());
+            levels.add(previous);
+        }
+        return new LumaPyramid(levels);
+    }
+
+    /**
+     * 2x2均值缩小，源亮度行跨度等于srcWidth，只读取目标尺寸覆盖的区域
+     * 源数据可能位于直接内存，按行批量读取后再计算
+     */
+    static void downsample(ByteBuffer src, int srcWidth, byte[] dst, int dstWidth, int dstHeight) {
+        ByteBuffer luma = src.duplicate();
+        int start = luma.position();
+        int rowLength = dstWidth * 2;
+        byte[] row0 = new byte[rowLength];
+        byte[] row1 = new byte[rowLength];
+
+        int out = 0;
+        for (int y = 0; y < dstHeight; y++) {
+            luma.position(start + 2 * y * srcWidth);
+            luma.get(row0);
+            luma.position(start + (2 * y + 1) * srcWidth);
+            luma.get(row1);
+            for (int x = 0, col = 0; x < dstWidth; x++, col += 2) {
+                int sum = (row0[col] & 0xFF) + (row0[col + 1] & 0xFF)
+                        + (row1[col] & 0xFF) + (row1[col + 1] & 0xFF);
+                dst[out++] = (byte) ((sum + 2) >> 2);
+            }
+        }
+    }
+
+    public int getLevelCount() {
+        return levels.size();
+    }
+
+    public FrameSnapshot getLevel(int level) {
+        return levels.get(level);
+    }
+
+    /**
+     * 第level层一个像素对应原始帧的边长
+     */
+    public static int getScale(int level) {
+        return 1 << level;
+    }
+
+    /**
+     * 归还第1层及以上的缓冲区，第0层由调用方负责释放
+     */
+    public void release() {
+        for (int level = 1; level < levels.size(); level++) {
+            levels.get(level).release();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package work.icu007.cameraxscan.frame;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/27-11:05
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * 扫描窗口，以预览视图为参照的归一化坐标（0~1，正向显示方向）表示
+ * 解码前映射到分析图像的传感器坐标，只处理窗口内的像素
+ */
+public final class ScanWindow {
+    /**
+     * 整个预览区域，即不裁剪
+     */
+    public static final ScanWindow FULL = new ScanWindow(0f, 0f, 1f, 1f);
+
+    private final float left;
+    private final float top;
+    private final float right;
+    private final float bottom;
+
+    private ScanWindow(float left, float top, float right, float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    /**
+     * 使用归一化坐标创建扫描窗口，超出0~1的部分会被截断
+     */
+    public static ScanWindow normalized(float left, float top, float right, float bottom) {
+        float l = clamp(Math.min(left, right));
+        float t = clamp(Math.min(top, bottom));
+        float r = clamp(Math.max(left, right));
+        float b = clamp(Math.max(top, bottom));
+        if (r - l <= 0f || b - t <= 0f) {
+            throw new IllegalArgumentException("扫描窗口为空: " + left + "," + top + "," + right + "," + bottom);
+        }
+        return new ScanWindow(l, t, r, b);
+    }
+
+    /**
+     * 使用预览视图中的像素坐标创建扫描窗口
+     *
+     * @param viewRect 扫描框在预览视图中的位置
+     * @param viewWidth 预览视图宽度
+     * @param viewHeight 预览视图高度
+     */
+    public static ScanWindow fromViewRect(RectF viewRect, int viewWidth, int viewHeight) {
+        if (viewWidth <= 0 || viewHeight <= 0) {
+            return FULL;
+        }
+        return normalized(viewRect.left / viewWidth, viewRect.top / viewHeight,
+                viewRect.right / viewWidth, viewRect.bottom / viewHeight);
+    }
+
+    public boolean isFull() {
+        return left <= 0f && top <= 0f && right >= 1f && bottom >= 1f;
+    }
+
+    /**
+     * 将扫描窗口映射到分析图像的传感器坐标
+     * 左上角和宽高都对齐到偶数，保证色度平面可以按2x2采样对齐
+     *
+     * @param visibleRect 预览视图可见区域在分析图像中的范围，绑定ViewPort时即ImageProxy的裁剪区域
+     * @param rotationDegrees 分析图像需要顺时针旋转的角度
+     * @return 传感器坐标下的裁剪区域
+     */
+    public Rect mapToImage(Rect visibleRect, int rotationDegrees) {
+        // 正向坐标(u, v)对应的传感器归一化坐标
+        float x0, y0, x1, y1;
+        switch ((rotationDegrees % 360 + 360) % 360) {
+            case 90:
+                x0 = top;
+                x1 = bottom;
+                y0 = 1f - right;
+                y1 = 1f - left;
+                break;
+            case 180:
+                x0 = 1f - right;
+                x1 = 1f - left;
+                y0 = 1f - bottom;
+                y1 = 1f - top;
+                break;
+            case 270:
+                x0 = 1f - bottom;
+                x1 = 1f - top;
+                y0 = left;
+                y1 = right;
+                break;
+            default:
+                x0 = left;
+                x1 = right;
+                y0 = top;
+                y1 = bottom;
+                break;
+        }
+
+        int width = visibleRect.width();
+        int height = visibleRect.height();
+        int cropLeft = alignDown(visibleRect.left + Math.round(x0 * width));
+        int cropTop = alignDown(visibleRect.top + Math.round(y0 * height));
+        int cropRight = Math.min(visibleRect.right, visibleRect.left + Math.round(x1 * width));
+        int cropBottom = Math.min(visibleRect.bottom, visibleRect.top + Math.round(y1 * height));
+
+        // 宽高对齐到偶数，且至少保留2x2像素
+        int cropWidth = Math.max(2, alignDown(cropRight - cropLeft));
+        int cropHeight = Math.max(2, alignDown(cropBottom - cropTop));
+        return new Rect(cropLeft, cropTop, cropLeft + cropWidth, cropTop + cropHeight);
+    }
+
+    private static int alignDown(int value) {
+        return value & ~1;
+    }
+
+    private static float clamp(float value) {
+        return Math.max(0f, Math.min(1f, value));
+    }
+
+    @Override
+    public String toString() {
+        return "ScanWindow{" + left + ", " + top + ", " + right + ", " + bottom + '}';
+    }
+}
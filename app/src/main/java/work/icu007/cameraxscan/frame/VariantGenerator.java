@@ -0,0 +1,216 @@
+package work.icu007.cameraxscan.frame;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/31-10:20
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 从同一帧生成多个输入变体，原始帧识别失败时交给各引擎并行尝试
+ * 反色用于白条黑底的条码，两种二值化分别针对整体偏暗/偏亮和光照不均的低对比度标签，
+ * 旋转90°让竖直方向的一维码变为水平方向
+ * 所有变体都是色度为中性值的NV21，MLKit可以直接读取，缓冲区从缓冲池借出，由调用方release
+ */
+public final class VariantGenerator {
+    public static final String INVERTED = "inverted";
+    public static final String BINARY_OTSU = "binary-otsu";
+    public static final String BINARY_LOCAL = "binary-local";
+    public static final String ROTATED = "rot90";
+
+    /**
+     * 所有变体的名称，按通常的收益从高到低排列
+     */
+    public static final List<String> NAMES = Collections.unmodifiableList(
+            Arrays.asList(BINARY_LOCAL, BINARY_OTSU, INVERTED, ROTATED));
+
+    // 局部二值化的块边长
+    static final int LOCAL_BLOCK_SIZE = 16;
+    // 块内亮度范围小于该值时视为平坦区域，按全局阈值处理
+    static final int LOCAL_MIN_CONTRAST = 8;
+
+    private VariantGenerator() {
+    }
+
+    /**
+     * 生成指定的变体
+     *
+     * @param base 原始帧，只读取亮度，所有权仍归调用方
+     * @param name {@link #NAMES}中的名称
+     * @return 灰度NV21的新帧，由调用方release
+     */
+    public static FrameSnapshot generate(FrameSnapshot base, String name) {
+        int width = base.getWidth();
+        int height = base.getHeight();
+        FrameBufferPool pool = FrameBufferPool.getInstance();
+        byte[] data = pool.acquire(width, height, FrameBufferPool.FORMAT_NV21);
+
+        try {
+            switch (name) {
+                case INVERTED:
+                    base.getLuma().get(data, 0, width * height);
+                    invert(data, width * height);
+                    break;
+                case BINARY_OTSU:
+                    base.getLuma().get(data, 0, width * height);
+                    threshold(data, width * height, otsuThreshold(data, width * height));
+                    break;
+                case BINARY_LOCAL:
+                    base.getLuma().get(data, 0, width * height);
+                    localThreshold(data, width, height);
+                    break;
+                case ROTATED:
+                    rotate90(base.getLuma(), width, height, data);
+                    // 像素顺时针转了90°，显示方向需要少转90°
+                    return FrameSnapshot.wrapGray(data, height, width,
+                            (base.getRotationDegrees() + 270) % 360, base.getTimestamp());
+                default:
+                    throw new IllegalArgumentException("未知的变体: " + name);
+            }
+            return FrameSnapshot.wrapGray(data, width, height,
+                    base.getRotationDegrees(), base.getTimestamp());
+        } catch (RuntimeException e) {
+            pool.release(width, height, FrameBufferPool.FORMAT_NV21, data);
+            throw e;
+        }
+    }
+
+    static void invert(byte[] data, int length) {
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ~data[i];
+        }
+    }
+
+    /**
+     * 小于等于阈值的像素置0，其余置255
+     */
+    static void threshold(byte[] data, int length, int threshold) {
+        for (int i = 0; i < length; i++) {
+            data[i] = (data[i] & 0xFF) <= threshold ? 0 : (byte) 255;
+        }
+    }
+
+    /**
+     * Otsu全局阈值，使前景和背景的类间方差最大
+     */
+    static int otsuThreshold(byte[] data, int length) {
+        int[] histogram = new int[256];
+        long sum = 0;
+        for (int i = 0; i < length; i++) {
+            int value = data[i] & 0xFF;
+            histogram[value]++;
+            sum += value;
+        }
+
+        long backgroundSum = 0;
+        int backgroundCount = 0;
+        double bestVariance = -1;
+        int best = 0;
+        for (int t = 0; t < 256; t++) {
+            backgroundCount += histogram[t];
+            if (backgroundCount == 0) {
+                continue;
+            }
+            int foregroundCount = length - backgroundCount;
+            if (foregroundCount == 0) {
+                break;
+            }
+            backgroundSum += (long) t * histogram[t];
+            double backgroundMean = (double) backgroundSum / backgroundCount;
+            double foregroundMean = (double) (sum - backgroundSum) / foregroundCount;
+            double diff = backgroundMean - foregroundMean;
+            double variance = (double) backgroundCount * foregroundCount * diff * diff;
+            if (variance > bestVariance) {
+                bestVariance = variance;
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 按块均值局部二值化，阈值取周围3x3个块的均值，可以应对光照不均和低对比度
+     * 平坦的块没有可靠的局部阈值，改用全局均值
+     */
+    static void localThreshold(byte[] data, int width, int height) {
+        int blocksX = (width + LOCAL_BLOCK_SIZE - 1) / LOCAL_BLOCK_SIZE;
+        int blocksY = (height + LOCAL_BLOCK_SIZE - 1) / LOCAL_BLOCK_SIZE;
+        int[] means = new int[blocksX * blocksY];
+        boolean[] flat = new boolean[blocksX * blocksY];
+        long total = 0;
+
+        // 先统计每个块的均值和亮度范围，再原地二值化
+        for (int by = 0; by < blocksY; by++) {
+            int yEnd = Math.min(height, (by + 1) * LOCAL_BLOCK_SIZE);
+            for (int bx = 0; bx < blocksX; bx++) {
+                int xEnd = Math.min(width, (bx + 1) * LOCAL_BLOCK_SIZE);
+                int sum = 0;
+                int count = 0;
+                int min = 255;
+                int max = 0;
+                for (int y = by * LOCAL_BLOCK_SIZE; y < yEnd; y++) {
+                    for (int x = bx * LOCAL_BLOCK_SIZE, i = y * width + x; x < xEnd; x++, i++) {
+                        int value = data[i] & 0xFF;
+                        sum += value;
+                        min = Math.min(min, value);
+                        max = Math.max(max, value);
+                        count++;
+                    }
+                }
+                means[by * blocksX + bx] = sum / count;
+                flat[by * blocksX + bx] = max - min < LOCAL_MIN_CONTRAST;
+                total += sum;
+            }
+        }
+        int globalMean = (int) (total / ((long) width * height));
+
+        for (int by = 0; by < blocksY; by++) {
+            int yEnd = Math.min(height, (by + 1) * LOCAL_BLOCK_SIZE);
+            for (int bx = 0; bx < blocksX; bx++) {
+                int xEnd = Math.min(width, (bx + 1) * LOCAL_BLOCK_SIZE);
+                int threshold;
+                if (flat[by * blocksX + bx]) {
+                    threshold = globalMean;
+                } else {
+                    int sum = 0;
+                    int count = 0;
+                    for (int ny = Math.max(0, by - 1); ny <= Math.min(blocksY - 1, by + 1); ny++) {
+                        for (int nx = Math.max(0, bx - 1); nx <= Math.min(blocksX - 1, bx + 1); nx++) {
+                            sum += means[ny * blocksX + nx];
+                            count++;
+                        }
+                    }
+                    threshold = sum / count;
+                }
+                for (int y = by * LOCAL_BLOCK_SIZE; y < yEnd; y++) {
+                    for (int x = bx * LOCAL_BLOCK_SIZE, i = y * width + x; x < xEnd; x++, i++) {
+                        data[i] = (data[i] & 0xFF) < threshold ? 0 : (byte) 255;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 顺时针旋转90°，输出宽为height、高为width
+     * 源数据按行批量读取，可能位于直接内存
+     */
+    static void rotate90(ByteBuffer src, int width, int height, byte[] dst) {
+        ByteBuffer luma = src.duplicate();
+        int start = luma.position();
+        byte[] row = new byte[width];
+        for (int y = 0; y < height; y++) {
+            luma.position(start + y * width);
+            luma.get(row);
+            int column = height - 1 - y;
+            for (int x = 0; x < width; x++) {
+                dst[x * height + column] = row[x];
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package work.icu007.cameraxscan.frame;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/3/25-09:30
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import android.media.Image;
+
+import androidx.camera.core.ImageProxy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * YUV_420_888转NV21的工具类
+ * 当U/V平面本身就是交错的VU数据时（pixelStride == 2，大多数设备的情况）直接批量复制，
+ * 否则按行批量读取后再交错，全程不逐像素调用position()/get()
+ * 输出可以是byte[]，也可以是直接缓冲区（此时两端都是直接内存，逐行批量复制不经过Java堆）
+ */
+public final class Yuv420Converter {
+
+    private Yuv420Converter() {
+    }
+
+    /**
+     * 将Image转换为NV21，输出数组大小至少为
+     * {@link FrameBufferPool#bufferSize(int, int, int)}(width, height, FORMAT_NV21)
+     */
+    public static void toNv21(Image image, byte[] out) {
+        Image.Plane[] planes = image.getPlanes();
+        toNv21(planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+                planes[1].getBuffer(), planes[2].getBuffer(),
+                planes[1].getRowStride(), planes[1].getPixelStride(),
+                image.getWidth(), image.getHeight(), out);
+    }
+
+    /**
+     * 将ImageProxy转换为NV21
+     */
+    public static void toNv21(ImageProxy imageProxy, byte[] out) {
+        toNv21(imageProxy, 0, 0, imageProxy.getWidth(), imageProxy.getHeight(), out);
+    }
+
+    /**
+     * 只转换ImageProxy中指定区域的数据，left和top需为偶数以保证色度对齐
+     */
+    public static void toNv21(ImageProxy imageProxy, int left, int top, int width, int height, byte[] out) {
+        toNv21(imageProxy, left, top, width, height, ByteBuffer.wrap(out));
+    }
+
+    /**
+     * 只转换ImageProxy中指定区域的数据，从out当前position开始写入，不会修改out的position
+     */
+    public static void toNv21(ImageProxy imageProxy, int left, int top, int width, int height, ByteBuffer out) {
+        checkCrop(left, top);
+        ImageProxy.PlaneProxy[] planes = imageProxy.getPlanes();
+        int uvRowStride = planes[1].getRowStride();
+        int uvPixelStride = planes[1].getPixelStride();
+        int uvOffset = (top / 2) * uvRowStride + (left / 2) * uvPixelStride;
+        toNv21(offset(planes[0].getBuffer(), top * planes[0].getRowStride() + left * planes[0].getPixelStride()),
+                planes[0].getRowStride(), planes[0].getPixelStride(),
+                offset(planes[1].getBuffer(), uvOffset), offset(planes[2].getBuffer(), uvOffset),
+                uvRowStride, uvPixelStride, width, height, out);
+    }
+
+    /**
+     * 仅复制ImageProxy的亮度数据，输出为行跨度等于宽度的连续数组
+     */
+    public static void toLuma(ImageProxy imageProxy, byte[] out) {
+        toLuma(imageProxy, 0, 0, imageProxy.getWidth(), imageProxy.getHeight(), out);
+    }
+
+    /**
+     * 只复制ImageProxy中指定区域的亮度数据
+     */
+    public static void toLuma(ImageProxy imageProxy, int left, int top, int width, int height, byte[] out) {
+        toLuma(imageProxy, left, top, width, height, ByteBuffer.wrap(out));
+    }
+
+    /**
+     * 只复制ImageProxy中指定区域的亮度数据，从out当前position开始写入，不会修改out的position
+     */
+    public static void toLuma(ImageProxy imageProxy, int left, int top, int width, int height, ByteBuffer out) {
+        ImageProxy.PlaneProxy yPlane = imageProxy.getPlanes()[0];
+        if (out.remaining() < width * height) {
+            throw new IllegalArgumentException("输出缓冲区过小: " + out.remaining());
+        }
+        copyLuma(offset(yPlane.getBuffer(), top * yPlane.getRowStride() + left * yPlane.getPixelStride()),
+                yPlane.getRowStride(), yPlane.getPixelStride(), width, height, out.duplicate());
+    }
+
+    /**
+     * 将各平面数据转换为NV21，不会修改传入缓冲区的position
+     *
+     * @param yBuffer Y平面
+     * @param yRowStride Y平面行跨度
+     * @param yPixelStride Y平面像素跨度
+     * @param uBuffer U平面
+     * @param vBuffer V平面
+     * @param uvRowStride U/V平面行跨度
+     * @param uvPixelStride U/V平面像素跨度
+     * @param width 图像宽度
+     * @param height 图像高度
+     * @param out 输出的NV21数据
+     */
+    public static void toNv21(ByteBuffer yBuffer, int yRowStride, int yPixelStride,
+                              ByteBuffer uBuffer, ByteBuffer vBuffer, int uvRowStride, int uvPixelStride,
+                              int width, int height, byte[] out) {
+        toNv21(yBuffer, yRowStride, yPixelStride, uBuffer, vBuffer, uvRowStride, uvPixelStride,
+                width, height, ByteBuffer.wrap(out));
+    }
+
+    /**
+     * 将各平面数据转换为NV21，从out当前position开始写入，不会修改任何传入缓冲区的position
+     */
+    public static void toNv21(ByteBuffer yBuffer, int yRowStride, int yPixelStride,
+                              ByteBuffer uBuffer, ByteBuffer vBuffer, int uvRowStride, int uvPixelStride,
+                              int width, int height, ByteBuffer out) {
+        int ySize = width * height;
+        int uvWidth = (width + 1) / 2;
+        int uvHeight = (height + 1) / 2;
+        if (out.remaining() < ySize + 2 * uvWidth * uvHeight) {
+            throw new IllegalArgumentException("输出缓冲区过小: " + out.remaining());
+        }
+
+        ByteBuffer dst = out.duplicate();
+        copyLuma(yBuffer.duplicate(), yRowStride, yPixelStride, width, height, dst);
+
+        ByteBuffer u = uBuffer.duplicate();
+        ByteBuffer v = vBuffer.duplicate();
+        if (uvPixelStride == 2 && isInterleavedVu(u, v)) {
+            copyInterleavedVu(u, v, uvRowStride, uvWidth, uvHeight, dst);
+        } else {
+            interleavePlanes(u, v, uvRowStride, uvPixelStride, uvWidth, uvHeight, dst);
+        }
+    }
+
+    /**
+     * 判断V平面能否当作交错的VU缓冲区复制，即U平面从V平面的第二个字节开始
+     * 不向相机缓冲区写入探测值，只比较错开一个字节后的内容：两个平面长度相同且V平面从第二个字节起
+     * 与U平面逐字节相同时，从V平面整块复制与逐个交错的结果完全一致，即使两者并不共享内存也不会出错
+     * 分开存储的平面通常在开头几个字节内就出现不同，比较很快结束
+     */
+    static boolean isInterleavedVu(ByteBuffer u, ByteBuffer v) {
+        if (v.remaining() < 2 || u.remaining() != v.remaining()) {
+            return false;
+        }
+        ByteBuffer shiftedV = v.duplicate();
+        shiftedV.position(v.position() + 1);
+        ByteBuffer trimmedU = u.duplicate();
+        trimmedU.limit(u.limit() - 1);
+        return shiftedV.compareTo(trimmedU) == 0;
+    }
+
+    private static void checkCrop(int left, int top) {
+        if ((left & 1) != 0 || (top & 1) != 0) {
+            throw new IllegalArgumentException("裁剪区域的起点必须为偶数: " + left + "," + top);
+        }
+    }
+
+    // 返回从指定偏移开始的独立视图
+    private static ByteBuffer offset(ByteBuffer buffer, int offset) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(view.position() + offset);
+        return view;
+    }
+
+    // 以下方法都从out当前position顺序写入
+
+    private static void copyLuma(ByteBuffer y, int rowStride, int pixelStride,
+                                 int width, int height, ByteBuffer out) {
+        int start = y.position();
+        if (pixelStride == 1 && rowStride == width) {
+            // 没有行填充，一次性复制
+            y.limit(start + width * height);
+            out.put(y);
+            return;
+        }
+
+        for (int row = 0; row < height; row++) {
+            int rowStart = start + row * rowStride;
+            if (pixelStride == 1) {
+                put(out, y, rowStart, width);
+            } else {
+                for (int col = 0; col < width; col++) {
+                    out.put(y.get(rowStart + col * pixelStride));
+                }
+            }
+        }
+    }
+
+    // 交错的VU数据，整块或按行批量复制
+    private static void copyInterleavedVu(ByteBuffer u, ByteBuffer v, int rowStride,
+                                          int uvWidth, int uvHeight, ByteBuffer out) {
+        int rowBytes = uvWidth * 2;
+        int vStart = v.position();
+        int uStart = u.position();
+
+        // V平面在最后一个V值处结束，最后一个U值需要从U平面读取
+        int lastRowStart = (uvHeight - 1) * rowStride;
+        if (rowStride == rowBytes) {
+            put(out, v, vStart, rowBytes * uvHeight - 1);
+        } else {
+            for (int row = 0; row < uvHeight - 1; row++) {
+                put(out, v, vStart + row * rowStride, rowBytes);
+            }
+            put(out, v, vStart + lastRowStart, rowBytes - 1);
+        }
+        out.put(u.get(uStart + lastRowStart + rowBytes - 2));
+    }
+
+    // U/V分开存储，按行批量读取后交错为VU
+    private static void interleavePlanes(ByteBuffer u, ByteBuffer v, int rowStride, int pixelStride,
+                                         int uvWidth, int uvHeight, ByteBuffer out) {
+        int rowLength = (uvWidth - 1) * pixelStride + 1;
+        byte[] uRow = new byte[rowLength];
+        byte[] vRow = new byte[rowLength];
+        byte[] vuRow = new byte[uvWidth * 2];
+        int uStart = u.position();
+        int vStart = v.position();
+
+        for (int row = 0; row < uvHeight; row++) {
+            u.position(uStart + row * rowStride);
+            u.get(uRow, 0, rowLength);
+            v.position(vStart + row * rowStride);
+            v.get(vRow, 0, rowLength);
+
+            // NV21要求先V后U
+            for (int col = 0, index = 0, outPos = 0; col < uvWidth; col++, index += pixelStride) {
+                vuRow[outPos++] = vRow[index];
+                vuRow[outPos++] = uRow[index];
+            }
+            out.put(vuRow);
+        }
+    }
+
+    // 批量复制src中[start, start + length)的数据
+    private static void put(ByteBuffer out, ByteBuffer src, int start, int length) {
+        src.limit(start + length);
+        src.position(start);
+        out.put(src);
+    }
+}
@@ -0,0 +1,223 @@
+package work.icu007.cameraxscan.processor;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/4/2-17:40
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 检测阶段找到的候选条码区域，用帧坐标下的四边形表示，可以是任意旋转角度
+ * 顶点按顺时针排列且第一条边为长边，从左到右：按顶点顺序映射到矩形的四个角即可把区域摆正，
+ * 一维码摆正后条纹垂直，便于引擎逐行扫描
+ */
+public final class CandidateRegion {
+    // 长宽比超过该值时认为更可能是一维码
+    static final double LINEAR_ASPECT_RATIO = 1.5;
+    // 包围盒交并比超过该值时认为是同一区域，只保留得分高的
+    static final double MAX_OVERLAP = 0.3;
+
+    private final float[] corners;
+    private final double score;
+
+    /**
+     * @param points 四个顶点，x、y交替，任意起点和方向
+     * @param score 排序得分，越高越可能是条码
+     */
+    public CandidateRegion(float[] points, double score) {
+        if (points.length != 8) {
+            throw new IllegalArgumentException("候选区域需要4个顶点: " + points.length / 2);
+        }
+        this.corners = normalize(points);
+        this.score = score;
+    }
+
+    /**
+     * 由最小外接矩形的顶点和轮廓面积创建候选区域，得分为面积乘以轮廓对矩形的填充率，
+     * 大而规整的区域排在前面，细长的噪声和不规则的纹理靠后
+     */
+    public static CandidateRegion fromContour(float[] boxPoints, double contourArea) {
+        CandidateRegion box = new CandidateRegion(boxPoints, 0);
+        double boxArea = box.getLongSide() * box.getShortSide();
+        double fill = boxArea > 0 ? Math.min(1, contourArea / boxArea) : 0;
+        return new CandidateRegion(box.corners, boxArea * fill);
+    }
+
+    /**
+     * 顶点坐标的副本，顺时针排列，x、y交替
+     */
+    public float[] getCorners() {
+        return corners.clone();
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * 第一条边（摆正后的宽度）的长度
+     */
+    public float getLongSide() {
+        return distance(0, 1);
+    }
+
+    /**
+     * 第二条边（摆正后的高度）的长度
+     */
+    public float getShortSide() {
+        return distance(1, 2);
+    }
+
+    public boolean isLikelyLinear() {
+        return getShortSide() > 0 && getLongSide() / getShortSide() > LINEAR_ASPECT_RATIO;
+    }
+
+    public float getCenterX() {
+        return (corners[0] + corners[2] + corners[4] + corners[6]) / 4;
+    }
+
+    public float getCenterY() {
+        return (corners[1] + corners[3] + corners[5] + corners[7]) / 4;
+    }
+
+    /**
+     * 坐标乘以factor，用于把低分辨率层上的检测结果换算到原始帧
+     */
+    public CandidateRegion scale(float factor) {
+        float[] scaled = corners.clone();
+        for (int i = 0; i < scaled.length; i++) {
+            scaled[i] *= factor;
+        }
+        return new CandidateRegion(scaled, score * factor * factor);
+    }
+
+    /**
+     * 沿长边和短边方向各自向外扩展，为条码保留静区
+     *
+     * @param alongLong 长边两端各扩展的像素数
+     * @param alongShort 短边两端各扩展的像素数
+     */
+    public CandidateRegion expand(float alongLong, float alongShort) {
+        float longSide = getLongSide();
+        float shortSide = getShortSide();
+        if (longSide == 0 || shortSide == 0) {
+            return this;
+        }
+        // 长边和短边方向的单位向量
+        float ux = (corners[2] - corners[0]) / longSide;
+        float uy = (corners[3] - corners[1]) / longSide;
+        float vx = (corners[4] - corners[2]) / shortSide;
+        float vy = (corners[5] - corners[3]) / shortSide;
+        // 四个顶点分别沿-u-v、+u-v、+u+v、-u+v方向移动
+        float[] signU = {-1, 1, 1, -1};
+        float[] signV = {-1, -1, 1, 1};
+        float[] expanded = new float[8];
+        for (int i = 0; i < 4; i++) {
+            expanded[i * 2] = corners[i * 2] + signU[i] * alongLong * ux + signV[i] * alongShort * vx;
+            expanded[i * 2 + 1] = corners[i * 2 + 1] + signU[i] * alongLong * uy + signV[i] * alongShort * vy;
+        }
+        return new CandidateRegion(expanded, score);
+    }
+
+    /**
+     * 轴对齐包围盒，依次为left、top、right、bottom
+     */
+    public float[] getBounds() {
+        float[] bounds = {Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int i = 0; i < 8; i += 2) {
+            bounds[0] = Math.min(bounds[0], corners[i]);
+            bounds[1] = Math.min(bounds[1], corners[i + 1]);
+            bounds[2] = Math.max(bounds[2], corners[i]);
+            bounds[3] = Math.max(bounds[3], corners[i + 1]);
+        }
+        return bounds;
+    }
+
+    /**
+     * 包围盒的交并比
+     */
+    double overlap(CandidateRegion other) {
+        float[] a = getBounds();
+        float[] b = other.getBounds();
+        float width = Math.min(a[2], b[2]) - Math.max(a[0], b[0]);
+        float height = Math.min(a[3], b[3]) - Math.max(a[1], b[1]);
+        if (width <= 0 || height <= 0) {
+            return 0;
+        }
+        double intersection = (double) width * height;
+        double union = (double) (a[2] - a[0]) * (a[3] - a[1]) + (double) (b[2] - b[0]) * (b[3] - b[1]) - intersection;
+        return union > 0 ? intersection / union : 0;
+    }
+
+    /**
+     * 按得分从高到低排序，去掉与更高得分区域重叠的区域，最多保留maxCount个
+     */
+    public static List<CandidateRegion> select(List<CandidateRegion> regions, int maxCount) {
+        List<CandidateRegion> sorted = new ArrayList<>(regions);
+        Collections.sort(sorted, (a, b) -> Double.compare(b.score, a.score));
+        List<CandidateRegion> selected = new ArrayList<>(Math.min(maxCount, sorted.size()));
+        for (CandidateRegion region : sorted) {
+            if (selected.size() >= maxCount) {
+                break;
+            }
+            boolean overlapped = false;
+            for (int i = 0; i < selected.size() && !overlapped; i++) {
+                overlapped = selected.get(i).overlap(region) > MAX_OVERLAP;
+            }
+            if (!overlapped) {
+                selected.add(region);
+            }
+        }
+        return selected;
+    }
+
+    private float distance(int from, int to) {
+        float dx = corners[to * 2] - corners[from * 2];
+        float dy = corners[to * 2 + 1] - corners[from * 2 + 1];
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * 调整顶点顺序：顺时针（图像坐标y向下），第一条边为长边且从左指向右
+     */
+    private static float[] normalize(float[] points) {
+        float[] p = points.clone();
+        // 逆时针时反转顺序
+        float cross = (p[2] - p[0]) * (p[5] - p[3]) - (p[3] - p[1]) * (p[4] - p[2]);
+        if (cross < 0) {
+            p = new float[]{p[0], p[1], p[6], p[7], p[4], p[5], p[2], p[3]};
+        }
+        int start = edgeLengthSquared(p, 0) >= edgeLengthSquared(p, 1) ? 0 : 1;
+        // 长边指向左侧时从对边开始，旋转180度
+        int next = (start + 1) % 4;
+        if (p[next * 2] - p[start * 2] < 0) {
+            start += 2;
+        }
+        float[] ordered = new float[8];
+        for (int i = 0; i < 4; i++) {
+            int index = (start + i) % 4;
+            ordered[i * 2] = p[index * 2];
+            ordered[i * 2 + 1] = p[index * 2 + 1];
+        }
+        return ordered;
+    }
+
+    private static float edgeLengthSquared(float[] p, int from) {
+        int to = (from + 1) % 4;
+        float dx = p[to * 2] - p[from * 2];
+        float dy = p[to * 2 + 1] - p[from * 2 + 1];
+        return dx * dx + dy * dy;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "CandidateRegion{%.0fx%.0f@(%.0f,%.0f), score=%.0f, corners=%s}",
+                getLongSide(), getShortSide(), getCenterX(), getCenterY(), score, Arrays.toString(corners));
+    }
+}
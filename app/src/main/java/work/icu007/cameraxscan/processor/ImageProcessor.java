@@ -7,39 +7,45 @@ package work.icu007.cameraxscan.processor;
  */
 
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.ImageFormat;
-import android.graphics.Rect;
-import android.graphics.YuvImage;
-import android.media.Image;
-import android.os.Build;
 import android.util.Log;
 
-import androidx.annotation.OptIn;
-import androidx.annotation.RequiresApi;
-import androidx.camera.core.ExperimentalGetImage;
-import androidx.camera.core.ImageProxy;
-
 import org.opencv.android.OpenCVLoader;
-import org.opencv.android.Utils;
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.MatOfPoint2f;
-import org.opencv.core.Scalar;
+import org.opencv.core.Point;
+import org.opencv.core.RotatedRect;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
-import java.io.ByteArrayOutputStream;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import work.icu007.cameraxscan.decoder.CancellationToken;
+import work.icu007.cameraxscan.frame.FrameBufferPool;
+import work.icu007.cameraxscan.frame.FrameSnapshot;
 
 public class ImageProcessor {
     private static final String TAG = "ImageProcessor";
     private boolean isOpenCVInitialized = false;
+    private final FrameBufferPool bufferPool = FrameBufferPool.getInstance();
+
+    // 面积小于该值（原始帧像素）的轮廓不作为候选区域
+    private static final double MIN_REGION_AREA = 1000;
+    // 裁剪时在区域四周保留的静区，为对应边长的比例，不少于MIN_QUIET_ZONE像素
+    private static final float QUIET_ZONE_RATIO = 0.1f;
+    private static final float MIN_QUIET_ZONE = 8;
+    // 裁剪结果的最小边长
+    private static final int MIN_CROP_SIZE = 16;
+    // 裁剪结果宽高的对齐步长
+    private static final int CROP_SIZE_STEP = 16;
+
+    // 跨帧复用的单通道Mat，分辨率不变时不会重新分配
+    private Mat grayMat;
 
     public ImageProcessor() {
         // 初始化OpenCV
@@ -53,335 +59,175 @@ public class ImageProcessor {
         }
     }
 
-    public Bitmap process(ImageProxy imageProxy) {
-        // 如果OpenCV没有初始化，则跳过处理
+    /**
+     * 检测阶段：在亮度图上找出可能包含条码的区域，按得分从高到低返回
+     * 可以在金字塔的低分辨率层上检测，结果换算回原始帧坐标
+     * 复用内部Mat，调用之间互斥
+     *
+     * @param frame 用于检测的帧数据，处理器只读取不回收
+     * @param scale frame相对原始帧的缩小倍数，原始帧为1
+     * @param maxCount 最多返回的区域数
+     * @return 原始帧坐标下的候选区域，没有找到或处理失败时为空
+     * @throws CancellationException 检测被取消
+     */
+    public synchronized List<CandidateRegion> detect(FrameSnapshot frame, int scale, int maxCount,
+                                                     CancellationToken token) {
+        // 如果OpenCV没有初始化，则跳过检测
         if (!isOpenCVInitialized) {
-            Log.d(TAG, "OpenCV未初始化，跳过图像处理");
-            return null;
+            Log.d(TAG, "OpenCV未初始化，跳过区域检测");
+            return Collections.emptyList();
         }
 
-        Log.d(TAG, "process: OpenCV 处理图像");
-
-        Bitmap bitmap = null;
-        Mat srcMat = null;
-        Mat dstMat = null;
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        Mat wrappedMat = null;
 
         try {
-            // 将ImageProxy转换为Bitmap
-            bitmap = imageToBitmap(imageProxy);
-            if (bitmap == null) {
-                Log.e(TAG, "无法从ImageProxy创建位图");
-                return null;
-            }
-
-            // 将Bitmap转换为Mat
-            srcMat = new Mat();
-            Utils.bitmapToMat(bitmap, srcMat);
-
-            if (srcMat.empty()) {
-                Log.e(TAG, "转换为Mat失败或Mat为空");
-                return bitmap; // 返回原始位图，不做处理
-            }
-
-            // 创建目标Mat，避免修改源Mat
-            dstMat = new Mat();
-
-            // 执行图像增强处理
-            enhanceImage(srcMat, dstMat);
-
-            if (dstMat.empty()) {
-                Log.e(TAG, "增强处理后的Mat为空");
-                return bitmap; // 返回原始位图，不做处理
+            if (grayMat == null) {
+                grayMat = new Mat();
             }
 
-            // 创建新的Bitmap来存储处理结果
-            Bitmap processedBitmap = Bitmap.createBitmap(
-                    bitmap.getWidth(),
-                    bitmap.getHeight(),
-                    Bitmap.Config.ARGB_8888);
-
-            // 将处理后的Mat转回Bitmap
-            Utils.matToBitmap(dstMat, processedBitmap);
-
-            // 回收原始bitmap
-            bitmap.recycle();
-
-            // 返回处理后的bitmap
-            return processedBitmap;
-
-        } catch (Exception e) {
-            Log.e(TAG, "图像处理发生异常: ", e);
-            // 异常情况下返回原始bitmap，如果它还有效的话
-            return bitmap;
-        } finally {
-            // 确保释放所有OpenCV资源，无论成功与否
-            try {
-                if (srcMat != null) {
-                    srcMat.release();
-                }
-                if (dstMat != null ) {
-                    dstMat.release();
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "释放Mat资源时出错", e);
+            // 直接内存中的帧数据直接包装为Mat，不复制像素；堆内数据写入复用的单通道Mat
+            Mat srcMat;
+            if (frame.isDirect()) {
+                wrappedMat = new Mat(height, width, CvType.CV_8UC1, frame.getLuma());
+                srcMat = wrappedMat;
+            } else {
+                grayMat.create(height, width, CvType.CV_8UC1);
+                grayMat.put(0, 0, frame.getLumaArray(), 0, width * height);
+                srcMat = grayMat;
             }
-        }
-    }
 
+            List<CandidateRegion> regions = findRegions(srcMat, scale, token);
+            List<CandidateRegion> selected = CandidateRegion.select(regions, maxCount);
+            Log.d(TAG, "检测到" + regions.size() + "个候选区域, 保留" + selected.size() + "个");
+            return selected;
 
-    @OptIn(markerClass = ExperimentalGetImage.class)
-    private Bitmap imageToBitmap(ImageProxy imageProxy) {
-        Image image = null;
-        try {
-            image = imageProxy.getImage();
-            if (image == null) return null;
-
-            // 直接使用ImageProxy提供的格式转换方法
-            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
-                // Android 6.0及以上可以使用ImageReader转换
-                return imageToBitmapApi23(image);
-            } else {
-                // 下面是改进的YUV处理方式
-                return yuv420ToBitmap(image);
-            }
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
-            Log.e(TAG, "图像转换失败: ", e);
-            return null;
+            Log.e(TAG, "区域检测发生异常: ", e);
+            return Collections.emptyList();
         } finally {
-            if (image != null) {
-                image.close();
+            if (wrappedMat != null) {
+                // 只释放Mat头，像素仍归帧数据所有
+                wrappedMat.release();
             }
         }
     }
 
     /**
-     * 仅从图像提取Y通道数据，创建灰度位图
-     * 这种方法适合用于条码/二维码识别，因为大多数识别算法只需要亮度信息
+     * 解码阶段的输入：把候选区域连同静区从原始帧中裁出并摆正，长边水平
+     * 不使用共享的Mat，多个区域可以在不同线程上同时裁剪
      *
-     * @param image 源图像
-     * @return 灰度位图，仅包含Y通道数据
+     * @param snapshot 原始帧，处理器只读取不回收
+     * @return 灰度NV21的裁剪结果，由调用方release；区域过小或处理失败时返回null
      */
-    private Bitmap extractYChannelAsBitmap(Image image) {
-        if (image == null) {
-            Log.e(TAG, "Image为null，无法处理");
+    public FrameSnapshot extract(FrameSnapshot snapshot, CandidateRegion region) {
+        if (!isOpenCVInitialized) {
             return null;
         }
 
-        try {
-            // 获取图像尺寸
-            int width = image.getWidth();
-            int height = image.getHeight();
-
-            // 获取Y通道平面
-            Image.Plane yPlane = image.getPlanes()[0];
-            ByteBuffer yBuffer = yPlane.getBuffer();
-            int yRowStride = yPlane.getRowStride();
-            int yPixelStride = yPlane.getPixelStride();
-
-            // 创建灰度位图 (ALPHA_8格式仅存储透明度通道，但我们用它来存储灰度值)
-            Bitmap grayBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
-
-            // 如果Y平面是连续的且没有填充，可以一次性处理
-            if (yPixelStride == 1 && yRowStride == width) {
-                // 创建字节数组接收数据
-                byte[] data = new byte[yBuffer.remaining()];
-                yBuffer.get(data);
-
-                // 创建单字节灰度位图
-                grayBitmap.copyPixelsFromBuffer(ByteBuffer.wrap(data));
-            } else {
-                // Y平面有填充，需要逐行复制
-                int[] pixels = new int[width * height];
-
-                // 以一种更高效的方式复制Y通道数据
-                int bufferPosition, pixelIndex = 0;
-                for (int row = 0; row < height; row++) {
-                    bufferPosition = row * yRowStride;
-                    for (int col = 0; col < width; col++) {
-                        // 获取Y值 (0-255)
-                        int y = yBuffer.get(bufferPosition) & 0xFF;
-
-                        // 由于ALPHA_8只有透明度通道，我们将Y值存储为透明度
-                        pixels[pixelIndex++] = (y << 24) | 0xFFFFFF; // ARGB格式
-
-                        // 移动到下一像素
-                        bufferPosition += yPixelStride;
-                    }
-                }
-
-                // 将数组写入位图
-                grayBitmap.setPixels(pixels, 0, width, 0, 0, width, height);
-            }
-
-            return grayBitmap;
-        } catch (Exception e) {
-            Log.e(TAG, "提取Y通道失败", e);
+        CandidateRegion padded = region.expand(quietZone(region.getLongSide()), quietZone(region.getShortSide()));
+        if (padded.getLongSide() < MIN_CROP_SIZE || padded.getShortSide() < MIN_CROP_SIZE) {
             return null;
         }
-    }
-
-
-    // Android 6.0+的方法
-    private Bitmap imageToBitmapApi23(Image image) {
-        ByteBuffer buffer = null;
-        Image.Plane[] planes = image.getPlanes();
-        int width = image.getWidth();
-        int height = image.getHeight();
-
-        // 为RGB图像分配空间
-        int pixelStride = planes[0].getPixelStride();
-        int rowStride = planes[0].getRowStride();
-        int rowPadding = rowStride - pixelStride * width;
-        Bitmap bitmap = Bitmap.createBitmap(width + rowPadding/pixelStride, height, Bitmap.Config.ARGB_8888);
-
-        // 从Y、U、V平面构建NV21数据
-        int offset = 0;
-        int y, u, v;
-        int color;
-
-        for (int i = 0; i < height; ++i) {
-            for (int j = 0; j < width; ++j) {
-                y = planes[0].getBuffer().get(i * rowStride + j * pixelStride) & 0xff;
-
-                // 由于YUV格式的色度下采样，U/V需要计算正确的索引
-                int uvIndex = (i / 2) * (rowStride / 2) + (j / 2) * pixelStride;
-
-                u = planes[1].getBuffer().get(uvIndex) & 0xff;
-                v = planes[2].getBuffer().get(uvIndex) & 0xff;
-
-                // YUV转RGB
-                y = y < 16 ? 16 : y;
-                int y1192 = 1192 * (y - 16);
-                int r = (y1192 + 1634 * (v - 128));
-                int g = (y1192 - 833 * (v - 128) - 400 * (u - 128));
-                int b = (y1192 + 2066 * (u - 128));
-
-                r = r > 262143 ? 262143 : (r < 0 ? 0 : r);
-                g = g > 262143 ? 262143 : (g < 0 ? 0 : g);
-                b = b > 262143 ? 262143 : (b < 0 ? 0 : b);
-
-                color = 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
-                bitmap.setPixel(j, i, color);
-            }
+        // 宽高向上对齐到CROP_SIZE_STEP，同时满足NV21的偶数要求；
+        // 相邻帧中同一区域的尺寸只差几个像素，对齐后落在同一缓冲池规格上，稳态下不再分配
+        int outWidth = alignCropSize(padded.getLongSide());
+        int outHeight = alignCropSize(padded.getShortSide());
+
+        // 只读取区域的包围盒，超出帧的部分在变换时复制边缘像素
+        int width = snapshot.getWidth();
+        int height = snapshot.getHeight();
+        float[] bounds = padded.getBounds();
+        int left = Math.max(0, (int) Math.floor(bounds[0]));
+        int top = Math.max(0, (int) Math.floor(bounds[1]));
+        int right = Math.min(width, (int) Math.ceil(bounds[2]) + 1);
+        int bottom = Math.min(height, (int) Math.ceil(bounds[3]) + 1);
+        if (right - left < 2 || bottom - top < 2) {
+            return null;
         }
 
-        return bitmap;
-    }
+        Mat wrappedMat = null;
+        Mat roiMat = null;
+        MatOfPoint2f srcPoints = null;
+        MatOfPoint2f dstPoints = null;
+        Mat transform = null;
+        Mat warped = null;
+        byte[] output = null;
 
-    // 通用方法
-    private Bitmap yuv420ToBitmap(Image image) {
-        if (image == null) return null;
-
-        int imageWidth = image.getWidth();
-        int imageHeight = image.getHeight();
-        Image.Plane[] planes = image.getPlanes();
-
-        // 使用更保守的内存分配，确保数据空间足够
-        int bufferSize = imageWidth * imageHeight * ImageFormat.getBitsPerPixel(ImageFormat.YUV_420_888) / 8;
-        byte[] data = new byte[bufferSize];
-        int pixelStride = planes[0].getPixelStride();
-        int rowStride = planes[0].getRowStride();
-
-        int offset = 0;
-        for (int i = 0; i < imageHeight; ++i) {
-            for (int j = 0; j < imageWidth; ++j) {
-                byte pixel = planes[0].getBuffer().get(i * rowStride + j * pixelStride);
-                data[offset++] = pixel;
+        try {
+            if (snapshot.isDirect()) {
+                wrappedMat = new Mat(height, width, CvType.CV_8UC1, snapshot.getLuma());
+                roiMat = wrappedMat.submat(top, bottom, left, right);
+            } else {
+                // 堆内数据逐行复制包围盒内的像素
+                int roiWidth = right - left;
+                roiMat = new Mat(bottom - top, roiWidth, CvType.CV_8UC1);
+                byte[] luma = snapshot.getLumaArray();
+                for (int y = top; y < bottom; y++) {
+                    roiMat.put(y - top, 0, luma, y * width + left, roiWidth);
+                }
             }
-        }
 
-        // 色度平面
-        ByteBuffer uBuffer = planes[1].getBuffer();
-        ByteBuffer vBuffer = planes[2].getBuffer();
-
-        // UV平面的行跨度和像素跨度可能不同
-        pixelStride = planes[1].getPixelStride();
-        rowStride = planes[1].getRowStride();
-        int uvWidth = imageWidth / 2;
-        int uvHeight = imageHeight / 2;
-
-        for (int i = 0; i < uvHeight; i++) {
-            for (int j = 0; j < uvWidth; j++) {
-                int uvIndex = i * rowStride + j * pixelStride;
-                data[offset++] = vBuffer.get(uvIndex);  // NV21要求先V后U
-                data[offset++] = uBuffer.get(uvIndex);
+            float[] corners = padded.getCorners();
+            Point[] source = new Point[4];
+            for (int i = 0; i < 4; i++) {
+                source[i] = new Point(corners[i * 2] - left, corners[i * 2 + 1] - top);
             }
-        }
+            srcPoints = new MatOfPoint2f(source);
+            dstPoints = new MatOfPoint2f(new Point(0, 0), new Point(outWidth, 0),
+                    new Point(outWidth, outHeight), new Point(0, outHeight));
+            transform = Imgproc.getPerspectiveTransform(srcPoints, dstPoints);
+            warped = new Mat();
+            Imgproc.warpPerspective(roiMat, warped, transform, new Size(outWidth, outHeight),
+                    Imgproc.INTER_LINEAR, Core.BORDER_REPLICATE);
+
+            // 只写入亮度部分，色度填为中性值，MLKit可以直接读取
+            output = bufferPool.acquire(outWidth, outHeight, FrameBufferPool.FORMAT_NV21);
+            warped.get(0, 0, output);
+
+            // 摆正后不再需要旋转
+            FrameSnapshot cropped = FrameSnapshot.wrapGray(output, outWidth, outHeight, 0, snapshot.getTimestamp());
+            output = null;
+            return cropped;
 
-        try {
-            YuvImage yuvImage = new YuvImage(data, ImageFormat.NV21, imageWidth, imageHeight, null);
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            yuvImage.compressToJpeg(new Rect(0, 0, imageWidth, imageHeight), 90, out);
-            byte[] jpegBytes = out.toByteArray();
-            return BitmapFactory.decodeByteArray(jpegBytes, 0, jpegBytes.length);
         } catch (Exception e) {
-            Log.e(TAG, "YUV转JPEG失败", e);
+            Log.e(TAG, "裁剪候选区域失败: " + region, e);
             return null;
+        } finally {
+            releaseMatIfNotNull(roiMat, wrappedMat, srcPoints, dstPoints, transform, warped);
+            if (output != null) {
+                bufferPool.release(outWidth, outHeight, FrameBufferPool.FORMAT_NV21, output);
+            }
         }
     }
 
+    private static float quietZone(float side) {
+        return Math.max(MIN_QUIET_ZONE, side * QUIET_ZONE_RATIO);
+    }
 
-    /*private void enhanceImage(Mat src, Mat dst) {
-        try {
-            // 灰度转换
-            Mat grayMat = new Mat();
-            Imgproc.cvtColor(src, grayMat, Imgproc.COLOR_BGR2GRAY);
-
-            // 去噪处理
-            Imgproc.GaussianBlur(grayMat, grayMat, new Size(5, 5), 0);
-
-            // 自适应阈值处理，改善不同光照条件
-            Mat binaryMat = new Mat();
-            Imgproc.adaptiveThreshold(grayMat, binaryMat, 255,
-                    Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C,
-                    Imgproc.THRESH_BINARY, 11, 2);
-
-            // 形态学操作
-            Mat kernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(3, 3));
-            Imgproc.morphologyEx(binaryMat, binaryMat, Imgproc.MORPH_CLOSE, kernel);
-
-            // 寻找条码区域（ROI）
-            List<MatOfPoint> contours = new ArrayList<>();
-            Mat hierarchy = new Mat();
-            Imgproc.findContours(binaryMat, contours, hierarchy,
-                    Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
-
-            // 如果找到条码区域，可以进一步处理
-            if (!contours.isEmpty()) {
-                // 这里只是示例，实际上可能需要更复杂的筛选和处理逻辑
-                MatOfPoint2f approxCurve = new MatOfPoint2f();
-
-                for (MatOfPoint contour : contours) {
-                    double contourArea = Imgproc.contourArea(contour);
-                    if (contourArea > 1000) {  // 忽略小区域
-                        MatOfPoint2f contour2f = new MatOfPoint2f(contour.toArray());
-                        Imgproc.approxPolyDP(contour2f, approxCurve,
-                                0.02 * Imgproc.arcLength(contour2f, true), true);
-
-                        // 绘制找到的轮廓
-                        Imgproc.drawContours(src, contours, -1, new Scalar(0, 255, 0), 2);
-                    }
-                }
-            }
-
-            // 将结果复制到输出Mat
-            grayMat.copyTo(dst);
+    private static int alignCropSize(float side) {
+        return ((int) Math.ceil(side) + CROP_SIZE_STEP - 1) / CROP_SIZE_STEP * CROP_SIZE_STEP;
+    }
 
-            // 释放Mat资源
-            grayMat.release();
-            binaryMat.release();
-        } catch (Exception e) {
-            Log.e(TAG, "图像增强失败: ", e);
-        }
-    }*/
+    /**
+     * 释放复用的Mat资源
+     */
+    public synchronized void release() {
+        releaseMatIfNotNull(grayMat);
+        grayMat = null;
+    }
 
     /**
-     * 增强图像中的条码区域，提高条码识别率
-     * @param src 源图像
-     * @param dst 目标图像
+     * 在灰度图中寻找条码区域：条码的条纹或模块在某一方向上梯度很强，闭运算后连成实心块
+     * @param src 单通道灰度源图像，只读
+     * @param scale 源图像相对原始帧的缩小倍数，结构元素和面积阈值随之缩小
+     * @param token 取消标记，每个处理步骤之后检查
+     * @return 原始帧坐标下的所有候选区域，未排序
      */
-    private void enhanceImage(Mat src, Mat dst) {
-        Mat grayMat = null;
+    private List<CandidateRegion> findRegions(Mat src, int scale, CancellationToken token) {
         Mat blurredMat = null;
         Mat gradX = null;
         Mat gradY = null;
@@ -391,17 +237,13 @@ public class ImageProcessor {
         Mat kernel = null;
         Mat hierarchy = null;
         List<MatOfPoint> contours = new ArrayList<>();
+        List<CandidateRegion> regions = new ArrayList<>();
 
         try {
-            // 复制源图像，避免修改原始数据
-            src.copyTo(dst);
-
-            // 1. 预处理 - 转为灰度并降噪
-            grayMat = new Mat();
-            Imgproc.cvtColor(src, grayMat, Imgproc.COLOR_BGR2GRAY);
-
+            // 1. 预处理 - 源图像已是灰度，直接降噪
             blurredMat = new Mat();
-            Imgproc.GaussianBlur(grayMat, blurredMat, new Size(5, 5), 0);
+            Imgproc.GaussianBlur(src, blurredMat, new Size(5, 5), 0);
+            token.throwIfCancelled();
 
             // 2. 边缘增强 - 使用Sobel算子增强条码边缘
             gradX = new Mat();
@@ -416,12 +258,15 @@ public class ImageProcessor {
             // 合并梯度
             Core.subtract(gradX, gradY, gradient);
             Core.convertScaleAbs(gradient, gradient);
+            token.throwIfCancelled();
 
             // 3. 形态学处理 - 连接条码线条
             // 使用矩形结构元素，宽度大于高度有利于连接水平条码的竖线
-            kernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(21, 7));
+            kernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT,
+                    new Size(kernelSize(21, scale), kernelSize(7, scale)));
             dilatedMat = new Mat();
             Imgproc.morphologyEx(gradient, dilatedMat, Imgproc.MORPH_CLOSE, kernel);
+            token.throwIfCancelled();
 
             // 4. 二值化处理
             binaryMat = new Mat();
@@ -431,82 +276,38 @@ public class ImageProcessor {
             Mat smallKernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(3, 3));
             Imgproc.morphologyEx(binaryMat, binaryMat, Imgproc.MORPH_OPEN, smallKernel);
             smallKernel.release();
+            token.throwIfCancelled();
 
-            // 5. 寻找条码区域
-            contours.clear();
+            // 5. 寻找条码区域，binaryMat之后不再使用，直接交给findContours
             hierarchy = new Mat();
-            Imgproc.findContours(binaryMat.clone(), contours, hierarchy,
+            Imgproc.findContours(binaryMat, contours, hierarchy,
                     Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+            token.throwIfCancelled();
 
-            // 6. 处理找到的轮廓
-            if (!contours.isEmpty()) {
-                // 找出最大的轮廓(很可能是条码区域)
-                MatOfPoint largestContour = null;
-                double maxArea = 0;
-
-                for (MatOfPoint contour : contours) {
-                    double contourArea = Imgproc.contourArea(contour);
-                    if (contourArea > maxArea && contourArea > 1000) {
-                        maxArea = contourArea;
-                        largestContour = contour;
-                    }
+            // 6. 每个足够大的轮廓取最小外接矩形，保留旋转角度
+            double minArea = MIN_REGION_AREA / ((double) scale * scale);
+            Point[] boxPoints = new Point[4];
+            for (MatOfPoint contour : contours) {
+                double contourArea = Imgproc.contourArea(contour);
+                if (contourArea <= minArea) {
+                    continue;
                 }
-
-                if (largestContour != null) {
-                    // 7. 提取并处理条码区域
-                    org.opencv.core.Rect boundRect = Imgproc.boundingRect(largestContour);
-
-                    // 扩大边界确保完整包含条码
-                    int padding = 20;
-                    boundRect.x = Math.max(0, boundRect.x - padding);
-                    boundRect.y = Math.max(0, boundRect.y - padding);
-                    boundRect.width = Math.min(src.width() - boundRect.x, boundRect.width + 2*padding);
-                    boundRect.height = Math.min(src.height() - boundRect.y, boundRect.height + 2*padding);
-
-                    // 提取条码区域
-                    Mat barcodeRegion = new Mat(src, boundRect);
-                    Mat enhancedBarcode = new Mat();
-
-                    // 8. 条码特定增强
-                    Imgproc.cvtColor(barcodeRegion, enhancedBarcode, Imgproc.COLOR_BGR2GRAY);
-
-                    // 根据条码区域的宽高比判断可能是一维码还是二维码
-                    boolean isLikelyBarcode = (double)boundRect.width / boundRect.height > 1.5;
-
-                    if (isLikelyBarcode) {
-                        // 一维条码增强 - 增强垂直线条
-                        Mat barcodeKernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(1, 5));
-                        Imgproc.morphologyEx(enhancedBarcode, enhancedBarcode, Imgproc.MORPH_OPEN, barcodeKernel);
-                        barcodeKernel.release();
-                    } else {
-                        // 二维条码增强 - 保持精细结构
-                        Imgproc.GaussianBlur(enhancedBarcode, enhancedBarcode, new Size(3, 3), 0);
-                    }
-
-                    // 自适应阈值处理提高对比度
-                    Imgproc.adaptiveThreshold(enhancedBarcode, enhancedBarcode, 255,
-                            Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C,
-                            Imgproc.THRESH_BINARY, 15, 5);
-
-                    // 9. 将增强后的条码区域放回目标图像
-                    enhancedBarcode.copyTo(new Mat(dst, boundRect));
-
-                    // 可选：在目标图像上绘制找到的条码区域边界
-                    Imgproc.rectangle(dst, boundRect, new Scalar(0, 255, 0), 2);
-
-                    enhancedBarcode.release();
-                    barcodeRegion.release();
+                MatOfPoint2f contour2f = new MatOfPoint2f(contour.toArray());
+                RotatedRect box = Imgproc.minAreaRect(contour2f);
+                contour2f.release();
+                box.points(boxPoints);
+
+                float[] points = new float[8];
+                for (int i = 0; i < 4; i++) {
+                    points[i * 2] = (float) boxPoints[i].x;
+                    points[i * 2 + 1] = (float) boxPoints[i].y;
                 }
+                regions.add(CandidateRegion.fromContour(points, contourArea).scale(scale));
             }
-        } catch (Exception e) {
-            Log.e(TAG, "图像增强失败: ", e);
-            // 确保在异常情况下也能返回有效结果
-            if (dst.empty() && !src.empty()) {
-                src.copyTo(dst);
-            }
+            return regions;
         } finally {
             // 释放所有Mat资源
-            releaseMatIfNotNull(grayMat, blurredMat, gradX, gradY, gradient,
+            releaseMatIfNotNull(blurredMat, gradX, gradY, gradient,
                     binaryMat, dilatedMat, kernel, hierarchy);
 
             // 清理轮廓列表
@@ -517,6 +318,11 @@ public class ImageProcessor {
         }
     }
 
+    // 按缩小倍数缩小结构元素，保持奇数且不小于3
+    private static int kernelSize(int fullSize, int scale) {
+        return Math.max(3, (fullSize / scale) | 1);
+    }
+
     /**
      * 释放多个Mat资源
      */
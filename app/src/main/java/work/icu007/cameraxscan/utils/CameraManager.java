@@ -11,6 +11,7 @@ import android.hardware.camera2.CameraMetadata;
 import android.hardware.camera2.CaptureRequest;
 import android.util.Log;
 import android.util.Size;
+import android.view.View;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.OptIn;
@@ -24,6 +25,8 @@ import androidx.camera.core.ImageProxy;
 import androidx.camera.core.MeteringPoint;
 import androidx.camera.core.MeteringPointFactory;
 import androidx.camera.core.Preview;
+import androidx.camera.core.UseCaseGroup;
+import androidx.camera.core.ViewPort;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
 import androidx.core.content.ContextCompat;
@@ -36,10 +39,23 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import work.icu007.cameraxscan.decoder.DecoderManager;
+import work.icu007.cameraxscan.frame.FrameArena;
+import work.icu007.cameraxscan.frame.ScanWindow;
 import work.icu007.cameraxscan.processor.ImageProcessor;
 
 public class CameraManager {
     private static final String TAG = "CameraManager";
+    // 分析图像的目标分辨率，帧槽位也按此分配
+    private static final int ANALYSIS_WIDTH = 1280;
+    private static final int ANALYSIS_HEIGHT = 720;
+    // 同时解码的帧数和等待队列容量
+    private static final int MAX_IN_FLIGHT_FRAMES = 2;
+    private static final int PENDING_FRAMES = 1;
+    // 每帧占用一个槽位，另留一个给正在从相机复制的帧
+    private static final int FRAME_ARENA_SLOTS = MAX_IN_FLIGHT_FRAMES + PENDING_FRAMES + 1;
+    // 保存调度统计的SharedPreferences
+    private static final String PREFS_NAME = "decoder_scheduler";
+    private static final String KEY_SCHEDULER_STATS = "stats";
 
     private final Context context;
     private final PreviewView previewView;
@@ -52,6 +68,13 @@ public class CameraManager {
     private final ImageProcessor imageProcessor;
 
     private ProcessCameraProvider cameraProvider;
+    // 等待预览视图布局后绑定的监听器，只在UI线程访问
+    private View.OnLayoutChangeListener pendingBind;
+    // 本实例是否持有FrameArena的引用，只在UI线程访问
+    private boolean arenaAllocated = false;
+
+    // 扫描窗口，分析线程读取，UI线程设置
+    private volatile ScanWindow scanWindow = ScanWindow.FULL;
 
     public CameraManager(Context context, PreviewView previewView, ScanResultListener resultListener) {
         this.context = context;
@@ -60,24 +83,69 @@ public class CameraManager {
         this.cameraExecutor = Executors.newSingleThreadExecutor();
         this.imageProcessor = new ImageProcessor();
         this.decoderManager = new DecoderManager(resultListener);
+        decoderManager.getPipeline().setLimits(MAX_IN_FLIGHT_FRAMES, PENDING_FRAMES);
+
+        // 恢复上次会话学习到的引擎统计
+        decoderManager.getScheduler().loadJson(context
+                .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .getString(KEY_SCHEDULER_STATS, null));
     }
 
     public void startCamera() {
+        // 一次性分配帧数据的直接内存槽位，之后每帧都在槽位中复制和解码；重复启动不重复计数
+        if (!arenaAllocated) {
+            FrameArena.getInstance().allocate(ANALYSIS_WIDTH, ANALYSIS_HEIGHT, FRAME_ARENA_SLOTS);
+            arenaAllocated = true;
+        }
+
         ListenableFuture<ProcessCameraProvider> cameraProviderFuture =
                 ProcessCameraProvider.getInstance(context);
 
         cameraProviderFuture.addListener(() -> {
             try {
                 cameraProvider = cameraProviderFuture.get();
-                bindCameraUseCases();
+                bindWhenLaidOut();
             } catch (ExecutionException | InterruptedException e) {
                 Log.e(TAG, "相机初始化失败: ", e);
             }
         }, ContextCompat.getMainExecutor(context));
     }
 
+    /**
+     * 预览视图布局之后才有ViewPort，从onCreate启动时往往还未布局，此时等到布局完成再绑定
+     * 没有ViewPort时分析图像不会按预览的FILL_CENTER裁剪，扫描窗口会映射到整帧而与屏幕上的取景框对不上
+     */
+    private void bindWhenLaidOut() {
+        ViewPort viewPort = previewView.getViewPort();
+        if (viewPort != null) {
+            bindCameraUseCases(viewPort);
+            return;
+        }
+        if (pendingBind != null) {
+            return;
+        }
+        Log.d(TAG, "预览视图尚未布局，布局完成后绑定相机");
+        pendingBind = new View.OnLayoutChangeListener() {
+            @Override
+            public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                       int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                ViewPort laidOut = previewView.getViewPort();
+                if (laidOut == null) {
+                    return;
+                }
+                previewView.removeOnLayoutChangeListener(this);
+                pendingBind = null;
+                bindCameraUseCases(laidOut);
+            }
+        };
+        previewView.addOnLayoutChangeListener(pendingBind);
+    }
+
+    /**
+     * @param viewPort 预览的可见区域，分析图像的裁剪区域与之一致
+     */
     @OptIn(markerClass = ExperimentalCamera2Interop.class)
-    private void bindCameraUseCases() {
+    private void bindCameraUseCases(@NonNull ViewPort viewPort) {
         if (cameraProvider == null) {
             throw new IllegalStateException("相机初始化失败");
         }
@@ -99,7 +167,7 @@ public class CameraManager {
 
         // 配置图像分析
         ImageAnalysis.Builder imageAnalysisBuilder = new ImageAnalysis.Builder()
-                .setTargetResolution(new Size(1280, 720))
+                .setTargetResolution(new Size(ANALYSIS_WIDTH, ANALYSIS_HEIGHT))
                 .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST);
 
         // 同样为图像分析设置自动对焦
@@ -120,12 +188,16 @@ public class CameraManager {
         try {
             cameraProvider.unbindAll();
 
-            // 绑定用例
+            // 绑定用例，分析图像的裁剪区域即为预览可见区域
+            UseCaseGroup useCaseGroup = new UseCaseGroup.Builder()
+                    .setViewPort(viewPort)
+                    .addUseCase(preview)
+                    .addUseCase(imageAnalysis)
+                    .build();
             camera = cameraProvider.bindToLifecycle(
                     (LifecycleOwner) context,
                     cameraSelector,
-                    preview,
-                    imageAnalysis);
+                    useCaseGroup);
 
             Log.d(TAG, "相机已初始化，已设置自动对焦");
 
@@ -135,17 +207,61 @@ public class CameraManager {
     }
 
     private void analyzeImage(ImageProxy imageProxy) {
-        // 使用OpenCV处理图像
-        if (imageProxy != null) {
-            //imageProcessor.process(imageProxy);
+        // 只处理扫描窗口内的像素，后续提取、增强和解码都基于裁剪区域
+        ScanWindow window = scanWindow;
+        if (imageProxy != null && !window.isFull()) {
+            imageProxy.setCropRect(window.mapToImage(imageProxy.getCropRect(),
+                    imageProxy.getImageInfo().getRotationDegrees()));
         }
         // 将处理后的图像传给解码管理器进行并行解码
         decoderManager.decodeAsync(imageProxy);
     }
 
+    /**
+     * 设置扫描窗口，坐标以预览视图为参照
+     * 传入{@link ScanWindow#FULL}则处理整帧图像
+     */
+    public void setScanWindow(@NonNull ScanWindow scanWindow) {
+        this.scanWindow = scanWindow;
+        Log.d(TAG, "扫描窗口: " + scanWindow);
+    }
+
+    /**
+     * 切换连续扫描模式，连续扫描时相机保持绑定，每个新条码都会回调监听器
+     */
+    public void setContinuous(boolean continuous) {
+        decoderManager.setContinuous(continuous);
+        Log.d(TAG, "连续扫描: " + continuous);
+    }
+
+    /**
+     * 切换多码模式，一帧中的所有条码合并为一个结果上报
+     */
+    public void setMultiCode(boolean multiCode) {
+        decoderManager.setMultiCode(multiCode);
+        Log.d(TAG, "多码模式: " + multiCode);
+    }
+
     public void shutdown() {
+        // 尚未布局就退出时不再绑定
+        if (pendingBind != null) {
+            previewView.removeOnLayoutChangeListener(pendingBind);
+            pendingBind = null;
+        }
         cameraExecutor.shutdown();
+        String stats = decoderManager.getScheduler().toJson();
+        if (stats != null) {
+            context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                    .edit()
+                    .putString(KEY_SCHEDULER_STATS, stats)
+                    .apply();
+        }
         decoderManager.release();
+        // 只释放本实例的引用，其他页面仍在使用时槽位保留
+        if (arenaAllocated) {
+            FrameArena.getInstance().free();
+            arenaAllocated = false;
+        }
     }
 
     public void toggleFlash() {
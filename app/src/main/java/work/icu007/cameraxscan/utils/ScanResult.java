@@ -6,14 +6,43 @@ package work.icu007.cameraxscan.utils;
  * E-mail: charlie.liao@icu007.work
  */
 
+import com.google.zxing.BarcodeFormat;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import work.icu007.cameraxscan.decoder.DecodedCode;
+
 /**
  * 封装扫描结果的类
  */
 public class ScanResult {
+    // 各阶段耗时的名称，按帧经过的先后排列
+    // 相机线程上的帧质量检查和帧数据拷贝
+    public static final String STAGE_CAPTURE = "capture";
+    // 帧在流水线队列中的等待
+    public static final String STAGE_QUEUE = "queue";
+    // 构建亮度金字塔
+    public static final String STAGE_PYRAMID = "pyramid";
+    // 各引擎按阶段解码原始帧的金字塔，到全部失败或结果被接受为止
+    public static final String STAGE_RAW = "raw";
+    // 在低分辨率层上检测候选区域
+    public static final String STAGE_DETECT = "detect";
+    // 生成变体和裁剪候选区域，多个线程并行时为各线程耗时之和
+    public static final String STAGE_VARIANTS = "variants";
+    public static final String STAGE_REGIONS = "regions";
+    // 从开始解码到结果被接受，包含以上除capture和queue外的各阶段
+    public static final String STAGE_DECODE = "decode";
+
     private final boolean success;
     private final String text;
     private final String decoderType;
     private final long decodeTime; // 新增解码时间字段
+    private final BarcodeFormat format;
+    private final List<DecodedCode> codes;
+    private final Map<String, Long> stageTimings;
     /**
      * 创建一个扫描结果对象
      *
@@ -33,23 +62,100 @@ public class ScanResult {
      * @param decodeTime 解码耗时（毫秒）
      */
     public ScanResult(boolean success, String text, String decoderType, long decodeTime) {
+        this(success, text, decoderType, decodeTime, null);
+    }
+    /**
+     * 创建一个带条码格式的扫描结果对象
+     *
+     * @param format 条码格式，引擎无法确定时为null
+     */
+    public ScanResult(boolean success, String text, String decoderType, long decodeTime, BarcodeFormat format) {
+        this(success, text, decoderType, decodeTime, format, success ?
+                Collections.singletonList(new DecodedCode(text, format, null, decoderType)) :
+                Collections.<DecodedCode>emptyList());
+    }
+    /**
+     * 创建一个包含多个条码的扫描结果对象
+     *
+     * @param codes 帧中的所有条码及其位置，text和format应取自第一个
+     */
+    public ScanResult(boolean success, String text, String decoderType, long decodeTime, BarcodeFormat format,
+                      List<DecodedCode> codes) {
+        this(success, text, decoderType, decodeTime, format, codes, Collections.<String, Long>emptyMap());
+    }
+
+    private ScanResult(boolean success, String text, String decoderType, long decodeTime, BarcodeFormat format,
+                       List<DecodedCode> codes, Map<String, Long> stageTimings) {
         this.success = success;
         this.text = text;
         this.decoderType = decoderType;
         this.decodeTime = decodeTime;
+        this.format = format;
+        this.codes = Collections.unmodifiableList(codes);
+        this.stageTimings = stageTimings;
+    }
+
+    /**
+     * 返回附带各阶段耗时的副本
+     *
+     * @param stageTimings 阶段名称到耗时（毫秒）的映射，保持传入的顺序
+     */
+    public ScanResult withStageTimings(Map<String, Long> stageTimings) {
+        return new ScanResult(success, text, decoderType, decodeTime, format, codes,
+                Collections.unmodifiableMap(new LinkedHashMap<>(stageTimings)));
     }
 
 
     public long getDecodeTime() {
         return decodeTime;
     }
+
+    /**
+     * 获取条码格式
+     *
+     * @return 条码格式，未知时为null
+     */
+    public BarcodeFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * 获取帧中识别到的所有条码
+     *
+     * @return 多码模式下为所有条码及其位置，否则最多一个且没有位置
+     */
+    public List<DecodedCode> getCodes() {
+        return codes;
+    }
+
+    /**
+     * 获取各阶段耗时
+     *
+     * @return 阶段名称（如STAGE_QUEUE、STAGE_DECODE）到耗时（毫秒）的映射，未记录时为空
+     */
+    public Map<String, Long> getStageTimings() {
+        return stageTimings;
+    }
+
+    /**
+     * 获取单个阶段的耗时
+     *
+     * @return 耗时（毫秒），未记录该阶段时为-1
+     */
+    public long getStageTime(String stage) {
+        Long time = stageTimings.get(stage);
+        return time != null ? time : -1;
+    }
     @Override
     public String toString() {
         return "ScanResult{" +
                 "success=" + success +
                 ", text='" + text + '\'' +
                 ", decoderType='" + decoderType + '\'' +
+                ", format=" + format +
+                ", codes=" + codes.size() +
                 ", decodeTime=" + decodeTime + "ms" +
+                (stageTimings.isEmpty() ? "" : ", stages=" + stageTimings) +
                 '}';
     }
     /**
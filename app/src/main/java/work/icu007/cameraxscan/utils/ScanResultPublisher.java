@@ -0,0 +1,297 @@
+package work.icu007.cameraxscan.utils;
+
+/*
+ * Author: Charlie Liao
+ * Time: 2025/4/2-15:30
+ * E-mail: charlie.liao@icu007.work
+ */
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按需推送扫描结果的发布者，作为ScanResultListener交给解码管理器
+ * 每个订阅者有自己的执行器、缓冲区和需求计数：只有request(n)之后才会收到结果，
+ * 消费得慢的订阅者按各自的溢出策略丢弃或合并结果，不会拖慢解码，也不影响其他订阅者
+ * 同一订阅者的回调不会并发执行，onSubscribe总是第一个回调
+ * 接口形式参照Reactive Streams，minSdk 24没有java.util.concurrent.Flow
+ * 不依赖Android接口，订阅者的异常通过ErrorHandler报告
+ */
+public class ScanResultPublisher implements ScanResultListener {
+
+    public interface Subscriber {
+        /**
+         * 订阅建立，在订阅者的执行器上最先回调，通常在这里request
+         */
+        void onSubscribe(Subscription subscription);
+
+        void onNext(ScanResult result);
+
+        /**
+         * 发布者已关闭且缓冲区中的结果都已送达
+         */
+        void onComplete();
+    }
+
+    public interface Subscription {
+        /**
+         * 增加n个结果的需求，Long.MAX_VALUE表示不限
+         */
+        void request(long n);
+
+        /**
+         * 取消订阅，之后不再回调，缓冲的结果被丢弃
+         */
+        void cancel();
+    }
+
+    /**
+     * 订阅被异常取消时的回调，在出错的线程上调用
+     */
+    public interface ErrorHandler {
+        void onSubscriberError(String message, Throwable error);
+    }
+
+    /**
+     * 订阅者的需求不足时，新结果的处理方式
+     */
+    public enum Overflow {
+        // 缓冲区已满时丢弃最旧的结果
+        DROP_OLDEST,
+        // 缓冲区已满时丢弃新结果
+        DROP_LATEST,
+        // 只保留最新的一个结果，适合只显示当前状态的界面
+        CONFLATE
+    }
+
+    private final List<SubscriptionImpl> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean completed = false;
+    private volatile ErrorHandler errorHandler;
+
+    /**
+     * 设置订阅异常的回调，未设置时异常只导致订阅被取消
+     */
+    public void setErrorHandler(ErrorHandler errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    private void reportError(String message, Throwable error) {
+        ErrorHandler handler = errorHandler;
+        if (handler != null) {
+            try {
+                handler.onSubscriberError(message, error);
+            } catch (RuntimeException ignored) {
+                // 回调本身的异常不能影响发布
+            }
+        }
+    }
+
+    /**
+     * 订阅结果
+     *
+     * @param executor 回调所在的执行器，界面订阅者可以传主线程执行器
+     * @param overflow 缓冲区溢出策略
+     * @param bufferSize 缓冲区容量，CONFLATE时忽略
+     */
+    public Subscription subscribe(Subscriber subscriber, Executor executor, Overflow overflow, int bufferSize) {
+        if (overflow != Overflow.CONFLATE && bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize必须大于0: " + bufferSize);
+        }
+        SubscriptionImpl subscription = new SubscriptionImpl(subscriber, executor, overflow,
+                overflow == Overflow.CONFLATE ? 1 : bufferSize);
+        subscriptions.add(subscription);
+        if (completed) {
+            subscription.complete();
+        }
+        subscription.schedule();
+        return subscription;
+    }
+
+    /**
+     * 把结果推送给所有订阅者，在解码线程上调用，不会阻塞
+     */
+    @Override
+    public void onScanResult(ScanResult result) {
+        if (completed) {
+            return;
+        }
+        for (SubscriptionImpl subscription : subscriptions) {
+            subscription.offer(result);
+        }
+    }
+
+    /**
+     * 关闭发布者，各订阅者收完缓冲区中的结果后收到onComplete
+     */
+    public void complete() {
+        completed = true;
+        for (SubscriptionImpl subscription : subscriptions) {
+            subscription.complete();
+            subscription.schedule();
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    @Override
+    public String toString() {
+        return "ScanResultPublisher{subscriptions=" + subscriptions + ", completed=" + completed + '}';
+    }
+
+    private final class SubscriptionImpl implements Subscription {
+        private final Subscriber subscriber;
+        private final Executor executor;
+        private final Overflow overflow;
+        private final int capacity;
+        // 队列和统计在锁内访问
+        private final ArrayDeque<ScanResult> queue = new ArrayDeque<>();
+        private long droppedCount = 0;
+        private long deliveredCount = 0;
+
+        private final AtomicLong requested = new AtomicLong();
+        // 排队或正在执行的投递次数，保证同一订阅者的回调串行
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled = false;
+        private volatile boolean done = false;
+        // 只在投递循环中访问
+        private boolean subscribed = false;
+        private boolean completeSignaled = false;
+
+        SubscriptionImpl(Subscriber subscriber, Executor executor, Overflow overflow, int capacity) {
+            this.subscriber = subscriber;
+            this.executor = executor;
+            this.overflow = overflow;
+            this.capacity = capacity;
+        }
+
+        void offer(ScanResult result) {
+            if (cancelled) {
+                return;
+            }
+            synchronized (this) {
+                if (queue.size() >= capacity) {
+                    droppedCount++;
+                    if (overflow == Overflow.DROP_LATEST) {
+                        return;
+                    }
+                    queue.pollFirst();
+                }
+                queue.addLast(result);
+            }
+            schedule();
+        }
+
+        void complete() {
+            done = true;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                reportError("无效的请求数量: " + n + ", 取消订阅", new IllegalArgumentException("n=" + n));
+                return;
+            }
+            // 累加到Long.MAX_VALUE为止
+            long current;
+            long next;
+            do {
+                current = requested.get();
+                next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            } while (!requested.compareAndSet(current, next));
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                subscriptions.remove(this);
+                synchronized (this) {
+                    queue.clear();
+                }
+            }
+        }
+
+        void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RuntimeException e) {
+                    cancel();
+                    reportError("订阅者的执行器不可用，取消订阅", e);
+                }
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            while (true) {
+                if (!subscribed && !cancelled) {
+                    subscribed = true;
+                    if (!signal(() -> subscriber.onSubscribe(this))) {
+                        return;
+                    }
+                }
+                while (!cancelled && requested.get() > 0) {
+                    ScanResult next;
+                    synchronized (this) {
+                        next = queue.pollFirst();
+                        if (next != null) {
+                            deliveredCount++;
+                        }
+                    }
+                    if (next == null) {
+                        break;
+                    }
+                    if (requested.get() != Long.MAX_VALUE) {
+                        requested.decrementAndGet();
+                    }
+                    if (!signal(() -> subscriber.onNext(next))) {
+                        return;
+                    }
+                }
+                if (done && !cancelled && !completeSignaled && isQueueEmpty()) {
+                    completeSignaled = true;
+                    signal(subscriber::onComplete);
+                    cancel();
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        // 订阅者抛出异常时取消订阅，不影响发布者和其他订阅者
+        private boolean signal(Runnable callback) {
+            try {
+                callback.run();
+                return true;
+            } catch (RuntimeException e) {
+                cancel();
+                wip.set(0);
+                reportError("订阅者处理结果失败，取消订阅", e);
+                return false;
+            }
+        }
+
+        private synchronized boolean isQueueEmpty() {
+            return queue.isEmpty();
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "Subscription{" + overflow + ", buffered=" + queue.size() + "/" + capacity
+                    + ", requested=" + requested.get() + ", delivered=" + deliveredCount
+                    + ", dropped=" + droppedCount + (cancelled ? ", cancelled" : "") + '}';
+        }
+    }
+}
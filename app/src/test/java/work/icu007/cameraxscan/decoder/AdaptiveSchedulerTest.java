@@ -0,0 +1,100 @@
+package work.icu007.cameraxscan.decoder;
+
+import com.google.zxing.BarcodeFormat;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import work.icu007.cameraxscan.frame.FrameSnapshot;
+
+import static org.junit.Assert.*;
+
+/**
+ * AdaptiveScheduler按场景格式调整引擎顺序的测试
+ */
+public class AdaptiveSchedulerTest {
+
+    private static class FakeDecoder implements BarcodeDecoder {
+        private final String name;
+
+        FakeDecoder(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Set<BarcodeFormat> getSupportedFormats() {
+            return EnumSet.of(BarcodeFormat.QR_CODE, BarcodeFormat.CODE_128);
+        }
+
+        @Override
+        public InputType getPreferredInput() {
+            return InputType.LUMA;
+        }
+
+        @Override
+        public boolean isThreadSafe() {
+            return true;
+        }
+
+        @Override
+        public DecodeResult decode(FrameSnapshot frame) {
+            return DecodeResult.notFound(name);
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    private final BarcodeDecoder linear = new FakeDecoder("linear");
+    private final BarcodeDecoder matrix = new FakeDecoder("matrix");
+    private final List<BarcodeDecoder> decoders = Arrays.asList(linear, matrix);
+
+    // 两个引擎的成功率和耗时相同，只是擅长的格式不同
+    private AdaptiveScheduler warmedUp() {
+        AdaptiveScheduler scheduler = new AdaptiveScheduler();
+        for (int i = 0; i < 10; i++) {
+            scheduler.recordEngine("linear", true, 10, BarcodeFormat.CODE_128);
+            scheduler.recordEngine("matrix", true, 10, BarcodeFormat.QR_CODE);
+        }
+        return scheduler;
+    }
+
+    @Test
+    public void enginesMatchingSceneFormat_runFirst() {
+        AdaptiveScheduler scheduler = warmedUp();
+        for (int i = 0; i < 20; i++) {
+            scheduler.recordEngine("matrix", true, 10, BarcodeFormat.QR_CODE);
+        }
+        assertEquals(1.0, scheduler.getFormatShare("matrix", BarcodeFormat.QR_CODE), 0.001);
+        assertEquals(matrix, scheduler.plan(decoders).getStages().get(0).get(0));
+
+        // 场景换成一维码后顺序随之调整
+        for (int i = 0; i < 40; i++) {
+            scheduler.recordEngine("linear", true, 10, BarcodeFormat.CODE_128);
+        }
+        assertEquals(linear, scheduler.plan(decoders).getStages().get(0).get(0));
+    }
+
+    @Test
+    public void formatWeight_doesNotOverrideMuchBetterEfficiency() {
+        AdaptiveScheduler scheduler = warmedUp();
+        // 一维码引擎快得多，即使场景全是二维码也仍排在前面
+        for (int i = 0; i < 40; i++) {
+            scheduler.recordEngine("linear", true, 1, BarcodeFormat.CODE_128);
+        }
+        for (int i = 0; i < 40; i++) {
+            scheduler.recordEngine("matrix", true, 10, BarcodeFormat.QR_CODE);
+        }
+        assertEquals(linear, scheduler.plan(decoders).getStages().get(0).get(0));
+    }
+}
@@ -0,0 +1,77 @@
+package work.icu007.cameraxscan.decoder;
+
+import com.google.zxing.BarcodeFormat;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * ConsensusBuffer的多帧投票和校验位测试
+ */
+public class ConsensusBufferTest {
+
+    @Test
+    public void qrCode_isAcceptedImmediately() {
+        ConsensusBuffer buffer = new ConsensusBuffer(5, 3);
+
+        assertTrue(buffer.offer(0, BarcodeFormat.QR_CODE, "hello"));
+        assertTrue(buffer.offer(1, null, "unknown"));
+    }
+
+    @Test
+    public void withoutChecksum_needsRequiredVotesFromDistinctFrames() {
+        ConsensusBuffer buffer = new ConsensusBuffer(5, 3);
+
+        assertFalse(buffer.offer(0, BarcodeFormat.CODE_39, "ABC"));
+        // 同一帧的重复读数不计票
+        assertFalse(buffer.offer(0, BarcodeFormat.CODE_39, "ABC"));
+        assertFalse(buffer.offer(1, BarcodeFormat.CODE_39, "ABD"));
+        assertFalse(buffer.offer(2, BarcodeFormat.CODE_39, "ABC"));
+        assertTrue(buffer.offer(3, BarcodeFormat.CODE_39, "ABC"));
+    }
+
+    @Test
+    public void validChecksum_needsOneCorroboration() {
+        ConsensusBuffer buffer = new ConsensusBuffer(5, 3);
+
+        assertFalse(buffer.offer(0, BarcodeFormat.EAN_13, "4006381333931"));
+        assertTrue(buffer.offer(1, BarcodeFormat.EAN_13, "4006381333931"));
+    }
+
+    @Test
+    public void invalidChecksum_needsRequiredVotes() {
+        ConsensusBuffer buffer = new ConsensusBuffer(5, 3);
+
+        assertFalse(buffer.offer(0, BarcodeFormat.EAN_13, "4006381333932"));
+        assertFalse(buffer.offer(1, BarcodeFormat.EAN_13, "4006381333932"));
+        assertTrue(buffer.offer(2, BarcodeFormat.EAN_13, "4006381333932"));
+    }
+
+    @Test
+    public void votesOutsideWindow_expire() {
+        ConsensusBuffer buffer = new ConsensusBuffer(3, 2);
+
+        assertFalse(buffer.offer(0, BarcodeFormat.CODE_39, "ABC"));
+        assertFalse(buffer.offer(3, BarcodeFormat.CODE_39, "ABC"));
+        assertTrue(buffer.offer(4, BarcodeFormat.CODE_39, "ABC"));
+    }
+
+    @Test
+    public void singleVote_disablesConsensus() {
+        ConsensusBuffer buffer = new ConsensusBuffer(1, 1);
+
+        assertFalse(buffer.isEnabled());
+        assertTrue(buffer.offer(0, BarcodeFormat.CODE_39, "ABC"));
+    }
+
+    @Test
+    public void checksum_gtinAndUpcE() {
+        assertTrue(ConsensusBuffer.checkMod10("96385074"));
+        assertTrue(ConsensusBuffer.checkMod10("036000291452"));
+        assertFalse(ConsensusBuffer.checkMod10("036000291453"));
+        assertEquals("042100005264", ConsensusBuffer.expandUpcE("04252614"));
+        assertTrue(ConsensusBuffer.hasValidChecksum(BarcodeFormat.UPC_E, "04252614"));
+        assertFalse(ConsensusBuffer.hasValidChecksum(BarcodeFormat.CODE_39, "ABC"));
+    }
+}
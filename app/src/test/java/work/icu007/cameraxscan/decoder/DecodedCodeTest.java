@@ -0,0 +1,64 @@
+package work.icu007.cameraxscan.decoder;
+
+import com.google.zxing.BarcodeFormat;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * DecodedCode按位置和内容合并多个引擎结果的测试
+ */
+public class DecodedCodeTest {
+
+    private static float[] square(float left, float top, float size) {
+        return new float[]{left, top, left + size, top, left + size, top + size, left, top + size};
+    }
+
+    @Test
+    public void sameTextAtSamePosition_isMergedAcrossEngines() {
+        DecodedCode zxing = new DecodedCode("A", BarcodeFormat.QR_CODE,
+                new float[]{105, 105, 195, 105, 105, 195}, "ZXing");
+        DecodedCode mlkit = new DecodedCode("A", BarcodeFormat.QR_CODE, square(100, 100, 100), "MLKit");
+
+        List<DecodedCode> merged = DecodedCode.merge(Arrays.asList(zxing, mlkit));
+
+        assertEquals(1, merged.size());
+        // 保留顶点更多的位置
+        assertEquals(4, merged.get(0).getCornerCount());
+        assertEquals(Arrays.asList("ZXing", "MLKit"), merged.get(0).getSources());
+    }
+
+    @Test
+    public void sameTextAtDifferentPositions_staysSeparate() {
+        DecodedCode left = new DecodedCode("A", BarcodeFormat.CODE_128, square(0, 0, 50), "ZXing");
+        DecodedCode right = new DecodedCode("A", BarcodeFormat.CODE_128, square(400, 0, 50), "ZXing");
+
+        assertEquals(2, DecodedCode.merge(Arrays.asList(left, right)).size());
+    }
+
+    @Test
+    public void differentTextOrFormat_staysSeparate() {
+        DecodedCode a = new DecodedCode("A", BarcodeFormat.CODE_128, square(0, 0, 50), "ZXing");
+        DecodedCode b = new DecodedCode("B", BarcodeFormat.CODE_128, square(0, 0, 50), "MLKit");
+        DecodedCode c = new DecodedCode("A", BarcodeFormat.CODE_39, square(0, 0, 50), "MLKit");
+
+        assertEquals(3, DecodedCode.merge(Arrays.asList(a, b, c)).size());
+    }
+
+    @Test
+    public void codeWithoutPosition_mergesWithKnownFormat() {
+        DecodedCode positioned = new DecodedCode("A", null, square(0, 0, 50), "OpenCV");
+        DecodedCode bare = new DecodedCode("A", BarcodeFormat.EAN_13, null, "MLKit");
+
+        List<DecodedCode> merged = DecodedCode.merge(Arrays.asList(positioned, bare));
+
+        assertEquals(1, merged.size());
+        assertEquals(BarcodeFormat.EAN_13, merged.get(0).getFormat());
+        assertTrue(merged.get(0).hasPosition());
+        assertEquals(25f, merged.get(0).getCenterX(), 0.001f);
+    }
+}
@@ -0,0 +1,55 @@
+package work.icu007.cameraxscan.decoder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * DedupCache的时间窗口和LRU淘汰测试
+ */
+public class DedupCacheTest {
+
+    @Test
+    public void sameKey_isSuppressedWithinWindow() {
+        DedupCache cache = new DedupCache(8, 1000);
+
+        assertTrue(cache.offer("A", 0));
+        assertFalse(cache.offer("A", 500));
+        assertTrue(cache.offer("B", 600));
+        assertEquals(1, cache.getSuppressedCount());
+    }
+
+    @Test
+    public void lingeringKey_refreshesWindow() {
+        DedupCache cache = new DedupCache(8, 1000);
+
+        assertTrue(cache.offer("A", 0));
+        assertFalse(cache.offer("A", 900));
+        // 距最后一次看到不足窗口，仍然抑制
+        assertFalse(cache.offer("A", 1800));
+        assertTrue(cache.offer("A", 2900));
+    }
+
+    @Test
+    public void leastRecentlySeenKey_isEvicted() {
+        DedupCache cache = new DedupCache(2, 1000);
+
+        cache.offer("A", 0);
+        cache.offer("B", 1);
+        cache.offer("A", 2);
+        cache.offer("C", 3);
+
+        assertEquals(2, cache.size());
+        // B最久未见，已被淘汰
+        assertTrue(cache.offer("B", 4));
+        assertFalse(cache.offer("C", 5));
+    }
+
+    @Test
+    public void zeroWindow_disablesDedup() {
+        DedupCache cache = new DedupCache(8, 0);
+
+        assertTrue(cache.offer("A", 0));
+        assertTrue(cache.offer("A", 0));
+    }
+}
@@ -0,0 +1,75 @@
+package work.icu007.cameraxscan.decoder;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.oned.Code128Writer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import work.icu007.cameraxscan.frame.FrameSnapshot;
+
+import static org.junit.Assert.*;
+
+/**
+ * ZXingDecoder快速一维码模式在传感器方向帧数据上的解码测试
+ */
+public class ZXingDecoderTest {
+
+    private static final String TEXT = "CAMERAX-128";
+    private static final int MARGIN = 40;
+
+    // 生成显示方向水平的Code 128，按顺时针旋转90°显示的传感器方向存放，条纹在数据中是水平的
+    private static FrameSnapshot sidewaysCode128() {
+        BitMatrix code = new Code128Writer().encode(TEXT, BarcodeFormat.CODE_128, 0, 60);
+        int codeWidth = code.getWidth() * 2;
+        int codeHeight = code.getHeight();
+        // 数据宽对应显示的高
+        int width = codeHeight + 2 * MARGIN;
+        int height = codeWidth + 2 * MARGIN;
+        byte[] luma = new byte[width * height];
+        Arrays.fill(luma, (byte) 255);
+        for (int y = 0; y < codeHeight; y++) {
+            for (int x = 0; x < codeWidth; x++) {
+                if (code.get(x / 2, y)) {
+                    // 显示坐标(x, y)逆时针转回传感器坐标
+                    int sensorX = MARGIN + codeHeight - 1 - y;
+                    int sensorY = MARGIN + x;
+                    luma[sensorY * width + sensorX] = 0;
+                }
+            }
+        }
+        return FrameSnapshot.wrapLuma(luma, width, height, 90, 0);
+    }
+
+    @Test
+    public void fastLinear_decodesSidewaysCodeWithoutTryHarder() {
+        FrameSnapshot frame = sidewaysCode128();
+        List<ResultPoint> candidates = new ArrayList<>();
+
+        Result result = ZXingDecoder.decodeResult(frame, candidates, CancellationToken.NONE, true);
+
+        assertNotNull(result);
+        assertEquals(TEXT, result.getText());
+        assertEquals(BarcodeFormat.CODE_128, result.getBarcodeFormat());
+        // 结果点换算回帧坐标，沿条码方向（数据中的竖直方向）分布在帧内
+        for (ResultPoint point : result.getResultPoints()) {
+            assertTrue(point.getX() >= 0 && point.getX() < frame.getWidth());
+            assertTrue(point.getY() >= MARGIN - 1 && point.getY() <= frame.getHeight() - MARGIN);
+        }
+    }
+
+    @Test
+    public void tryHarder_decodesSidewaysCode() {
+        Result result = ZXingDecoder.decodeResult(sidewaysCode128(), new ArrayList<ResultPoint>(),
+                CancellationToken.NONE, false);
+
+        assertNotNull(result);
+        assertEquals(TEXT, result.getText());
+    }
+}
@@ -0,0 +1,97 @@
+package work.icu007.cameraxscan.frame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * FrameBufferPool的容量限制和稳态复用测试
+ */
+public class FrameBufferPoolTest {
+
+    private static final int NV21 = FrameBufferPool.FORMAT_NV21;
+
+    // 模拟一帧的借出：金字塔两层、三个同尺寸变体、一个旋转变体和两个区域裁剪
+    private static List<int[]> frameSpecs() {
+        List<int[]> specs = new ArrayList<>();
+        specs.add(new int[]{320, 240});
+        specs.add(new int[]{160, 120});
+        for (int i = 0; i < 3; i++) {
+            specs.add(new int[]{320, 240});
+        }
+        specs.add(new int[]{240, 320});
+        specs.add(new int[]{128, 48});
+        specs.add(new int[]{64, 64});
+        return specs;
+    }
+
+    private static List<byte[]> acquireFrame(FrameBufferPool pool) {
+        List<byte[]> buffers = new ArrayList<>();
+        for (int[] spec : frameSpecs()) {
+            buffers.add(pool.acquire(spec[0], spec[1], NV21));
+        }
+        return buffers;
+    }
+
+    private static void releaseFrame(FrameBufferPool pool, List<byte[]> buffers) {
+        List<int[]> specs = frameSpecs();
+        for (int i = 0; i < specs.size(); i++) {
+            pool.release(specs.get(i)[0], specs.get(i)[1], NV21, buffers.get(i));
+        }
+    }
+
+    @Test
+    public void steadyState_allocatesNothingNew() {
+        FrameBufferPool pool = new FrameBufferPool(3 * frameSpecs().size(), 9);
+        // 三帧同时持有缓冲区
+        List<List<byte[]>> inFlight = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            inFlight.add(acquireFrame(pool));
+        }
+        for (int frame = 0; frame < 30; frame++) {
+            releaseFrame(pool, inFlight.remove(0));
+            inFlight.add(acquireFrame(pool));
+        }
+        long warmMisses = pool.getMissCount();
+        long warmBytes = pool.getAllocatedBytes();
+
+        for (int frame = 0; frame < 100; frame++) {
+            releaseFrame(pool, inFlight.remove(0));
+            inFlight.add(acquireFrame(pool));
+        }
+
+        assertEquals(3 * frameSpecs().size(), warmMisses);
+        assertEquals(warmMisses, pool.getMissCount());
+        assertEquals(warmBytes, pool.getAllocatedBytes());
+        assertEquals(0, pool.getDiscardCount());
+        assertTrue(pool.toString(), pool.toString().contains("misses=" + warmMisses + ","));
+    }
+
+    @Test
+    public void sameSize_isCappedPerSize() {
+        FrameBufferPool pool = new FrameBufferPool(8, 2);
+        for (int i = 0; i < 3; i++) {
+            pool.release(16, 16, NV21, new byte[FrameBufferPool.bufferSize(16, 16, NV21)]);
+        }
+        pool.release(32, 32, NV21, new byte[FrameBufferPool.bufferSize(32, 32, NV21)]);
+
+        assertEquals(3, pool.getPooledCount());
+        assertEquals(1, pool.getDiscardCount());
+    }
+
+    @Test
+    public void fullPool_evictsLeastRecentlyUsedSize() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        byte[] small = new byte[FrameBufferPool.bufferSize(16, 16, NV21)];
+        pool.release(16, 16, NV21, small);
+        pool.release(32, 32, NV21, new byte[FrameBufferPool.bufferSize(32, 32, NV21)]);
+        pool.release(64, 64, NV21, new byte[FrameBufferPool.bufferSize(64, 64, NV21)]);
+
+        assertEquals(2, pool.getPooledCount());
+        assertNotSame(small, pool.acquire(16, 16, NV21));
+        assertEquals(1, pool.getMissCount());
+    }
+}
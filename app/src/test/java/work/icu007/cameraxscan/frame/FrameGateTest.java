@@ -0,0 +1,121 @@
+package work.icu007.cameraxscan.frame;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * FrameGate的清晰度、运动判断和强制放行测试
+ */
+public class FrameGateTest {
+    private static final int WIDTH = 128;
+    private static final int HEIGHT = 96;
+
+    // 每cell像素一格的黑白棋盘，offset为水平平移量
+    private static ByteBuffer checkerboard(int cell, int offset) {
+        byte[] data = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                data[y * WIDTH + x] = ((x + offset) / cell + y / cell) % 2 == 0 ? 0 : (byte) 255;
+            }
+        }
+        return ByteBuffer.wrap(data);
+    }
+
+    private static ByteBuffer flat(int value) {
+        byte[] data = new byte[WIDTH * HEIGHT];
+        Arrays.fill(data, (byte) value);
+        return ByteBuffer.wrap(data);
+    }
+
+    private static FrameGate.Verdict evaluate(FrameGate gate, ByteBuffer luma) {
+        return gate.evaluate(luma, WIDTH, 1, 0, 0, WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void sharpStillFrames_pass() {
+        FrameGate gate = new FrameGate();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(FrameGate.Verdict.PASS, evaluate(gate, checkerboard(3, 0)));
+        }
+        assertEquals(0, gate.getSkippedCount());
+        assertEquals(0, gate.getLastMotion(), 0.001);
+    }
+
+    @Test
+    public void sharpness_measuresGradientEnergy() {
+        FrameGate gate = new FrameGate();
+
+        evaluate(gate, flat(128));
+        assertEquals(0, gate.getLastSharpness(), 0.001);
+
+        evaluate(gate, checkerboard(3, 0));
+        assertTrue(gate.getLastSharpness() > 1000);
+    }
+
+    @Test
+    public void frameFarBelowRecentPeak_isBlurry() {
+        FrameGate gate = new FrameGate();
+        for (int i = 0; i <= FrameGate.WARMUP_FRAMES; i++) {
+            assertEquals(FrameGate.Verdict.PASS, gate.classify(1000, 0));
+        }
+
+        assertEquals(FrameGate.Verdict.BLURRY, gate.classify(100, 0));
+        assertEquals(FrameGate.Verdict.PASS, gate.classify(900, 0));
+    }
+
+    @Test
+    public void largeFrameDifference_isMoving() {
+        FrameGate gate = new FrameGate();
+        for (int i = 0; i < FrameGate.WARMUP_FRAMES + 2; i++) {
+            assertEquals(FrameGate.Verdict.PASS, evaluate(gate, checkerboard(8, 0)));
+        }
+
+        assertEquals(FrameGate.Verdict.MOVING, evaluate(gate, checkerboard(8, 8)));
+        assertTrue(gate.getLastMotion() > FrameGate.MIN_MOTION);
+    }
+
+    @Test
+    public void consecutiveSkips_areCappedByForcedPass() {
+        FrameGate gate = new FrameGate();
+        for (int i = 0; i < FrameGate.WARMUP_FRAMES; i++) {
+            gate.classify(1000, 0);
+        }
+
+        int skipped = 0;
+        FrameGate.Verdict verdict;
+        while ((verdict = gate.classify(1, 0)) != FrameGate.Verdict.PASS) {
+            assertEquals(FrameGate.Verdict.BLURRY, verdict);
+            skipped++;
+        }
+        assertEquals(FrameGate.MAX_CONSECUTIVE_SKIPS, skipped);
+    }
+
+    @Test
+    public void savedTime_usesAverageDecodeCost() {
+        FrameGate gate = new FrameGate();
+        gate.recordDecodeMillis(40);
+        for (int i = 0; i < FrameGate.WARMUP_FRAMES; i++) {
+            gate.classify(1000, 0);
+        }
+
+        gate.classify(1, 0);
+        gate.classify(1, 0);
+
+        assertEquals(2, gate.getSkippedCount());
+        assertEquals(80, gate.getSavedMillis());
+    }
+
+    @Test
+    public void disabledGate_alwaysPasses() {
+        FrameGate gate = new FrameGate();
+        gate.setEnabled(false);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(FrameGate.Verdict.PASS, evaluate(gate, i % 2 == 0 ? flat(0) : checkerboard(3, 0)));
+        }
+        assertEquals(0, gate.getEvaluatedCount());
+    }
+}
@@ -0,0 +1,52 @@
+package work.icu007.cameraxscan.frame;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * LumaPyramid的2x2均值缩小测试
+ */
+public class LumaPyramidTest {
+
+    @Test
+    public void downsample_averagesEachBlockWithRounding() {
+        byte[] src = {
+                0, 2, 10, 20,
+                4, 6, 30, 41,
+                (byte) 255, (byte) 255, 1, 1,
+                (byte) 255, (byte) 254, 1, 2,
+        };
+        byte[] dst = new byte[4];
+
+        LumaPyramid.downsample(ByteBuffer.wrap(src), 4, dst, 2, 2);
+
+        assertEquals(3, dst[0] & 0xFF);
+        assertEquals(25, dst[1] & 0xFF);
+        assertEquals(255, dst[2] & 0xFF);
+        assertEquals(1, dst[3] & 0xFF);
+    }
+
+    @Test
+    public void downsample_ignoresTrailingOddColumnAndRow() {
+        int srcWidth = 5;
+        byte[] src = new byte[srcWidth * 3];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = (byte) 100;
+        }
+        // 最后一列和最后一行不参与计算
+        for (int row = 0; row < 3; row++) {
+            src[row * srcWidth + 4] = (byte) 255;
+        }
+        for (int col = 0; col < srcWidth; col++) {
+            src[2 * srcWidth + col] = 0;
+        }
+        byte[] dst = new byte[2];
+
+        LumaPyramid.downsample(ByteBuffer.wrap(src), srcWidth, dst, 2, 1);
+
+        assertArrayEquals(new byte[]{100, 100}, dst);
+    }
+}
@@ -0,0 +1,102 @@
+package work.icu007.cameraxscan.frame;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * VariantGenerator的反色、二值化和旋转测试
+ */
+public class VariantGeneratorTest {
+
+    @Test
+    public void invert_flipsEveryByte() {
+        byte[] data = {0, 1, (byte) 128, (byte) 255};
+
+        VariantGenerator.invert(data, data.length);
+
+        assertArrayEquals(new byte[]{(byte) 255, (byte) 254, 127, 0}, data);
+    }
+
+    @Test
+    public void otsuThreshold_separatesTwoClusters() {
+        byte[] data = new byte[100];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i < 40 ? 30 + i % 5 : 200 + i % 7);
+        }
+
+        int threshold = VariantGenerator.otsuThreshold(data, data.length);
+        VariantGenerator.threshold(data, data.length, threshold);
+
+        assertTrue(threshold >= 34 && threshold < 200);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(i < 40 ? 0 : 255, data[i] & 0xFF);
+        }
+    }
+
+    @Test
+    public void localThreshold_handlesUnevenLighting() {
+        // 左半边整体偏暗，右半边整体偏亮，每边都有一条比周围暗的竖线
+        int width = 64;
+        int height = 16;
+        byte[] data = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int background = x < 32 ? 60 : 200;
+                boolean line = (x >= 8 && x < 12) || (x >= 40 && x < 44);
+                data[y * width + x] = (byte) (line ? background - 60 : background);
+            }
+        }
+
+        VariantGenerator.localThreshold(data, width, height);
+
+        // 全局阈值会把整个左半边判为黑色，局部阈值只保留两条竖线
+        assertEquals(0, data[5 * width + 9] & 0xFF);
+        assertEquals(0, data[5 * width + 41] & 0xFF);
+        assertEquals(255, data[5 * width + 2] & 0xFF);
+        assertEquals(255, data[5 * width + 50] & 0xFF);
+    }
+
+    @Test
+    public void rotate90_rotatesClockwise() {
+        // 3x2:
+        // 1 2 3
+        // 4 5 6
+        byte[] src = {1, 2, 3, 4, 5, 6};
+        byte[] dst = new byte[6];
+
+        VariantGenerator.rotate90(ByteBuffer.wrap(src), 3, 2, dst);
+
+        // 2x3:
+        // 4 1
+        // 5 2
+        // 6 3
+        assertArrayEquals(new byte[]{4, 1, 5, 2, 6, 3}, dst);
+    }
+
+    @Test
+    public void generate_producesGrayNv21ForMlKit() {
+        int width = 4;
+        int height = 2;
+        byte[] luma = new byte[FrameBufferPool.bufferSize(width, height, FrameBufferPool.FORMAT_NV21)];
+        for (int i = 0; i < width * height; i++) {
+            luma[i] = (byte) (i * 10);
+        }
+        FrameSnapshot base = FrameSnapshot.wrapGray(luma, width, height, 90, 0);
+
+        FrameSnapshot rotated = VariantGenerator.generate(base, VariantGenerator.ROTATED);
+        try {
+            assertTrue(rotated.hasChroma());
+            assertEquals(height, rotated.getWidth());
+            ByteBuffer nv21 = rotated.getNv21Buffer();
+            for (int i = width * height; i < nv21.limit(); i++) {
+                assertEquals(128, nv21.get(i) & 0xFF);
+            }
+        } finally {
+            rotated.release();
+            base.release();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package work.icu007.cameraxscan.frame;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Yuv420Converter在不同平面布局下的转换结果测试
+ */
+public class Yuv420ConverterTest {
+    private static final int WIDTH = 6;
+    private static final int HEIGHT = 4;
+
+    @Test
+    public void semiPlanar_bulkCopiesInterleavedVu() {
+        assertSemiPlanar(WIDTH);
+    }
+
+    @Test
+    public void semiPlanar_paddedRows() {
+        assertSemiPlanar(WIDTH + 4);
+    }
+
+    @Test
+    public void planar_interleavesRowByRow() {
+        int uvRowStride = WIDTH / 2;
+        ByteBuffer y = lumaPlane(WIDTH);
+        ByteBuffer u = ByteBuffer.allocateDirect(uvRowStride * HEIGHT / 2);
+        ByteBuffer v = ByteBuffer.allocateDirect(uvRowStride * HEIGHT / 2);
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int col = 0; col < WIDTH / 2; col++) {
+                u.put(row * uvRowStride + col, u(row, col));
+                v.put(row * uvRowStride + col, v(row, col));
+            }
+        }
+
+        assertFalse(Yuv420Converter.isInterleavedVu(u, v));
+        assertArrayEquals(expectedNv21(), convert(y, WIDTH, u, v, uvRowStride, 1));
+    }
+
+    @Test
+    public void planar_paddedRows() {
+        int yRowStride = WIDTH + 2;
+        int uvRowStride = WIDTH / 2 + 5;
+        ByteBuffer y = lumaPlane(yRowStride);
+        ByteBuffer u = ByteBuffer.allocateDirect(uvRowStride * HEIGHT / 2);
+        ByteBuffer v = ByteBuffer.allocateDirect(uvRowStride * HEIGHT / 2);
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int col = 0; col < WIDTH / 2; col++) {
+                u.put(row * uvRowStride + col, u(row, col));
+                v.put(row * uvRowStride + col, v(row, col));
+            }
+        }
+
+        assertArrayEquals(expectedNv21(), convert(y, yRowStride, u, v, uvRowStride, 1));
+    }
+
+    @Test
+    public void separateChromaWithPixelStrideTwo_isNotTreatedAsInterleaved() {
+        // NV12布局：U在前，V在后，U/V平面虽然交错但顺序与NV21相反
+        int uvRowStride = WIDTH;
+        ByteBuffer chroma = ByteBuffer.allocateDirect(uvRowStride * HEIGHT / 2);
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int col = 0; col < WIDTH / 2; col++) {
+                chroma.put(row * uvRowStride + col * 2, u(row, col));
+                chroma.put(row * uvRowStride + col * 2 + 1, v(row, col));
+            }
+        }
+        ByteBuffer u = slice(chroma, 0, chroma.capacity() - 1);
+        ByteBuffer v = slice(chroma, 1, chroma.capacity() - 1);
+
+        assertFalse(Yuv420Converter.isInterleavedVu(u, v));
+        assertArrayEquals(expectedNv21(), convert(lumaPlane(WIDTH), WIDTH, u, v, uvRowStride, 2));
+    }
+
+    @Test
+    public void readOnlyBuffers_detectInterleavedVuByContent() {
+        ByteBuffer chroma = vuPlane(WIDTH);
+        ByteBuffer v = slice(chroma, 0, chroma.capacity() - 1).asReadOnlyBuffer();
+        ByteBuffer u = slice(chroma, 1, chroma.capacity() - 1).asReadOnlyBuffer();
+
+        assertTrue(Yuv420Converter.isInterleavedVu(u, v));
+        assertArrayEquals(expectedNv21(), convert(lumaPlane(WIDTH).asReadOnlyBuffer(), WIDTH, u, v, WIDTH, 2));
+    }
+
+    @Test
+    public void separateBuffersWithShiftedContent_convertIdentically() {
+        // 内容与交错数据相同但不共享内存的两个平面，按交错数据整块复制的结果不变
+        ByteBuffer chroma = vuPlane(WIDTH);
+        ByteBuffer v = copy(slice(chroma, 0, chroma.capacity() - 1));
+        ByteBuffer u = copy(slice(chroma, 1, chroma.capacity() - 1));
+
+        assertTrue(Yuv420Converter.isInterleavedVu(u, v));
+        assertArrayEquals(expectedNv21(), convert(lumaPlane(WIDTH), WIDTH, u, v, WIDTH, 2));
+    }
+
+    @Test
+    public void conversion_doesNotMovePlanePositions() {
+        ByteBuffer chroma = vuPlane(WIDTH);
+        ByteBuffer y = lumaPlane(WIDTH);
+        ByteBuffer v = slice(chroma, 0, chroma.capacity() - 1);
+        ByteBuffer u = slice(chroma, 1, chroma.capacity() - 1);
+
+        convert(y, WIDTH, u, v, WIDTH, 2);
+
+        assertEquals(0, y.position());
+        assertEquals(0, u.position());
+        assertEquals(0, v.position());
+    }
+
+    private void assertSemiPlanar(int rowStride) {
+        ByteBuffer chroma = vuPlane(rowStride);
+        int planeSize = rowStride * (HEIGHT / 2 - 1) + WIDTH - 1;
+        ByteBuffer v = slice(chroma, 0, planeSize);
+        ByteBuffer u = slice(chroma, 1, planeSize);
+
+        assertTrue(Yuv420Converter.isInterleavedVu(u, v));
+        assertArrayEquals(expectedNv21(), convert(lumaPlane(rowStride), rowStride, u, v, rowStride, 2));
+    }
+
+    private static byte[] convert(ByteBuffer y, int yRowStride, ByteBuffer u, ByteBuffer v,
+                                  int uvRowStride, int uvPixelStride) {
+        byte[] out = new byte[FrameBufferPool.bufferSize(WIDTH, HEIGHT, FrameBufferPool.FORMAT_NV21)];
+        Yuv420Converter.toNv21(y, yRowStride, 1, u, v, uvRowStride, uvPixelStride, WIDTH, HEIGHT, out);
+        return out;
+    }
+
+    // 以V0 U0 V1 U1...顺序交错存储的色度平面
+    private static ByteBuffer vuPlane(int rowStride) {
+        ByteBuffer chroma = ByteBuffer.allocateDirect(rowStride * HEIGHT / 2);
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int col = 0; col < WIDTH / 2; col++) {
+                chroma.put(row * rowStride + col * 2, v(row, col));
+                chroma.put(row * rowStride + col * 2 + 1, u(row, col));
+            }
+        }
+        return chroma;
+    }
+
+    private static ByteBuffer copy(ByteBuffer source) {
+        ByteBuffer copy = ByteBuffer.allocateDirect(source.remaining());
+        copy.put(source.duplicate());
+        copy.flip();
+        return copy;
+    }
+
+    private static ByteBuffer lumaPlane(int rowStride) {
+        ByteBuffer y = ByteBuffer.allocateDirect(rowStride * HEIGHT);
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < rowStride; col++) {
+                // 填充区域写入无效数据，确保不会被复制
+                y.put(row * rowStride + col, col < WIDTH ? y(row, col) : (byte) 0xEE);
+            }
+        }
+        return y;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice();
+    }
+
+    private static byte[] expectedNv21() {
+        byte[] nv21 = new byte[WIDTH * HEIGHT * 3 / 2];
+        int index = 0;
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                nv21[index++] = y(row, col);
+            }
+        }
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int col = 0; col < WIDTH / 2; col++) {
+                nv21[index++] = v(row, col);
+                nv21[index++] = u(row, col);
+            }
+        }
+        return nv21;
+    }
+
+    private static byte y(int row, int col) {
+        return (byte) (row * 16 + col);
+    }
+
+    private static byte u(int row, int col) {
+        return (byte) (100 + row * 8 + col);
+    }
+
+    private static byte v(int row, int col) {
+        return (byte) (200 + row * 8 + col);
+    }
+}
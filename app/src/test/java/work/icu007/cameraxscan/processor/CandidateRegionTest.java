@@ -0,0 +1,81 @@
+package work.icu007.cameraxscan.processor;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * CandidateRegion的顶点规整、扩展和排序去重测试
+ */
+public class CandidateRegionTest {
+
+    private static float[] rect(float left, float top, float width, float height) {
+        return new float[]{left, top, left + width, top, left + width, top + height, left, top + height};
+    }
+
+    @Test
+    public void corners_startWithLongEdgeClockwise() {
+        // 竖放的一维码，顶点逆时针且从短边开始
+        float[] points = {10, 10, 10, 110, 40, 110, 40, 10};
+        CandidateRegion region = new CandidateRegion(points, 1);
+
+        assertEquals(100, region.getLongSide(), 0.001f);
+        assertEquals(30, region.getShortSide(), 0.001f);
+        assertTrue(region.isLikelyLinear());
+
+        float[] c = region.getCorners();
+        float cross = (c[2] - c[0]) * (c[5] - c[3]) - (c[3] - c[1]) * (c[4] - c[2]);
+        assertTrue(cross > 0);
+    }
+
+    @Test
+    public void rotatedBox_longEdgePointsRight() {
+        // 旋转45度的矩形，顶点从右下角开始
+        float[] points = {100, 100, 30, 30, 20, 40, 90, 110};
+        float[] c = new CandidateRegion(points, 1).getCorners();
+
+        assertTrue(c[2] > c[0]);
+    }
+
+    @Test
+    public void fromContour_scoresByAreaAndFill() {
+        CandidateRegion solid = CandidateRegion.fromContour(rect(0, 0, 100, 50), 5000);
+        CandidateRegion sparse = CandidateRegion.fromContour(rect(200, 0, 100, 50), 1000);
+
+        assertEquals(5000, solid.getScore(), 0.001);
+        assertEquals(1000, sparse.getScore(), 0.001);
+    }
+
+    @Test
+    public void expand_growsAlongEachAxis() {
+        CandidateRegion region = new CandidateRegion(rect(100, 100, 200, 50), 1).expand(10, 5);
+
+        assertEquals(220, region.getLongSide(), 0.001f);
+        assertEquals(60, region.getShortSide(), 0.001f);
+        assertArrayEquals(new float[]{90, 95, 310, 155}, region.getBounds(), 0.001f);
+    }
+
+    @Test
+    public void scale_mapsCoarseLevelToFrame() {
+        CandidateRegion region = new CandidateRegion(rect(10, 20, 40, 10), 400).scale(2);
+
+        assertArrayEquals(new float[]{20, 40, 100, 60}, region.getBounds(), 0.001f);
+        assertEquals(1600, region.getScore(), 0.001);
+    }
+
+    @Test
+    public void select_ranksAndSuppressesOverlaps() {
+        CandidateRegion best = new CandidateRegion(rect(0, 0, 100, 100), 10);
+        CandidateRegion overlapping = new CandidateRegion(rect(10, 10, 100, 100), 8);
+        CandidateRegion separate = new CandidateRegion(rect(300, 0, 50, 50), 5);
+        CandidateRegion weak = new CandidateRegion(rect(500, 0, 50, 50), 1);
+
+        List<CandidateRegion> selected = CandidateRegion.select(
+                Arrays.asList(weak, separate, overlapping, best), 2);
+
+        assertEquals(Arrays.asList(best, separate), selected);
+    }
+}
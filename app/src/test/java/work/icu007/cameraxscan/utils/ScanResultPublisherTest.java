@@ -0,0 +1,191 @@
+package work.icu007.cameraxscan.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * ScanResultPublisher的按需推送、溢出策略和多订阅者隔离测试
+ */
+public class ScanResultPublisherTest {
+
+    // 记录收到的结果，onSubscribe时请求initialRequest个
+    private static class RecordingSubscriber implements ScanResultPublisher.Subscriber {
+        final List<String> received = new ArrayList<>();
+        final long initialRequest;
+        ScanResultPublisher.Subscription subscription;
+        boolean completed;
+
+        RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(ScanResultPublisher.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(ScanResult result) {
+            received.add(result.getText());
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    // 手动执行的执行器，模拟繁忙的主线程
+    private static class ManualExecutor implements Executor {
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    private static final Executor DIRECT = Runnable::run;
+
+    private static ScanResult result(String text) {
+        return new ScanResult(true, text, "ZXing");
+    }
+
+    @Test
+    public void resultsAreDeliveredOnlyOnDemand() {
+        ScanResultPublisher publisher = new ScanResultPublisher();
+        RecordingSubscriber subscriber = new RecordingSubscriber(1);
+        publisher.subscribe(subscriber, DIRECT, ScanResultPublisher.Overflow.DROP_OLDEST, 8);
+
+        publisher.onScanResult(result("A"));
+        publisher.onScanResult(result("B"));
+        publisher.onScanResult(result("C"));
+        assertEquals(Arrays.asList("A"), subscriber.received);
+
+        subscriber.subscription.request(2);
+        assertEquals(Arrays.asList("A", "B", "C"), subscriber.received);
+    }
+
+    @Test
+    public void fullBuffer_dropsOldestOrLatest() {
+        ScanResultPublisher publisher = new ScanResultPublisher();
+        RecordingSubscriber oldest = new RecordingSubscriber(0);
+        RecordingSubscriber latest = new RecordingSubscriber(0);
+        publisher.subscribe(oldest, DIRECT, ScanResultPublisher.Overflow.DROP_OLDEST, 2);
+        publisher.subscribe(latest, DIRECT, ScanResultPublisher.Overflow.DROP_LATEST, 2);
+
+        for (String text : new String[]{"A", "B", "C"}) {
+            publisher.onScanResult(result(text));
+        }
+        oldest.subscription.request(Long.MAX_VALUE);
+        latest.subscription.request(Long.MAX_VALUE);
+
+        assertEquals(Arrays.asList("B", "C"), oldest.received);
+        assertEquals(Arrays.asList("A", "B"), latest.received);
+    }
+
+    @Test
+    public void conflate_keepsOnlyLatest() {
+        ScanResultPublisher publisher = new ScanResultPublisher();
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber, DIRECT, ScanResultPublisher.Overflow.CONFLATE, 1);
+
+        publisher.onScanResult(result("A"));
+        publisher.onScanResult(result("B"));
+        subscriber.subscription.request(1);
+
+        assertEquals(Arrays.asList("B"), subscriber.received);
+    }
+
+    @Test
+    public void slowSubscriber_doesNotBlockOthers() {
+        ScanResultPublisher publisher = new ScanResultPublisher();
+        ManualExecutor slowExecutor = new ManualExecutor();
+        RecordingSubscriber slow = new RecordingSubscriber(Long.MAX_VALUE);
+        RecordingSubscriber fast = new RecordingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(slow, slowExecutor, ScanResultPublisher.Overflow.DROP_OLDEST, 8);
+        publisher.subscribe(fast, DIRECT, ScanResultPublisher.Overflow.DROP_OLDEST, 8);
+
+        publisher.onScanResult(result("A"));
+        publisher.onScanResult(result("B"));
+        assertEquals(Arrays.asList("A", "B"), fast.received);
+        assertTrue(slow.received.isEmpty());
+
+        // 投递合并到一次执行中
+        assertEquals(1, slowExecutor.tasks.size());
+        slowExecutor.runAll();
+        assertEquals(Arrays.asList("A", "B"), slow.received);
+    }
+
+    @Test
+    public void throwingSubscriber_isCancelledWithoutAffectingOthers() {
+        ScanResultPublisher publisher = new ScanResultPublisher();
+        List<Throwable> errors = new ArrayList<>();
+        publisher.setErrorHandler((message, error) -> errors.add(error));
+        publisher.subscribe(new RecordingSubscriber(Long.MAX_VALUE) {
+            @Override
+            public void onNext(ScanResult result) {
+                throw new IllegalStateException("boom");
+            }
+        }, DIRECT, ScanResultPublisher.Overflow.DROP_OLDEST, 8);
+        RecordingSubscriber healthy = new RecordingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(healthy, DIRECT, ScanResultPublisher.Overflow.DROP_OLDEST, 8);
+
+        publisher.onScanResult(result("A"));
+        publisher.onScanResult(result("B"));
+
+        assertEquals(1, publisher.getSubscriberCount());
+        assertEquals(Arrays.asList("A", "B"), healthy.received);
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0) instanceof IllegalStateException);
+    }
+
+    @Test
+    public void invalidRequest_cancelsAndReportsError() {
+        ScanResultPublisher publisher = new ScanResultPublisher();
+        List<Throwable> errors = new ArrayList<>();
+        publisher.setErrorHandler((message, error) -> errors.add(error));
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber, DIRECT, ScanResultPublisher.Overflow.DROP_OLDEST, 8);
+
+        subscriber.subscription.request(0);
+        publisher.onScanResult(result("A"));
+
+        assertEquals(0, publisher.getSubscriberCount());
+        assertTrue(subscriber.received.isEmpty());
+        assertTrue(errors.get(0) instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void complete_drainsBufferBeforeSignalling() {
+        ScanResultPublisher publisher = new ScanResultPublisher();
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber, DIRECT, ScanResultPublisher.Overflow.DROP_OLDEST, 8);
+
+        publisher.onScanResult(result("A"));
+        publisher.complete();
+        assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(1);
+        assertEquals(Arrays.asList("A"), subscriber.received);
+        assertTrue(subscriber.completed);
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+}